@@ -0,0 +1,122 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnConfig;
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationStartRequest;
+import com.example.WebAuthn_Demo_App_2.dto.CredentialJson;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationStartRequest;
+import com.example.WebAuthn_Demo_App_2.service.BatchAuthenticationService;
+import com.example.WebAuthn_Demo_App_2.service.CeremonyMetrics;
+import com.example.WebAuthn_Demo_App_2.service.DirectCeremonyExecutor;
+import com.example.WebAuthn_Demo_App_2.service.RateLimiter;
+import com.example.WebAuthn_Demo_App_2.service.RegistrationOptionsTemplate;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParties;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParty;
+import com.example.WebAuthn_Demo_App_2.service.WebAuthnService;
+import com.example.WebAuthn_Demo_App_2.store.ChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.InMemoryChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.InMemoryCredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.PublicKeyCache;
+import com.example.WebAuthn_Demo_App_2.store.SecureRandomPool;
+import com.example.WebAuthn_Demo_App_2.store.SignCounterTracker;
+import com.example.WebAuthn_Demo_App_2.store.UserStore;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.PublicKeyCredentialCreationOptions;
+import com.webauthn4j.data.PublicKeyCredentialRequestOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+// The app's beans wired by hand, the same way WebAuthnConfig wires them, with the default in-memory storage
+public class AppFixture {
+
+    public static final String RP_ID = "localhost";
+    public static final String ORIGIN = "http://localhost:8080";
+
+    public final ObjectConverter objectConverter = new ObjectConverter();
+    public final WebAuthnProperties properties = properties();
+    public final SecureRandomPool secureRandomPool = new SecureRandomPool();
+    public final ChallengeStore challengeStore = new InMemoryChallengeStore(properties, secureRandomPool);
+    public final RegistrationOptionsTemplate registrationOptionsTemplate = new RegistrationOptionsTemplate(properties);
+    public final PublicKeyCache publicKeyCache = new PublicKeyCache(properties);
+    public final SignCounterTracker signCounterTracker = new SignCounterTracker();
+    public final UserStore userStore =
+            new UserStore(new InMemoryCredentialRepository(), secureRandomPool, publicKeyCache, signCounterTracker);
+    // Only the default relying party
+    public final RelyingParty relyingParty = new RelyingParty(
+            WebAuthnProperties.RelyingParty.DEFAULT_ID,
+            RP_ID,
+            properties.getRpName(),
+            List.of(ORIGIN),
+            List.of(),
+            userStore,
+            challengeStore,
+            publicKeyCache,
+            null,
+            null
+    );
+    public final RelyingParties relyingParties = new RelyingParties(relyingParty, List.of(), List.of());
+    // Recording into a SimpleMeterRegistry, so the ceremony benchmarks include the cost of the metrics
+    public final CeremonyMetrics ceremonyMetrics =
+            new CeremonyMetrics(new SimpleMeterRegistry(), relyingParties, secureRandomPool,
+                    new RateLimiter(properties), Optional.empty(), Optional.empty(), Optional.empty());
+    public final WebAuthnService webAuthnService = new WebAuthnService(
+            new WebAuthnConfig().webAuthnManager(objectConverter),
+            properties,
+            new DirectCeremonyExecutor(),
+            registrationOptionsTemplate,
+            ceremonyMetrics
+    );
+    public final BatchAuthenticationService batchAuthenticationService =
+            new BatchAuthenticationService(webAuthnService, properties);
+    public final SoftwareAuthenticator authenticator = new SoftwareAuthenticator(objectConverter, RP_ID, ORIGIN);
+
+    // Runs a whole registration ceremony for the credential
+    public void register(String username, SoftwareAuthenticator.Credential credential) {
+        webAuthnService.finishRegistration(relyingParty, registrationFinishRequest(username, credential));
+    }
+
+    // Starts a registration and answers it, without finishing it
+    public RegistrationFinishRequest registrationFinishRequest(String username, SoftwareAuthenticator.Credential credential) {
+        PublicKeyCredentialCreationOptions options =
+                webAuthnService.startRegistration(relyingParty, new RegistrationStartRequest(username, null));
+        return new RegistrationFinishRequest(username,
+                credentialJson(authenticator.registrationResponseJson(credential, options.getChallenge())));
+    }
+
+    // Starts an authentication and signs the assertion, without finishing it
+    public AuthenticationFinishRequest authenticationFinishRequest(String username, SoftwareAuthenticator.Credential credential) {
+        PublicKeyCredentialRequestOptions options =
+                webAuthnService.startAuthentication(relyingParty, new AuthenticationStartRequest(username));
+        return new AuthenticationFinishRequest(username, credentialJson(authenticator.authenticationResponseJson(
+                credential, options.getChallenge(), userStore.getRequired(username).getUserId())));
+    }
+
+    // Same for a usernameless login, the assertion carries the user handle and no username is sent
+    public AuthenticationFinishRequest discoverableAuthenticationFinishRequest(String username,
+                                                                              SoftwareAuthenticator.Credential credential) {
+        PublicKeyCredentialRequestOptions options =
+                webAuthnService.startAuthentication(relyingParty, new AuthenticationStartRequest(null));
+        return new AuthenticationFinishRequest(null, credentialJson(authenticator.authenticationResponseJson(
+                credential, options.getChallenge(), userStore.getRequired(username).getUserId())));
+    }
+
+    public static CredentialJson credentialJson(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return new CredentialJson(bytes, 0, bytes.length);
+    }
+
+    private static WebAuthnProperties properties() {
+        WebAuthnProperties properties = new WebAuthnProperties();
+        properties.setRpId(RP_ID);
+        properties.setRpName("WebAuthn Demo");
+        properties.setOrigin(ORIGIN);
+        properties.setTimeoutMs(60_000);
+        properties.validate();
+        return properties;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.store.VerificationRecord;
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.data.AuthenticationData;
+import com.webauthn4j.data.AuthenticationParameters;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.server.ServerProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Just the webAuthnManager.verify call of an authentication, with the credential's own attested credential
+// data ("cached=false") and with the copy PublicKeyCache hands out ("cached=true", lookup included).
+//
+// The same parsed assertion is verified over and over against a VerificationRecord with counter 0, the way
+// WebAuthnService builds it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AssertionVerifyBenchmark {
+
+    private static final String USERNAME = "alice";
+
+    @Param({"ES256", "RS256"})
+    public String algorithm;
+
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private AppFixture app;
+    private WebAuthnManager webAuthnManager;
+    private CredentialRecord credentialRecord;
+    private AuthenticationData authenticationData;
+    private ServerProperty serverProperty;
+    private List<byte[]> allowCredentialIds;
+
+    @Setup
+    public void setUp() {
+        app = new AppFixture();
+        webAuthnManager = WebAuthnManager.createNonStrictWebAuthnManager(app.objectConverter);
+        SoftwareAuthenticator.Credential credential = app.authenticator.createCredential(
+                "RS256".equals(algorithm) ? COSEAlgorithmIdentifier.RS256 : COSEAlgorithmIdentifier.ES256);
+        app.register(USERNAME, credential);
+
+        credentialRecord = app.userStore.getCredential(USERNAME, credential.credentialId()).credentialRecord();
+        allowCredentialIds = List.of(credential.credentialId());
+        Challenge challenge = new DefaultChallenge();
+        serverProperty = ServerProperty.builder()
+                .origin(new Origin(AppFixture.ORIGIN))
+                .rpId(AppFixture.RP_ID)
+                .challenge(challenge)
+                .build();
+        authenticationData = webAuthnManager.parseAuthenticationResponseJSON(app.authenticator.authenticationResponseJson(
+                credential, challenge, app.userStore.getRequired(USERNAME).getUserId()));
+    }
+
+    @Benchmark
+    public AuthenticationData verify() {
+        CredentialRecord record = new VerificationRecord(credentialRecord, cached
+                ? app.publicKeyCache.forVerification(credentialRecord.getAttestedCredentialData())
+                : credentialRecord.getAttestedCredentialData(), 0);
+        return webAuthnManager.verify(authenticationData,
+                new AuthenticationParameters(serverProperty, record, allowCredentialIds, false, true));
+    }
+}
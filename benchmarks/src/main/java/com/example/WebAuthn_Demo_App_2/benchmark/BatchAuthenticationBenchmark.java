@@ -0,0 +1,79 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishBatchRequest;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishBatchResponse;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// N pending authentications of N different users, finished one call at a time ("sequential") or with one
+// BatchAuthenticationService call ("batch"). The batch spreads the users over webauthn.batch.parallelism
+// fork-join workers, so the gap grows with the number of cores.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchAuthenticationBenchmark {
+
+    @Param({"16"})
+    public int size;
+
+    private AppFixture app;
+    private List<SoftwareAuthenticator.Credential> credentials;
+    private List<AuthenticationFinishRequest> requests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        app = new AppFixture();
+        credentials = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            SoftwareAuthenticator.Credential credential = app.authenticator.createCredential();
+            app.register(username(i), credential);
+            credentials.add(credential);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepare() {
+        requests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            requests.add(app.authenticationFinishRequest(username(i), credentials.get(i)));
+        }
+    }
+
+    @Benchmark
+    public List<AuthenticationFinishResponse> sequential() {
+        List<AuthenticationFinishResponse> responses = new ArrayList<>(size);
+        for (AuthenticationFinishRequest request : requests) {
+            responses.add(app.webAuthnService.finishAuthentication(app.relyingParty, request));
+        }
+        return responses;
+    }
+
+    @Benchmark
+    public AuthenticationFinishBatchResponse batch() {
+        return app.batchAuthenticationService.finishAuthentication(app.relyingParty,
+                new AuthenticationFinishBatchRequest(requests));
+    }
+
+    private static String username(int i) {
+        return "user-" + i;
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishResponse;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationStartRequest;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishResponse;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationStartRequest;
+import com.webauthn4j.data.PublicKeyCredentialCreationOptions;
+import com.webauthn4j.data.PublicKeyCredentialRequestOptions;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// One benchmark per WebAuthnService step, for both algorithms offered in pubKeyCredParams, and the
+// usernameless (discoverable credential) login next to the username-first one.
+//
+// The finish benchmarks need a fresh challenge for every call, so the matching start call and the
+// authenticator's response are prepared in a per-invocation setup and are not part of the score.
+// Those steps take tens of microseconds or more, which keeps the per-invocation overhead negligible.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CeremonyBenchmark {
+
+    private static final String USERNAME = "alice";
+
+    // A registered user with one credential of the given algorithm
+    @State(Scope.Thread)
+    public static class Ceremony {
+
+        @Param({"ES256", "RS256"})
+        public String algorithm;
+
+        AppFixture app;
+        SoftwareAuthenticator.Credential credential;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            app = new AppFixture();
+            credential = app.authenticator.createCredential(
+                    "RS256".equals(algorithm) ? COSEAlgorithmIdentifier.RS256 : COSEAlgorithmIdentifier.ES256);
+            app.register(USERNAME, credential);
+        }
+    }
+
+    // Only the finish benchmarks use these, so the start benchmarks don't pay for the extra setup.
+    // The finish benchmarks reach the app through them, since JMH hands a thread-scoped state that is
+    // also a setup dependency to the benchmark method as a separate instance.
+    @State(Scope.Thread)
+    public static class PendingRegistration {
+
+        Ceremony ceremony;
+        RegistrationFinishRequest request;
+
+        @Setup(Level.Invocation)
+        public void prepare(Ceremony ceremony) {
+            this.ceremony = ceremony;
+            // Re-registering the same credential just replaces it, so the store does not grow across invocations
+            request = ceremony.app.registrationFinishRequest(USERNAME, ceremony.credential);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PendingAuthentication {
+
+        Ceremony ceremony;
+        AuthenticationFinishRequest request;
+
+        @Setup(Level.Invocation)
+        public void prepare(Ceremony ceremony) {
+            this.ceremony = ceremony;
+            request = ceremony.app.authenticationFinishRequest(USERNAME, ceremony.credential);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PendingDiscoverableAuthentication {
+
+        Ceremony ceremony;
+        AuthenticationFinishRequest request;
+
+        @Setup(Level.Invocation)
+        public void prepare(Ceremony ceremony) {
+            this.ceremony = ceremony;
+            request = ceremony.app.discoverableAuthenticationFinishRequest(USERNAME, ceremony.credential);
+        }
+    }
+
+    @Benchmark
+    public PublicKeyCredentialCreationOptions startRegistration(Ceremony ceremony) {
+        return ceremony.app.webAuthnService.startRegistration(ceremony.app.relyingParty,
+                new RegistrationStartRequest(USERNAME, null));
+    }
+
+    @Benchmark
+    public RegistrationFinishResponse finishRegistration(PendingRegistration pending) {
+        return pending.ceremony.app.webAuthnService.finishRegistration(pending.ceremony.app.relyingParty,
+                pending.request);
+    }
+
+    @Benchmark
+    public PublicKeyCredentialRequestOptions startAuthentication(Ceremony ceremony) {
+        return ceremony.app.webAuthnService.startAuthentication(ceremony.app.relyingParty,
+                new AuthenticationStartRequest(USERNAME));
+    }
+
+    @Benchmark
+    public AuthenticationFinishResponse finishAuthentication(PendingAuthentication pending) {
+        return pending.ceremony.app.webAuthnService.finishAuthentication(pending.ceremony.app.relyingParty,
+                pending.request);
+    }
+
+    @Benchmark
+    public PublicKeyCredentialRequestOptions startDiscoverableAuthentication(Ceremony ceremony) {
+        return ceremony.app.webAuthnService.startAuthentication(ceremony.app.relyingParty,
+                new AuthenticationStartRequest(null));
+    }
+
+    @Benchmark
+    public AuthenticationFinishResponse finishDiscoverableAuthentication(PendingDiscoverableAuthentication pending) {
+        return pending.ceremony.app.webAuthnService.finishAuthentication(pending.ceremony.app.relyingParty,
+                pending.request);
+    }
+}
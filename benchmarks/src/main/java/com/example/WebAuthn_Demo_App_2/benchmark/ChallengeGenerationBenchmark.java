@@ -0,0 +1,55 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.store.SecureRandomPool;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+// Challenge and user ID generation from every core: DefaultChallenge (UUID.randomUUID()'s shared
+// SecureRandom) and one shared SecureRandom, as before, against SecureRandomPool's striped DRBGs
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ChallengeGenerationBenchmark {
+
+    private final SecureRandom sharedSecureRandom = new SecureRandom();
+    private final SecureRandomPool secureRandomPool = new SecureRandomPool();
+
+    @Benchmark
+    public Challenge defaultChallenge() {
+        return new DefaultChallenge();
+    }
+
+    @Benchmark
+    public Challenge pooledChallenge() {
+        return secureRandomPool.newChallenge();
+    }
+
+    @Benchmark
+    public byte[] sharedSecureRandomUserId() {
+        byte[] userId = new byte[32];
+        sharedSecureRandom.nextBytes(userId);
+        return userId;
+    }
+
+    @Benchmark
+    public byte[] pooledUserId() {
+        return secureRandomPool.newUserId();
+    }
+}
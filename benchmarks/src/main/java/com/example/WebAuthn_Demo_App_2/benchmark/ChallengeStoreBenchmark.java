@@ -0,0 +1,67 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.model.ChallengeType;
+import com.example.WebAuthn_Demo_App_2.model.WebAuthnChallenge;
+import com.example.WebAuthn_Demo_App_2.store.ChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.SignedTokenChallengeStore;
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Issues and consumes challenges from every core against one shared ChallengeStore,
+// the way concurrent options and finish calls hit it, for both webauthn.challenge-store.type values.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class ChallengeStoreBenchmark {
+
+    @Param({"memory", "signed-token"})
+    public String type;
+
+    private ChallengeStore challengeStore;
+
+    @Setup
+    public void setUp() {
+        AppFixture app = new AppFixture();
+        challengeStore = "signed-token".equals(type)
+                ? new SignedTokenChallengeStore(new byte[32], app.properties.getTimeoutMs(),
+                        app.properties.getChallengeStore().getMaxEntries(), app.secureRandomPool)
+                : app.challengeStore;
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+
+        private static final AtomicInteger IDS = new AtomicInteger();
+
+        final String username = "user-" + IDS.incrementAndGet();
+    }
+
+    @Benchmark
+    public Challenge put(Caller caller) {
+        return challengeStore.createAndStoreChallenge(caller.username, ChallengeType.AUTHENTICATION);
+    }
+
+    @Benchmark
+    public WebAuthnChallenge putAndTake(Caller caller) {
+        Challenge challenge = challengeStore.createAndStoreChallenge(caller.username, ChallengeType.AUTHENTICATION);
+        return challengeStore.getChallengeEntry(caller.username, ChallengeType.AUTHENTICATION, challenge);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.config.CreationOptionsMessageConverter;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationStartRequest;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.webauthn4j.converter.jackson.WebAuthnJSONModule;
+import com.webauthn4j.data.PublicKeyCredentialCreationOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Writing /register/options for a user with three passkeys: plain Jackson serialization of the whole
+// object graph vs CreationOptionsMessageConverter splicing the per-request parts into pre-encoded JSON
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreationOptionsWriteBenchmark {
+
+    private JsonMapper jsonMapper;
+    private CreationOptionsMessageConverter messageConverter;
+    private PublicKeyCredentialCreationOptions options;
+    private ByteArrayOutputStream body;
+    private HttpOutputMessage message;
+    private HttpHeaders headers;
+
+    @Setup
+    public void setUp() throws IOException {
+        AppFixture app = new AppFixture();
+        // Configured like Spring Boot's mapper in the app
+        jsonMapper = JsonMapper.builder()
+                .addModule(new WebAuthnJSONModule(app.objectConverter))
+                .changeDefaultPropertyInclusion(inclusion -> inclusion.withValueInclusion(JsonInclude.Include.NON_NULL))
+                .build();
+        messageConverter = new CreationOptionsMessageConverter(jsonMapper, app.registrationOptionsTemplate,
+                app.relyingParties);
+        for (int i = 0; i < 3; i++) {
+            app.register("alice", app.authenticator.createCredential());
+        }
+        options = app.webAuthnService.startRegistration(app.relyingParty, new RegistrationStartRequest("alice", null));
+
+        body = new ByteArrayOutputStream(1024);
+        headers = new HttpHeaders();
+        message = new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+
+        jackson();
+        byte[] expected = body.toByteArray();
+        preEncoded();
+        if (!Arrays.equals(expected, body.toByteArray())) {
+            throw new IllegalStateException("CreationOptionsMessageConverter output differs from Jackson's");
+        }
+    }
+
+    // Both write into the same reused buffer, the way either converter writes into the response
+    @Benchmark
+    public int jackson() {
+        body.reset();
+        jsonMapper.writeValue(body, options);
+        return body.size();
+    }
+
+    @Benchmark
+    public int preEncoded() throws IOException {
+        body.reset();
+        headers.clear();
+        messageConverter.write(options, null, message);
+        return body.size();
+    }
+}
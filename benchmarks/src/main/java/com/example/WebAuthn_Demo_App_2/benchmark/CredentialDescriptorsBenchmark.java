@@ -0,0 +1,53 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of getting excludeCredentials/allowCredentials and the allowed credential IDs for users with more and
+// more passkeys. Both are built in User.addCredential, so this should stay flat as the count grows.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CredentialDescriptorsBenchmark {
+
+    @Param({"1", "5", "20"})
+    public int credentials;
+
+    private User user;
+
+    @Setup
+    public void setUp() {
+        AppFixture app = new AppFixture();
+        for (int i = 0; i < credentials; i++) {
+            app.register("alice", app.authenticator.createCredential());
+        }
+        user = app.userStore.getRequired("alice");
+    }
+
+    @Benchmark
+    public List<PublicKeyCredentialDescriptor> getCredentialDescriptors() {
+        return user.getCredentialDescriptors();
+    }
+
+    @Benchmark
+    public List<byte[]> getCredentialIds() {
+        return user.getCredentialIds();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.example.WebAuthn_Demo_App_2.store.CredentialRecordCodec;
+import com.example.WebAuthn_Demo_App_2.store.CredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.CredentialTransfer;
+import com.example.WebAuthn_Demo_App_2.store.InMemoryCredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.OffHeapCredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.PublicKeyCache;
+import com.example.WebAuthn_Demo_App_2.store.SignCounterTracker;
+import com.example.WebAuthn_Demo_App_2.store.UserStore;
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Moving users with one ES256 credential each in bulk: writing them all in the CredentialTransfer format, and
+// importing that into an empty in-memory or off-heap store through UserStore.importUser, blocks decoded in parallel.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CredentialTransferBenchmark {
+
+    @Param({"100000"})
+    public int users;
+
+    @Param({"memory", "off-heap"})
+    public String storage;
+
+    private AppFixture app;
+    private CredentialRecordCodec codec;
+    private CredentialTransfer transfer;
+    private InMemoryCredentialRepository source;
+    private byte[] exported;
+    private CredentialRepository target;
+    private UserStore targetUserStore;
+
+    @Setup
+    public void setUp() throws IOException {
+        app = new AppFixture();
+        codec = new CredentialRecordCodec(app.objectConverter);
+        transfer = new CredentialTransfer(codec);
+
+        // One real registration, its key reused under a different credential ID for every user
+        SoftwareAuthenticator.Credential credential = app.authenticator.createCredential(COSEAlgorithmIdentifier.ES256);
+        app.register("template", credential);
+        CredentialRecord template = app.userStore.getCredential("template", credential.credentialId()).credentialRecord();
+        AttestedCredentialData attestedCredentialData = template.getAttestedCredentialData();
+
+        Random random = new Random(42);
+        source = new InMemoryCredentialRepository();
+        for (int i = 0; i < users; i++) {
+            byte[] userId = new byte[32];
+            random.nextBytes(userId);
+            byte[] credentialId = new byte[32];
+            random.nextBytes(credentialId);
+            User user = new User("user" + i + "@example.com", "User " + i, userId);
+            user.addCredential(new CredentialRecordImpl(null, true, false, false, 0,
+                    new AttestedCredentialData(attestedCredentialData.getAaguid(), credentialId,
+                            attestedCredentialData.getCOSEKey()),
+                    null, null, null, template.getTransports()));
+            source.restore(user);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.write(source.users(), out);
+        exported = out.toByteArray();
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTarget() {
+        target = "off-heap".equals(storage)
+                ? new OffHeapCredentialRepository(1 << 24, codec)
+                : new InMemoryCredentialRepository();
+        targetUserStore = new UserStore(target, app.secureRandomPool, new PublicKeyCache(app.properties),
+                new SignCounterTracker());
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeTarget() {
+        if (target instanceof OffHeapCredentialRepository offHeap) {
+            offHeap.close();
+        }
+    }
+
+    @Benchmark
+    public CredentialTransfer.Result write() throws IOException {
+        return transfer.write(source.users(), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public CredentialTransfer.Result importAll() throws IOException {
+        return transfer.read(new ByteArrayInputStream(exported), 0, targetUserStore::importUser, null);
+    }
+}
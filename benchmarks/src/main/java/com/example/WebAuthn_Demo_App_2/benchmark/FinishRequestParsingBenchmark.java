@@ -0,0 +1,116 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.config.FinishRequestMessageConverter;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishRequest;
+import com.webauthn4j.WebAuthnManager;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.AuthenticationData;
+import com.webauthn4j.data.RegistrationData;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Compares how a finish request body turns into webauthn4j data.
+//
+// "mapRoundTrip" is the old path: Spring binds "credential" to a Map, the service writes that map back to a
+// JSON string and webauthn4j parses the string again. "rawSlice" is the current path through
+// FinishRequestMessageConverter, where the credential stays a slice of the body until webauthn4j reads it.
+//
+// Run with the GC profiler to see the allocation difference:
+//   java -jar target/benchmarks.jar FinishRequestParsingBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FinishRequestParsingBenchmark {
+
+    private ObjectConverter objectConverter;
+    private WebAuthnManager webAuthnManager;
+    private FinishRequestMessageConverter messageConverter;
+    private byte[] registrationBody;
+    private byte[] authenticationBody;
+
+    // What the finish requests used to bind to
+    public record MapFinishRequest(String username, Map<String, Object> credential) {
+    }
+
+    @Setup
+    public void setUp() {
+        objectConverter = new ObjectConverter();
+        webAuthnManager = WebAuthnManager.createNonStrictWebAuthnManager(objectConverter);
+        messageConverter = new FinishRequestMessageConverter(objectConverter.getJsonMapper());
+
+        SoftwareAuthenticator authenticator =
+                new SoftwareAuthenticator(objectConverter, "localhost", "http://localhost:8080");
+        SoftwareAuthenticator.Credential credential = authenticator.createCredential();
+        registrationBody = body(authenticator.registrationResponseJson(credential, new DefaultChallenge()));
+        authenticationBody = body(authenticator.authenticationResponseJson(
+                credential, new DefaultChallenge(), new byte[32]));
+    }
+
+    @Benchmark
+    public RegistrationData registrationMapRoundTrip() {
+        MapFinishRequest request = objectConverter.getJsonMapper().readValue(registrationBody, MapFinishRequest.class);
+        String json = objectConverter.getJsonMapper().writeValueAsString(request.credential());
+        return webAuthnManager.parseRegistrationResponseJSON(json);
+    }
+
+    @Benchmark
+    public RegistrationData registrationRawSlice() throws IOException {
+        RegistrationFinishRequest request =
+                (RegistrationFinishRequest) messageConverter.read(RegistrationFinishRequest.class, message(registrationBody));
+        return webAuthnManager.parseRegistrationResponseJSON(request.credential().asInputStream());
+    }
+
+    @Benchmark
+    public AuthenticationData authenticationMapRoundTrip() {
+        MapFinishRequest request = objectConverter.getJsonMapper().readValue(authenticationBody, MapFinishRequest.class);
+        String json = objectConverter.getJsonMapper().writeValueAsString(request.credential());
+        return webAuthnManager.parseAuthenticationResponseJSON(json);
+    }
+
+    @Benchmark
+    public AuthenticationData authenticationRawSlice() throws IOException {
+        AuthenticationFinishRequest request =
+                (AuthenticationFinishRequest) messageConverter.read(AuthenticationFinishRequest.class, message(authenticationBody));
+        return webAuthnManager.parseAuthenticationResponseJSON(request.credential().asInputStream());
+    }
+
+    private static byte[] body(String credentialJson) {
+        return ("{\"username\":\"alice\",\"credential\":" + credentialJson + "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static HttpInputMessage message(byte[] body) {
+        return new HttpInputMessage() {
+            @Override
+            public InputStream getBody() {
+                return new ByteArrayInputStream(body);
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return new HttpHeaders();
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.config.FinishResponseMessageConverter;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishResponse;
+import com.example.WebAuthn_Demo_App_2.dto.ErrorResponse;
+import com.example.WebAuthn_Demo_App_2.exception.ChallengeException;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.webauthn4j.converter.jackson.WebAuthnJSONModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Writing a /authenticate response and a rejected challenge's error body: Spring's Jackson converter, which
+// the app used before, vs FinishResponseMessageConverter copying the values between pre-encoded fragments
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FinishResponseWriteBenchmark {
+
+    private JacksonJsonHttpMessageConverter jacksonConverter;
+    private FinishResponseMessageConverter messageConverter;
+    private AuthenticationFinishResponse authenticationResponse;
+    private ErrorResponse errorResponse;
+    private ByteArrayOutputStream body;
+    private HttpOutputMessage message;
+    private HttpHeaders headers;
+
+    @Setup
+    public void setUp() throws IOException {
+        AppFixture app = new AppFixture();
+        // Configured like Spring Boot's mapper in the app
+        JsonMapper jsonMapper = JsonMapper.builder()
+                .addModule(new WebAuthnJSONModule(app.objectConverter))
+                .changeDefaultPropertyInclusion(inclusion -> inclusion.withValueInclusion(JsonInclude.Include.NON_NULL))
+                .build();
+        jacksonConverter = new JacksonJsonHttpMessageConverter(jsonMapper);
+        messageConverter = new FinishResponseMessageConverter(jsonMapper);
+        authenticationResponse = new AuthenticationFinishResponse("alice", "AbCdEfGhIjKlMnOpQrStUvWxYz0123456789-_AbCdE", 42);
+        errorResponse = new ErrorResponse(ChallengeException.of(ChallengeException.Reason.MISMATCH).getMessage());
+
+        body = new ByteArrayOutputStream(256);
+        headers = new HttpHeaders();
+        message = new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return headers;
+            }
+        };
+
+        for (Record response : new Record[] {authenticationResponse, errorResponse}) {
+            body.reset();
+            headers.clear();
+            jacksonConverter.write(response, null, message);
+            byte[] expected = body.toByteArray();
+            body.reset();
+            headers.clear();
+            messageConverter.write(response, null, message);
+            if (!Arrays.equals(expected, body.toByteArray())) {
+                throw new IllegalStateException("FinishResponseMessageConverter output differs from Jackson's");
+            }
+        }
+    }
+
+    // All of them write into the same reused buffer, the way either converter writes into the response
+    @Benchmark
+    public int jacksonAuthentication() throws IOException {
+        body.reset();
+        headers.clear();
+        jacksonConverter.write(authenticationResponse, null, message);
+        return body.size();
+    }
+
+    @Benchmark
+    public int preEncodedAuthentication() throws IOException {
+        body.reset();
+        headers.clear();
+        messageConverter.write(authenticationResponse, null, message);
+        return body.size();
+    }
+
+    @Benchmark
+    public int jacksonError() throws IOException {
+        body.reset();
+        headers.clear();
+        jacksonConverter.write(errorResponse, null, message);
+        return body.size();
+    }
+
+    @Benchmark
+    public int preEncodedError() throws IOException {
+        body.reset();
+        headers.clear();
+        messageConverter.write(errorResponse, null, message);
+        return body.size();
+    }
+}
@@ -0,0 +1,473 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import tools.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// End to end load test: drives a running app over HTTP with SoftwareAuthenticator playing the browser and
+// the passkey, so everything from the servlet container to the stores is measured, offline.
+//
+//   java -cp target/benchmarks.jar com.example.WebAuthn_Demo_App_2.benchmark.LoadGenerator \
+//       --url http://localhost:8080 --concurrency 32 --duration 30 --register-ratio 0.2
+//
+// Each worker runs one ceremony after the other (options call, authenticator, finish call). First --users
+// users are registered to log in with, then the mix runs for --warmup seconds unmeasured and --duration
+// seconds measured. Only the HTTP calls are timed, key generation and signing happen outside the timings.
+// Heap and allocation figures come from the app's /actuator/prometheus before and after the measured run.
+// Start the app with --webauthn.rate-limit.enabled=false, or the options calls soon get 429s.
+//
+// It lives here rather than in the app's test scope because it shares SoftwareAuthenticator with the JMH
+// benchmarks, and because it is a program run by hand against a server started on its own: in test scope
+// surefire would pick it up on every build, and the shaded benchmarks jar is what gives it a runnable classpath.
+public class LoadGenerator {
+
+    enum Endpoint {
+        REGISTER_OPTIONS("register/options"),
+        REGISTER_FINISH("register/finish"),
+        AUTHENTICATE_OPTIONS("authenticate/options"),
+        AUTHENTICATE_FINISH("authenticate/finish");
+
+        private final String path;
+
+        Endpoint(String path) {
+            this.path = path;
+        }
+    }
+
+    private final Settings settings;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final ObjectConverter objectConverter = new ObjectConverter();
+    private final SoftwareAuthenticator authenticator;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicInteger userSequence = new AtomicInteger();
+
+    // Users that have finished registering and are not logging in right now. A credential is only used by
+    // one worker at a time, like a real passkey, so its signature counter never goes backwards.
+    private final BlockingQueue<LoadUser> idleUsers = new LinkedBlockingQueue<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    LoadGenerator(Settings settings) {
+        this.settings = settings;
+        URI url = URI.create(settings.url);
+        this.authenticator = new SoftwareAuthenticator(objectConverter, settings.rpId != null ? settings.rpId : url.getHost(),
+                settings.origin != null ? settings.origin : url.getScheme() + "://" + url.getAuthority());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+        if (settings == null) {
+            System.out.println(Settings.USAGE);
+            return;
+        }
+        new LoadGenerator(settings).run();
+    }
+
+    void run() throws InterruptedException {
+        System.out.printf(Locale.ROOT, "Load test against %s: %d workers, %ds measured after %ds warmup, %.0f%% registrations, "
+                        + "%.0f%% of logins usernameless, %s keys%n",
+                settings.url, settings.concurrency, settings.durationSeconds, settings.warmupSeconds,
+                settings.registerRatio * 100, settings.usernamelessRatio * 100, settings.algorithm);
+
+        long setupStart = System.nanoTime();
+        runWorkers(settings.concurrency, worker -> {
+            for (int i = worker; i < settings.users; i += settings.concurrency) {
+                worker(null).register();
+            }
+        });
+        System.out.printf(Locale.ROOT, "Registered %d users in %.1fs%n", idleUsers.size(), (System.nanoTime() - setupStart) / 1e9);
+        if (idleUsers.isEmpty() && settings.registerRatio < 1) {
+            System.out.println("No user could be registered, nothing to log in with:");
+            printErrors();
+            return;
+        }
+        errors.clear();
+
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.warmupSeconds);
+        runMix(warmupEnd, null);
+        errors.clear();
+
+        Metrics before = Metrics.scrape(client, settings.url);
+        List<Worker> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(settings.durationSeconds);
+        runMix(end, workers);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        Metrics after = Metrics.scrape(client, settings.url);
+
+        report(workers, elapsedSeconds, before, after);
+    }
+
+    private void runMix(long end, List<Worker> measured) throws InterruptedException {
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < settings.concurrency; i++) {
+            workers.add(worker(measured != null ? new EnumMap<>(Endpoint.class) : null));
+        }
+        runWorkers(settings.concurrency, index -> {
+            Worker worker = workers.get(index);
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() - end < 0) {
+                if (random.nextDouble() < settings.registerRatio) {
+                    worker.register();
+                } else {
+                    worker.login(random.nextDouble() < settings.usernamelessRatio);
+                }
+            }
+        });
+        if (measured != null) {
+            measured.addAll(workers);
+        }
+    }
+
+    private static void runWorkers(int count, WorkerBody body) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            Thread.ofVirtual().name("load-" + i).start(() -> {
+                try {
+                    body.run(index);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private Worker worker(Map<Endpoint, Samples> samples) {
+        if (samples != null) {
+            for (Endpoint endpoint : Endpoint.values()) {
+                samples.put(endpoint, new Samples());
+            }
+        }
+        return new Worker(samples);
+    }
+
+    private void report(List<Worker> workers, double elapsedSeconds, Metrics before, Metrics after) {
+        long registrations = 0;
+        long logins = 0;
+        Map<Endpoint, Samples> merged = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            Samples all = new Samples();
+            for (Worker worker : workers) {
+                all.addAll(worker.samples.get(endpoint));
+            }
+            merged.put(endpoint, all);
+        }
+        for (Worker worker : workers) {
+            registrations += worker.registrations;
+            logins += worker.logins;
+        }
+        long failed = errors.values().stream().mapToLong(LongAdder::sum).sum();
+        long ceremonies = registrations + logins;
+
+        System.out.printf(Locale.ROOT, "%nCeremonies  %8d  %8.1f/s   (%d failed)%n", ceremonies, ceremonies / elapsedSeconds, failed);
+        System.out.printf(Locale.ROOT, "  register  %8d  %8.1f/s%n", registrations, registrations / elapsedSeconds);
+        System.out.printf(Locale.ROOT, "  login     %8d  %8.1f/s%n", logins, logins / elapsedSeconds);
+
+        System.out.printf(Locale.ROOT, "%n%-22s %8s %9s %9s %9s %9s %9s%n", "Latency (ms)", "calls", "p50", "p90", "p99", "p99.9", "max");
+        for (Map.Entry<Endpoint, Samples> entry : merged.entrySet()) {
+            Samples samples = entry.getValue();
+            if (samples.size == 0) {
+                continue;
+            }
+            samples.sort();
+            System.out.printf(Locale.ROOT, "%-22s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey().path, samples.size,
+                    samples.percentile(0.50), samples.percentile(0.90), samples.percentile(0.99),
+                    samples.percentile(0.999), samples.percentile(1.0));
+        }
+
+        if (before != null && after != null) {
+            System.out.printf(Locale.ROOT, "%nHeap used      %s -> %s (%s)%n",
+                    megabytes(before.heapUsed), megabytes(after.heapUsed), signedMegabytes(after.heapUsed - before.heapUsed));
+            if (after.liveData > 0) {
+                System.out.printf(Locale.ROOT, "Live after GC  %s -> %s (%s)%n",
+                        megabytes(before.liveData), megabytes(after.liveData), signedMegabytes(after.liveData - before.liveData));
+            } else {
+                System.out.println("Live after GC  n/a, no old generation collection yet");
+            }
+            double allocated = after.allocated - before.allocated;
+            System.out.printf(Locale.ROOT, "Allocated      %s, %.1f KB per ceremony%n",
+                    megabytes(allocated), ceremonies == 0 ? 0 : allocated / ceremonies / 1024);
+        } else {
+            System.out.println("\nNo heap figures, " + settings.url + "/actuator/prometheus could not be read");
+        }
+        printErrors();
+    }
+
+    private void printErrors() {
+        errors.forEach((message, count) -> System.out.printf("  %6d x %s%n", count.sum(), message));
+    }
+
+    private static String megabytes(double bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024 * 1024));
+    }
+
+    private static String signedMegabytes(double bytes) {
+        return String.format(Locale.ROOT, "%+.1f MB", bytes / (1024 * 1024));
+    }
+
+    private COSEAlgorithmIdentifier nextAlgorithm() {
+        return switch (settings.algorithm) {
+            case "RS256" -> COSEAlgorithmIdentifier.RS256;
+            case "mixed" -> ThreadLocalRandom.current().nextBoolean() ? COSEAlgorithmIdentifier.ES256 : COSEAlgorithmIdentifier.RS256;
+            default -> COSEAlgorithmIdentifier.ES256;
+        };
+    }
+
+    private record LoadUser(String username, byte[] userId, SoftwareAuthenticator.Credential credential) {
+    }
+
+    private final class Worker {
+
+        // Null while warming up
+        private final Map<Endpoint, Samples> samples;
+        private long registrations;
+        private long logins;
+
+        Worker(Map<Endpoint, Samples> samples) {
+            this.samples = samples;
+        }
+
+        void register() {
+            String username = "load-" + runId + "-" + userSequence.incrementAndGet();
+            SoftwareAuthenticator.Credential credential = authenticator.createCredential(nextAlgorithm());
+            try {
+                JsonNode options = post(Endpoint.REGISTER_OPTIONS, "{\"username\":\"" + username + "\"}");
+                String response = authenticator.registrationResponseJson(credential, challenge(options));
+                post(Endpoint.REGISTER_FINISH, "{\"username\":\"" + username + "\",\"credential\":" + response + "}");
+                idleUsers.add(new LoadUser(username, Base64UrlUtil.decode(options.get("user").get("id").asString()), credential));
+                registrations++;
+            } catch (LoadException e) {
+                failed(e.getMessage());
+            }
+        }
+
+        void login(boolean usernameless) throws InterruptedException {
+            LoadUser user = idleUsers.poll(1, TimeUnit.SECONDS);
+            if (user == null) {
+                failed("No idle user to log in with, use more --users than --concurrency");
+                return;
+            }
+            try {
+                String username = usernameless ? "null" : "\"" + user.username() + "\"";
+                JsonNode options = post(Endpoint.AUTHENTICATE_OPTIONS, "{\"username\":" + username + "}");
+                String response = authenticator.authenticationResponseJson(user.credential(), challenge(options), user.userId());
+                post(Endpoint.AUTHENTICATE_FINISH, "{\"username\":" + username + ",\"credential\":" + response + "}");
+                logins++;
+            } catch (LoadException e) {
+                failed(e.getMessage());
+            } finally {
+                idleUsers.add(user);
+            }
+        }
+
+        private JsonNode post(Endpoint endpoint, String body) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(settings.url + "/webauthn/" + endpoint.path))
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofSeconds(60))
+                    .POST(HttpRequest.BodyPublishers.ofString(body))
+                    .build();
+            long start = System.nanoTime();
+            HttpResponse<String> response;
+            try {
+                response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            } catch (IOException e) {
+                throw new LoadException(endpoint.path + ": " + e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LoadException(endpoint.path + ": interrupted");
+            }
+            long elapsed = System.nanoTime() - start;
+            if (response.statusCode() / 100 != 2) {
+                String message = response.body().length() > 120 ? response.body().substring(0, 120) : response.body();
+                throw new LoadException(endpoint.path + ": " + response.statusCode() + " " + message);
+            }
+            if (samples != null) {
+                samples.get(endpoint).add(elapsed);
+            }
+            return objectConverter.getJsonMapper().readTree(response.body());
+        }
+
+        private Challenge challenge(JsonNode options) {
+            return new DefaultChallenge(Base64UrlUtil.decode(options.get("challenge").asString()));
+        }
+
+        private void failed(String message) {
+            errors.computeIfAbsent(message, k -> new LongAdder()).increment();
+        }
+    }
+
+    @FunctionalInterface
+    private interface WorkerBody {
+        void run(int index) throws InterruptedException;
+    }
+
+    private static final class LoadException extends RuntimeException {
+        LoadException(String message) {
+            super(message);
+        }
+    }
+
+    // Latencies in nanoseconds, one per worker and endpoint so recording takes no lock
+    private static final class Samples {
+
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(Samples other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+
+        void sort() {
+            Arrays.sort(values, 0, size);
+        }
+
+        // In milliseconds, after sort()
+        double percentile(double percentile) {
+            int index = (int) Math.ceil(percentile * size) - 1;
+            return values[Math.max(0, Math.min(size - 1, index))] / 1e6;
+        }
+    }
+
+    // The few JVM meters needed for the heap figures, read from the Prometheus text format
+    private record Metrics(double heapUsed, double liveData, double allocated) {
+
+        static Metrics scrape(HttpClient client, String url) {
+            try {
+                HttpResponse<String> response = client.send(
+                        HttpRequest.newBuilder(URI.create(url + "/actuator/prometheus")).timeout(Duration.ofSeconds(10)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    return null;
+                }
+                double heapUsed = 0;
+                double liveData = 0;
+                double allocated = 0;
+                for (String line : response.body().split("\n")) {
+                    if (line.startsWith("jvm_memory_used_bytes{") && line.contains("area=\"heap\"")) {
+                        heapUsed += value(line);
+                    } else if (line.startsWith("jvm_gc_live_data_size_bytes")) {
+                        liveData = value(line);
+                    } else if (line.startsWith("jvm_gc_memory_allocated_bytes_total")) {
+                        allocated = value(line);
+                    }
+                }
+                return new Metrics(heapUsed, liveData, allocated);
+            } catch (IOException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        private static double value(String line) {
+            return Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+        }
+    }
+
+    static final class Settings {
+
+        static final String USAGE = """
+                Options (all optional):
+                  --url <url>                  app to load, default http://localhost:8080
+                  --concurrency <n>            workers, each running one ceremony at a time, default 32
+                  --duration <seconds>         measured run, default 30
+                  --warmup <seconds>           unmeasured run before it, default 10
+                  --users <n>                  users registered up front to log in with, default 1000
+                  --register-ratio <0..1>      share of ceremonies that are registrations, default 0.1
+                  --usernameless-ratio <0..1>  share of logins without a username, default 0
+                  --algorithm <ES256|RS256|mixed>  credential keys, default ES256
+                  --rp-id <id>, --origin <url>     if they differ from the url's host and origin""";
+
+        String url = "http://localhost:8080";
+        int concurrency = 32;
+        int durationSeconds = 30;
+        int warmupSeconds = 10;
+        int users = 1000;
+        double registerRatio = 0.1;
+        double usernamelessRatio = 0;
+        String algorithm = "ES256";
+        String rpId;
+        String origin;
+
+        // Null when the usage should be printed instead
+        static Settings parse(String[] args) {
+            Settings settings = new Settings();
+            for (int i = 0; i < args.length; i++) {
+                String name = args[i];
+                if (name.equals("--help") || name.equals("-h")) {
+                    return null;
+                }
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + name);
+                }
+                String value = args[++i];
+                switch (name) {
+                    case "--url" -> settings.url = value.endsWith("/") ? value.substring(0, value.length() - 1) : value;
+                    case "--concurrency" -> settings.concurrency = Integer.parseInt(value);
+                    case "--duration" -> settings.durationSeconds = Integer.parseInt(value);
+                    case "--warmup" -> settings.warmupSeconds = Integer.parseInt(value);
+                    case "--users" -> settings.users = Integer.parseInt(value);
+                    case "--register-ratio" -> settings.registerRatio = Double.parseDouble(value);
+                    case "--usernameless-ratio" -> settings.usernamelessRatio = Double.parseDouble(value);
+                    case "--algorithm" -> settings.algorithm = value;
+                    case "--rp-id" -> settings.rpId = value;
+                    case "--origin" -> settings.origin = value;
+                    default -> throw new IllegalArgumentException("Unknown option " + name + "\n" + USAGE);
+                }
+            }
+            if (settings.concurrency <= 0 || settings.durationSeconds <= 0 || settings.warmupSeconds < 0 || settings.users < 0) {
+                throw new IllegalArgumentException("--concurrency and --duration must be positive, --warmup and --users not negative");
+            }
+            if (settings.registerRatio < 0 || settings.registerRatio > 1
+                    || settings.usernamelessRatio < 0 || settings.usernamelessRatio > 1) {
+                throw new IllegalArgumentException("Ratios must be between 0 and 1");
+            }
+            if (!List.of("ES256", "RS256", "mixed").contains(settings.algorithm)) {
+                throw new IllegalArgumentException("--algorithm must be ES256, RS256 or mixed");
+            }
+            return settings;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.service.RelyingParties;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParty;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.server.ServerProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// What a finish call does before verifying: picking the relying party by Host among 16, and building the
+// ServerProperty per call from the configured origin string, as before, vs from RelyingParty's parsed origins.
+// originCheck is the origin test webauthn4j runs on the client data's origin.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerPropertyBenchmark {
+
+    private static final int TENANTS = 16;
+
+    private final Challenge challenge = new DefaultChallenge();
+    private final Origin clientOrigin = new Origin(AppFixture.ORIGIN);
+    private AppFixture app;
+    private RelyingParties relyingParties;
+    private ServerProperty cachedServerProperty;
+
+    @Setup
+    public void setUp() {
+        app = new AppFixture();
+        List<RelyingParty> tenants = new ArrayList<>();
+        for (int i = 0; i < TENANTS; i++) {
+            String rpId = "brand" + i + ".example.com";
+            tenants.add(new RelyingParty("brand-" + i, rpId, "Brand " + i, List.of("https://" + rpId),
+                    List.of(rpId), app.userStore, app.challengeStore, app.publicKeyCache, null, null));
+        }
+        relyingParties = new RelyingParties(app.relyingParty, tenants, List.of());
+        cachedServerProperty = app.relyingParty.serverProperty(challenge);
+    }
+
+    @Benchmark
+    public RelyingParty resolveByHost() {
+        return relyingParties.resolve(null, "BRAND7.example.com");
+    }
+
+    @Benchmark
+    public RelyingParty resolveDefault() {
+        return relyingParties.resolve(null, "localhost");
+    }
+
+    @Benchmark
+    public ServerProperty perCall() {
+        return ServerProperty.builder()
+                .origin(new Origin(app.properties.getOrigin()))
+                .rpId(app.properties.getRpId())
+                .challenge(challenge)
+                .build();
+    }
+
+    @Benchmark
+    public ServerProperty cached() {
+        return app.relyingParty.serverProperty(challenge);
+    }
+
+    @Benchmark
+    public boolean originCheck() {
+        return cachedServerProperty.getOriginPredicate().test(clientOrigin);
+    }
+}
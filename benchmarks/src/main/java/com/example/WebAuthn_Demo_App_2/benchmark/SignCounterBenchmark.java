@@ -0,0 +1,81 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// UserStore.advanceCounter (tracker CAS plus the write through to the repository) from every core,
+// each thread with its own credential ("own") and all threads on the same one ("shared").
+// On the shared credential the signature counters come from one sequence, so threads that lose the
+// race see a regression, like two tabs replaying the same assertion.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class SignCounterBenchmark {
+
+    private final AtomicInteger users = new AtomicInteger();
+    private final AtomicLong sharedSignCount = new AtomicLong();
+    private AppFixture app;
+    private CredentialRecord sharedRecord;
+    private byte[] sharedCredentialId;
+
+    @Setup
+    public void setUp() {
+        app = new AppFixture();
+        sharedRecord = register("shared");
+        sharedCredentialId = sharedRecord.getAttestedCredentialData().getCredentialId();
+    }
+
+    @State(Scope.Thread)
+    public static class Own {
+
+        private String username;
+        private CredentialRecord credentialRecord;
+        private byte[] credentialId;
+        private long signCount;
+
+        @Setup
+        public void setUp(SignCounterBenchmark benchmark) {
+            username = "user" + benchmark.users.incrementAndGet();
+            credentialRecord = benchmark.register(username);
+            credentialId = credentialRecord.getAttestedCredentialData().getCredentialId();
+        }
+    }
+
+    @Benchmark
+    public boolean own(Own own) {
+        long counter = own.signCount;
+        return app.userStore.advanceCounter(own.username, own.credentialRecord, own.credentialId, counter,
+                ++own.signCount);
+    }
+
+    @Benchmark
+    public boolean shared() {
+        long signCount = sharedSignCount.incrementAndGet();
+        return app.userStore.advanceCounter("shared", sharedRecord, sharedCredentialId, signCount - 1, signCount);
+    }
+
+    private CredentialRecord register(String username) {
+        SoftwareAuthenticator.Credential credential = app.authenticator.createCredential(COSEAlgorithmIdentifier.ES256);
+        app.register(username, credential);
+        return app.userStore.getCredential(username, credential.credentialId()).credentialRecord();
+    }
+}
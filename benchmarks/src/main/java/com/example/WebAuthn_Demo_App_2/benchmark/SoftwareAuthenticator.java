@@ -0,0 +1,167 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.webauthn4j.converter.AttestationObjectConverter;
+import com.webauthn4j.converter.AuthenticatorDataConverter;
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.AuthenticatorData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.authenticator.EC2COSEKey;
+import com.webauthn4j.data.attestation.authenticator.RSACOSEKey;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+import com.webauthn4j.util.Base64UrlUtil;
+import com.webauthn4j.util.MessageDigestUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Stand-in for a platform authenticator: creates real key pairs and produces the same
+// PublicKeyCredential JSON that navigator.credentials.create()/get() hand to app.js.
+// Attestation is always "none", matching AttestationConveyancePreference.NONE in WebAuthnService.
+public class SoftwareAuthenticator {
+
+    private static final byte REGISTRATION_FLAGS =
+            (byte) (AuthenticatorData.BIT_UP | AuthenticatorData.BIT_UV | AuthenticatorData.BIT_AT);
+    private static final byte ASSERTION_FLAGS = (byte) (AuthenticatorData.BIT_UP | AuthenticatorData.BIT_UV);
+
+    private final ObjectConverter objectConverter;
+    private final AuthenticatorDataConverter authenticatorDataConverter;
+    private final AttestationObjectConverter attestationObjectConverter;
+    private final CollectedClientDataConverter collectedClientDataConverter;
+    private final byte[] rpIdHash;
+    private final Origin origin;
+    private final SecureRandom random = new SecureRandom();
+
+    public SoftwareAuthenticator(ObjectConverter objectConverter, String rpId, String origin) {
+        this.objectConverter = objectConverter;
+        this.authenticatorDataConverter = new AuthenticatorDataConverter(objectConverter);
+        this.attestationObjectConverter = new AttestationObjectConverter(objectConverter);
+        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+        this.rpIdHash = MessageDigestUtil.createSHA256().digest(rpId.getBytes(StandardCharsets.UTF_8));
+        this.origin = new Origin(origin);
+    }
+
+    // A key pair held by the authenticator, together with its credential ID and signature counter
+    public record Credential(byte[] credentialId, KeyPair keyPair, COSEAlgorithmIdentifier algorithm, AtomicLong signCount) {
+    }
+
+    public Credential createCredential() {
+        return createCredential(COSEAlgorithmIdentifier.ES256);
+    }
+
+    // Supports the two algorithms WebAuthnService offers in pubKeyCredParams: ES256 and RS256
+    public Credential createCredential(COSEAlgorithmIdentifier algorithm) {
+        try {
+            KeyPairGenerator generator;
+            if (COSEAlgorithmIdentifier.ES256.equals(algorithm)) {
+                generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+            } else if (COSEAlgorithmIdentifier.RS256.equals(algorithm)) {
+                generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+            } else {
+                throw new IllegalArgumentException("Unsupported algorithm: " + algorithm);
+            }
+            byte[] credentialId = new byte[32];
+            random.nextBytes(credentialId);
+            return new Credential(credentialId, generator.generateKeyPair(), algorithm, new AtomicLong());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to generate credential key pair", e);
+        }
+    }
+
+    // Response to navigator.credentials.create() for the given challenge, as PublicKeyCredential.toJSON() returns it
+    public String registrationResponseJson(Credential credential, Challenge challenge) {
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(
+                AAGUID.ZERO,
+                credential.credentialId(),
+                coseKey(credential)
+        );
+        AuthenticatorData<RegistrationExtensionAuthenticatorOutput> authenticatorData =
+                new AuthenticatorData<>(rpIdHash, REGISTRATION_FLAGS, credential.signCount().get(), attestedCredentialData);
+        byte[] attestationObject = attestationObjectConverter.convertToBytes(
+                new AttestationObject(authenticatorData, new NoneAttestationStatement()));
+        byte[] clientDataJson = clientData(ClientDataType.WEBAUTHN_CREATE, challenge);
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("clientDataJSON", Base64UrlUtil.encodeToString(clientDataJson));
+        response.put("attestationObject", Base64UrlUtil.encodeToString(attestationObject));
+        response.put("transports", List.of("internal"));
+        return publicKeyCredentialJson(credential, response);
+    }
+
+    // Response to navigator.credentials.get(), signed with the credential's private key
+    public String authenticationResponseJson(Credential credential, Challenge challenge, byte[] userHandle) {
+        byte[] authenticatorData = authenticatorDataConverter.convert(
+                new AuthenticatorData<>(rpIdHash, ASSERTION_FLAGS, credential.signCount().incrementAndGet()));
+        byte[] clientDataJson = clientData(ClientDataType.WEBAUTHN_GET, challenge);
+        byte[] clientDataHash = MessageDigestUtil.createSHA256().digest(clientDataJson);
+        byte[] signedData = ByteBuffer.allocate(authenticatorData.length + clientDataHash.length)
+                .put(authenticatorData)
+                .put(clientDataHash)
+                .array();
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("clientDataJSON", Base64UrlUtil.encodeToString(clientDataJson));
+        response.put("authenticatorData", Base64UrlUtil.encodeToString(authenticatorData));
+        response.put("signature", Base64UrlUtil.encodeToString(sign(credential, signedData)));
+        if (userHandle != null) {
+            response.put("userHandle", Base64UrlUtil.encodeToString(userHandle));
+        }
+        return publicKeyCredentialJson(credential, response);
+    }
+
+    private byte[] clientData(ClientDataType type, Challenge challenge) {
+        return collectedClientDataConverter.convertToBytes(new CollectedClientData(type, challenge, origin, false, null));
+    }
+
+    private byte[] sign(Credential credential, byte[] signedData) {
+        try {
+            Signature signature = Signature.getInstance(
+                    COSEAlgorithmIdentifier.RS256.equals(credential.algorithm()) ? "SHA256withRSA" : "SHA256withECDSA");
+            signature.initSign(credential.keyPair().getPrivate());
+            signature.update(signedData);
+            return signature.sign();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to sign assertion", e);
+        }
+    }
+
+    private COSEKey coseKey(Credential credential) {
+        if (COSEAlgorithmIdentifier.RS256.equals(credential.algorithm())) {
+            return RSACOSEKey.create(credential.keyPair(), credential.algorithm());
+        }
+        return EC2COSEKey.create(credential.keyPair(), credential.algorithm());
+    }
+
+    private String publicKeyCredentialJson(Credential credential, Map<String, Object> response) {
+        String id = Base64UrlUtil.encodeToString(credential.credentialId());
+        Map<String, Object> publicKeyCredential = new LinkedHashMap<>();
+        publicKeyCredential.put("id", id);
+        publicKeyCredential.put("rawId", id);
+        publicKeyCredential.put("type", "public-key");
+        publicKeyCredential.put("authenticatorAttachment", "platform");
+        publicKeyCredential.put("response", response);
+        publicKeyCredential.put("clientExtensionResults", Map.of());
+        return objectConverter.getJsonMapper().writeValueAsString(publicKeyCredential);
+    }
+}
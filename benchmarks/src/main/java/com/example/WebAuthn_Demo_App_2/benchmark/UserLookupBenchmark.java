@@ -0,0 +1,71 @@
+package com.example.WebAuthn_Demo_App_2.benchmark;
+
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.example.WebAuthn_Demo_App_2.store.UserIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Finding a user by username among many, the ConcurrentHashMap InMemoryCredentialRepository used to keep
+// vs UserIndex. Lookups come in random order with fresh strings, like usernames parsed from requests.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UserLookupBenchmark {
+
+    @Param({"10000", "1000000"})
+    public int users;
+
+    private Map<String, User> concurrentHashMap;
+    private UserIndex userIndex;
+    private String[] lookups;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        concurrentHashMap = new ConcurrentHashMap<>();
+        userIndex = new UserIndex();
+        lookups = new String[users];
+        for (int i = 0; i < users; i++) {
+            User user = new User("user" + i + "@example.com", "User " + i, new byte[32]);
+            concurrentHashMap.put(user.getUsername(), user);
+            userIndex.putIfAbsent(user);
+            lookups[i] = new String(user.getUsername().toCharArray());
+        }
+        Collections.shuffle(Arrays.asList(lookups), new Random(42));
+    }
+
+    private String nextUsername() {
+        String username = lookups[next];
+        next = next + 1 == lookups.length ? 0 : next + 1;
+        return username;
+    }
+
+    @Benchmark
+    public User concurrentHashMap() {
+        return concurrentHashMap.get(nextUsername());
+    }
+
+    @Benchmark
+    public User userIndex() {
+        return userIndex.get(nextUsername());
+    }
+}
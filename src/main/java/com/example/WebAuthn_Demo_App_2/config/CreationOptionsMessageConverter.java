@@ -0,0 +1,194 @@
+package com.example.WebAuthn_Demo_App_2.config;
+
+import com.example.WebAuthn_Demo_App_2.service.RegistrationOptionsTemplate;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParties;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParty;
+import com.webauthn4j.data.PublicKeyCredentialCreationOptions;
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.data.PublicKeyCredentialRpEntity;
+import com.webauthn4j.data.PublicKeyCredentialUserEntity;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import tools.jackson.core.Base64Variant;
+import tools.jackson.core.Base64Variants;
+import tools.jackson.core.JsonGenerator;
+import tools.jackson.core.SerializableString;
+import tools.jackson.core.io.SerializedString;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Writes /register/options responses from JSON fragments encoded once at startup.
+//
+// pubKeyCredParams, timeout, authenticatorSelection, hints and attestation come from RegistrationOptionsTemplate
+// and rp from the RelyingParty the request was for, and are copied in as pre-encoded bytes, only the user entity, challenge and
+// excludeCredentials are generated per request. The output is the same as the default Jackson converter's,
+// any part that isn't the template's own instance just goes through the regular mapper.
+public class CreationOptionsMessageConverter extends AbstractHttpMessageConverter<PublicKeyCredentialCreationOptions> {
+
+    private static final SerializedString RP = new SerializedString("rp");
+    private static final SerializedString USER = new SerializedString("user");
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString NAME = new SerializedString("name");
+    private static final SerializedString DISPLAY_NAME = new SerializedString("displayName");
+    private static final SerializedString CHALLENGE = new SerializedString("challenge");
+    private static final SerializedString PUB_KEY_CRED_PARAMS = new SerializedString("pubKeyCredParams");
+    private static final SerializedString TIMEOUT = new SerializedString("timeout");
+    private static final SerializedString EXCLUDE_CREDENTIALS = new SerializedString("excludeCredentials");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString TRANSPORTS = new SerializedString("transports");
+    private static final SerializedString AUTHENTICATOR_SELECTION = new SerializedString("authenticatorSelection");
+    private static final SerializedString HINTS = new SerializedString("hints");
+    private static final SerializedString ATTESTATION = new SerializedString("attestation");
+    private static final SerializedString ATTESTATION_FORMATS = new SerializedString("attestationFormats");
+    private static final SerializedString EXTENSIONS = new SerializedString("extensions");
+
+    // Unpadded base64url, what WebAuthnJSONModule writes for challenges and IDs
+    private static final Base64Variant BASE64_URL = Base64Variants.MODIFIED_FOR_URL;
+
+    private final JsonMapper jsonMapper;
+    private final RegistrationOptionsTemplate template;
+    // By the relying party's own rp entity instance, the map is never written after construction
+    private final Map<PublicKeyCredentialRpEntity, SerializedString> rpJson = new IdentityHashMap<>();
+    private final SerializedString pubKeyCredParamsJson;
+    private final SerializedString authenticatorSelectionJson;
+    private final SerializedString hintsJson;
+    private final SerializedString attestationJson;
+
+    public CreationOptionsMessageConverter(JsonMapper jsonMapper, RegistrationOptionsTemplate template,
+                                           RelyingParties relyingParties) {
+        super(MediaType.APPLICATION_JSON);
+        this.jsonMapper = jsonMapper;
+        this.template = template;
+        for (RelyingParty relyingParty : relyingParties.all()) {
+            rpJson.put(relyingParty.getRpEntity(), encode(relyingParty.getRpEntity()));
+        }
+        this.pubKeyCredParamsJson = encode(template.getPubKeyCredParams());
+        this.authenticatorSelectionJson = encode(template.getAuthenticatorSelection());
+        this.hintsJson = encode(template.getHints());
+        this.attestationJson = encode(template.getAttestation());
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PublicKeyCredentialCreationOptions.class == clazz;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected PublicKeyCredentialCreationOptions readInternal(Class<? extends PublicKeyCredentialCreationOptions> clazz,
+                                                              HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Creation options are never read from requests", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(PublicKeyCredentialCreationOptions options, HttpOutputMessage outputMessage)
+            throws IOException {
+        try (JsonGenerator generator = jsonMapper.createGenerator(outputMessage.getBody())) {
+            generator.writeStartObject();
+            writeRp(generator, options.getRp());
+            writeUser(generator, options.getUser());
+            if (options.getChallenge() != null) {
+                writeBinary(generator, CHALLENGE, options.getChallenge().getValue());
+            }
+            writeConstant(generator, PUB_KEY_CRED_PARAMS, options.getPubKeyCredParams(),
+                    template.getPubKeyCredParams(), pubKeyCredParamsJson);
+            if (options.getTimeout() != null) {
+                generator.writeName(TIMEOUT);
+                generator.writeNumber(options.getTimeout());
+            }
+            writeExcludeCredentials(generator, options);
+            writeConstant(generator, AUTHENTICATOR_SELECTION, options.getAuthenticatorSelection(),
+                    template.getAuthenticatorSelection(), authenticatorSelectionJson);
+            writeConstant(generator, HINTS, options.getHints(), template.getHints(), hintsJson);
+            writeConstant(generator, ATTESTATION, options.getAttestation(), template.getAttestation(), attestationJson);
+            writePojo(generator, ATTESTATION_FORMATS, options.getAttestationFormats());
+            writePojo(generator, EXTENSIONS, options.getExtensions());
+            generator.writeEndObject();
+        }
+    }
+
+    private void writeRp(JsonGenerator generator, PublicKeyCredentialRpEntity rp) {
+        SerializedString json = rp != null ? rpJson.get(rp) : null;
+        if (json != null) {
+            generator.writeName(RP);
+            generator.writeRawValue(json);
+        } else {
+            writePojo(generator, RP, rp);
+        }
+    }
+
+    private void writeUser(JsonGenerator generator, PublicKeyCredentialUserEntity user) {
+        if (user == null) {
+            return;
+        }
+        generator.writeName(USER);
+        generator.writeStartObject();
+        writeBinary(generator, ID, user.getId());
+        writeString(generator, NAME, user.getName());
+        writeString(generator, DISPLAY_NAME, user.getDisplayName());
+        generator.writeEndObject();
+    }
+
+    private void writeExcludeCredentials(JsonGenerator generator, PublicKeyCredentialCreationOptions options) {
+        if (options.getExcludeCredentials() == null) {
+            return;
+        }
+        generator.writeName(EXCLUDE_CREDENTIALS);
+        generator.writeStartArray();
+        for (PublicKeyCredentialDescriptor descriptor : options.getExcludeCredentials()) {
+            generator.writeStartObject();
+            writeString(generator, TYPE, descriptor.getType() == null ? null : descriptor.getType().getValue());
+            writeBinary(generator, ID, descriptor.getId());
+            writePojo(generator, TRANSPORTS, descriptor.getTransports());
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeConstant(JsonGenerator generator, SerializableString name, Object value,
+                               Object templateValue, SerializedString templateJson) {
+        if (value == templateValue) {
+            generator.writeName(name);
+            generator.writeRawValue(templateJson);
+        } else {
+            writePojo(generator, name, value);
+        }
+    }
+
+    private static void writeString(JsonGenerator generator, SerializableString name, String value) {
+        if (value != null) {
+            generator.writeName(name);
+            generator.writeString(value);
+        }
+    }
+
+    // Encoded straight into the output buffer, no intermediate String
+    private static void writeBinary(JsonGenerator generator, SerializableString name, byte[] value) {
+        if (value != null) {
+            generator.writeName(name);
+            generator.writeBinary(BASE64_URL, value, 0, value.length);
+        }
+    }
+
+    private static void writePojo(JsonGenerator generator, SerializableString name, Object value) {
+        // Nulls are left out, the same as spring.jackson.default-property-inclusion=non_null
+        if (value != null) {
+            generator.writeName(name);
+            generator.writePOJO(value);
+        }
+    }
+
+    private SerializedString encode(Object value) {
+        return new SerializedString(jsonMapper.writeValueAsString(value));
+    }
+}
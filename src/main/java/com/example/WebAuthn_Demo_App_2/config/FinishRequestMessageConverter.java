@@ -0,0 +1,111 @@
+package com.example.WebAuthn_Demo_App_2.config;
+
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishBatchRequest;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.dto.CredentialJson;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishRequest;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads the finish request bodies with a streaming parser. Only "username" is decoded here, the "credential"
+// object is skipped over and kept as a slice of the body bytes, so webauthn4j parses it exactly once.
+// A batch body is {"assertions": [...]} with one such object per assertion, all sharing the one body array.
+public class FinishRequestMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    private final JsonMapper jsonMapper;
+
+    public FinishRequestMessageConverter(JsonMapper jsonMapper) {
+        super(MediaType.APPLICATION_JSON);
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == RegistrationFinishRequest.class
+                || clazz == AuthenticationFinishRequest.class
+                || clazz == AuthenticationFinishBatchRequest.class;
+    }
+
+    // Read only, responses go through the converters Spring Boot registers
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        byte[] body = inputMessage.getBody().readAllBytes();
+        try (JsonParser parser = jsonMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new HttpMessageNotReadableException("Expected a JSON object", inputMessage);
+            }
+            if (clazz == AuthenticationFinishBatchRequest.class) {
+                return readBatch(parser, body, inputMessage);
+            }
+            AuthenticationFinishRequest request = readFinishRequest(parser, body);
+            if (clazz == RegistrationFinishRequest.class) {
+                return new RegistrationFinishRequest(request.username(), request.credential());
+            }
+            return request;
+        } catch (JacksonException e) {
+            throw new HttpMessageNotReadableException("Invalid JSON request body", e, inputMessage);
+        }
+    }
+
+    private AuthenticationFinishBatchRequest readBatch(JsonParser parser, byte[] body, HttpInputMessage inputMessage) {
+        List<AuthenticationFinishRequest> assertions = null;
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("assertions".equals(name) && value == JsonToken.START_ARRAY) {
+                assertions = new ArrayList<>();
+                for (JsonToken item; (item = parser.nextToken()) != JsonToken.END_ARRAY; ) {
+                    if (item != JsonToken.START_OBJECT) {
+                        throw new HttpMessageNotReadableException("Expected a JSON object in assertions", inputMessage);
+                    }
+                    assertions.add(readFinishRequest(parser, body));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new AuthenticationFinishBatchRequest(assertions);
+    }
+
+    // Reads the fields of the object the parser has just entered, up to and including its END_OBJECT
+    private AuthenticationFinishRequest readFinishRequest(JsonParser parser, byte[] body) {
+        String username = null;
+        CredentialJson credential = null;
+        while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("username".equals(name) && value == JsonToken.VALUE_STRING) {
+                username = parser.getString();
+            } else if ("credential".equals(name) && value == JsonToken.START_OBJECT) {
+                int start = (int) parser.currentTokenLocation().getByteOffset();
+                parser.skipChildren();
+                int end = (int) parser.currentTokenLocation().getByteOffset() + 1;
+                credential = new CredentialJson(body, start, end - start);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new AuthenticationFinishRequest(username, credential);
+    }
+
+    // Never called, canWrite is false for every type
+    @Override
+    protected void writeInternal(Object o, HttpOutputMessage outputMessage) {
+    }
+}
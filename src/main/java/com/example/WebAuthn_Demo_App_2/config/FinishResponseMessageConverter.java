@@ -0,0 +1,129 @@
+package com.example.WebAuthn_Demo_App_2.config;
+
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishResponse;
+import com.example.WebAuthn_Demo_App_2.dto.ErrorResponse;
+import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishResponse;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// Writes the finish responses and every error body straight into one byte array sized for them.
+//
+// These are small records with a fixed shape, so the field names and punctuation are encoded once here and
+// only the values get copied in: no generator, no serializer lookup, and a Content-Length instead of a
+// chunked body. Values are mostly base64url IDs and plain usernames. Anything that would need escaping or
+// isn't ASCII (or is null) goes through the regular mapper instead, so the output is always the same as
+// the default Jackson converter's.
+public class FinishResponseMessageConverter extends AbstractHttpMessageConverter<Record> {
+
+    private static final byte[] USERNAME = ascii("{\"username\":\"");
+    private static final byte[] CREDENTIAL_ID = ascii("\",\"credentialId\":\"");
+    private static final byte[] SIGN_COUNT = ascii("\",\"signCount\":");
+    private static final byte[] ERROR = ascii("{\"error\":\"");
+    private static final byte[] END_STRING_OBJECT = ascii("\"}");
+    private static final byte END_OBJECT = '}';
+
+    private final JsonMapper jsonMapper;
+
+    public FinishResponseMessageConverter(JsonMapper jsonMapper) {
+        super(MediaType.APPLICATION_JSON);
+        this.jsonMapper = jsonMapper;
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == RegistrationFinishResponse.class
+                || clazz == AuthenticationFinishResponse.class
+                || clazz == ErrorResponse.class;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Record readInternal(Class<? extends Record> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Finish responses are never read from requests", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(Record response, HttpOutputMessage outputMessage) throws IOException {
+        byte[] body = switch (response) {
+            case RegistrationFinishResponse r -> credentialResponse(r.username(), r.credentialId(), r.signCount());
+            case AuthenticationFinishResponse r -> credentialResponse(r.username(), r.credentialId(), r.signCount());
+            case ErrorResponse r -> errorResponse(r.error());
+            default -> null;
+        };
+        if (body == null) {
+            body = jsonMapper.writeValueAsBytes(response);
+        }
+        // Headers go out with the first write to the body, so this still gets in
+        outputMessage.getHeaders().setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+
+    // Null when a value needs the mapper
+    private static byte[] credentialResponse(String username, String credentialId, long signCount) {
+        if (!isPlain(username) || !isPlain(credentialId)) {
+            return null;
+        }
+        String count = Long.toString(signCount);
+        byte[] body = new byte[USERNAME.length + username.length() + CREDENTIAL_ID.length + credentialId.length()
+                + SIGN_COUNT.length + count.length() + 1];
+        int position = put(body, 0, USERNAME);
+        position = put(body, position, username);
+        position = put(body, position, CREDENTIAL_ID);
+        position = put(body, position, credentialId);
+        position = put(body, position, SIGN_COUNT);
+        position = put(body, position, count);
+        body[position] = END_OBJECT;
+        return body;
+    }
+
+    private static byte[] errorResponse(String error) {
+        if (!isPlain(error)) {
+            return null;
+        }
+        byte[] body = new byte[ERROR.length + error.length() + END_STRING_OBJECT.length];
+        int position = put(body, 0, ERROR);
+        position = put(body, position, error);
+        put(body, position, END_STRING_OBJECT);
+        return body;
+    }
+
+    // Printable ASCII that JSON takes as is, one byte per char
+    private static boolean isPlain(String value) {
+        if (value == null) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c > 0x7E || c == '"' || c == '\\') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int put(byte[] body, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, body, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    @SuppressWarnings("deprecation") // Only ever called with plain ASCII, so the low byte is the whole char
+    private static int put(byte[] body, int position, String value) {
+        value.getBytes(0, value.length(), body, position);
+        return position + value.length();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
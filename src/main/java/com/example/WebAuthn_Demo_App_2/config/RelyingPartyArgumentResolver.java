@@ -0,0 +1,42 @@
+package com.example.WebAuthn_Demo_App_2.config;
+
+import com.example.WebAuthn_Demo_App_2.service.RelyingParties;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParty;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.core.MethodParameter;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+// Fills RelyingParty controller parameters: the {rp} path variable if the mapping has one, else the Host header
+public class RelyingPartyArgumentResolver implements HandlerMethodArgumentResolver {
+
+    private static final String PATH_VARIABLE = "rp";
+
+    private final RelyingParties relyingParties;
+
+    public RelyingPartyArgumentResolver(RelyingParties relyingParties) {
+        this.relyingParties = relyingParties;
+    }
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.getParameterType() == RelyingParty.class;
+    }
+
+    @Override
+    public RelyingParty resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                        NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        HttpServletRequest request = webRequest.getNativeRequest(HttpServletRequest.class);
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables =
+                (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        String id = variables != null ? variables.get(PATH_VARIABLE) : null;
+        // The Host header without the port
+        return relyingParties.resolve(id, request.getServerName());
+    }
+}
@@ -1,14 +1,44 @@
 package com.example.WebAuthn_Demo_App_2.config;
 
+import com.example.WebAuthn_Demo_App_2.service.CeremonyExecutor;
+import com.example.WebAuthn_Demo_App_2.service.CredentialImport;
+import com.example.WebAuthn_Demo_App_2.service.DirectCeremonyExecutor;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParties;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParty;
+import com.example.WebAuthn_Demo_App_2.service.VirtualThreadCeremonyExecutor;
+import com.example.WebAuthn_Demo_App_2.store.AttestationArchive;
+import com.example.WebAuthn_Demo_App_2.store.ChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.CredentialRecordCodec;
+import com.example.WebAuthn_Demo_App_2.store.CredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.CredentialSnapshots;
+import com.example.WebAuthn_Demo_App_2.store.CredentialTransfer;
+import com.example.WebAuthn_Demo_App_2.store.InMemoryChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.InMemoryCredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.MappedFileCredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.OffHeapCredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.PublicKeyCache;
+import com.example.WebAuthn_Demo_App_2.store.SecureRandomPool;
+import com.example.WebAuthn_Demo_App_2.store.SignCounterTracker;
+import com.example.WebAuthn_Demo_App_2.store.SignedTokenChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.UserStore;
 import com.webauthn4j.WebAuthnManager;
 import com.webauthn4j.converter.jackson.WebAuthnJSONModule;
 import com.webauthn4j.converter.util.ObjectConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import tools.jackson.databind.JacksonModule;
 
-import java.security.SecureRandom;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Configuration
 @EnableConfigurationProperties(WebAuthnProperties.class)
@@ -25,14 +55,250 @@ public class WebAuthnConfig {
         return new WebAuthnJSONModule(objectConverter);
     }
 
+    // The one manager, used by WebAuthnService. Counter regressions are caught by SignCounterTracker after verify,
+    // atomically, webauthn4j's own check would only compare against a snapshot, so it is switched off here.
     @Bean
     public WebAuthnManager webAuthnManager(ObjectConverter objectConverter) {
-        return WebAuthnManager.createNonStrictWebAuthnManager(objectConverter);
+        WebAuthnManager webAuthnManager = WebAuthnManager.createNonStrictWebAuthnManager(objectConverter);
+        webAuthnManager.getAuthenticationDataVerifier().setMaliciousCounterValueHandler(authenticationObject -> {
+        });
+        return webAuthnManager;
     }
 
-    // Used to generate user IDs in UserStore
     @Bean
-    public SecureRandom secureRandom() {
-        return new SecureRandom();
+    public CredentialRecordCodec credentialRecordCodec(ObjectConverter objectConverter) {
+        return new CredentialRecordCodec(objectConverter);
+    }
+
+    @Bean
+    public CredentialTransfer credentialTransfer(CredentialRecordCodec credentialRecordCodec) {
+        return new CredentialTransfer(credentialRecordCodec);
+    }
+
+    // Default storage, everything stays on the heap
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.storage.type", havingValue = WebAuthnProperties.Storage.MEMORY, matchIfMissing = true)
+    public InMemoryCredentialRepository inMemoryCredentialRepository() {
+        return new InMemoryCredentialRepository();
+    }
+
+    // Snapshots of the heap storage, the last one is loaded here before the server starts taking requests
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.storage.snapshot.enabled", havingValue = "true")
+    public CredentialSnapshots credentialSnapshots(WebAuthnProperties properties,
+                                                   InMemoryCredentialRepository repository,
+                                                   CredentialRecordCodec credentialRecordCodec) {
+        WebAuthnProperties.Storage.Snapshot snapshot = properties.getStorage().getSnapshot();
+        return new CredentialSnapshots(
+                Path.of(snapshot.getFile()),
+                snapshot.getIntervalMs(),
+                repository,
+                credentialRecordCodec
+        );
+    }
+
+    // Persistent storage in memory-mapped log segments under webauthn.storage.directory
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.storage.type", havingValue = WebAuthnProperties.Storage.MAPPED_FILE)
+    public CredentialRepository mappedFileCredentialRepository(WebAuthnProperties properties,
+                                                               CredentialRecordCodec credentialRecordCodec) {
+        WebAuthnProperties.Storage storage = properties.getStorage();
+        return new MappedFileCredentialRepository(
+                Path.of(storage.getDirectory()),
+                storage.getSegmentSizeBytes(),
+                storage.getCompactionIntervalMs(),
+                storage.getDecodedUserCacheEntries(),
+                credentialRecordCodec
+        );
+    }
+
+    // Credential records in native memory segments of webauthn.storage.segment-size-bytes, see OffHeapCredentialRepository
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.storage.type", havingValue = WebAuthnProperties.Storage.OFF_HEAP)
+    public OffHeapCredentialRepository offHeapCredentialRepository(WebAuthnProperties properties,
+                                                                   CredentialRecordCodec credentialRecordCodec) {
+        return new OffHeapCredentialRepository(properties.getStorage().getSegmentSizeBytes(), credentialRecordCodec);
+    }
+
+    // Full attestations of new registrations, compressed into webauthn.attestation-archive.file
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.attestation-archive.enabled", havingValue = "true")
+    public AttestationArchive attestationArchive(WebAuthnProperties properties) {
+        return new AttestationArchive(
+                Path.of(properties.getAttestationArchive().getFile()),
+                properties.getRpId(),
+                properties.getOrigin()
+        );
+    }
+
+    // Default challenge store, options and finish calls have to reach the same node
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.challenge-store.type", havingValue = WebAuthnProperties.ChallengeStore.MEMORY, matchIfMissing = true)
+    public ChallengeStore inMemoryChallengeStore(WebAuthnProperties properties, SecureRandomPool secureRandomPool) {
+        return new InMemoryChallengeStore(properties, secureRandomPool);
+    }
+
+    // Stateless signed challenges, for several nodes sharing webauthn.challenge-store.secret
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.challenge-store.type", havingValue = WebAuthnProperties.ChallengeStore.SIGNED_TOKEN)
+    public ChallengeStore signedTokenChallengeStore(WebAuthnProperties properties, SecureRandomPool secureRandomPool) {
+        return new SignedTokenChallengeStore(
+                properties.getChallengeStore().getSecretBytes(),
+                properties.getTimeoutMs(),
+                properties.getChallengeStore().getMaxEntries(),
+                secureRandomPool
+        );
+    }
+
+    // The relying party configured by webauthn.rp-id on the stores above, plus one per webauthn.relying-parties
+    // entry. Those get stores of their own, of the same types as the default one's, so users, credentials and
+    // challenges never cross between relying parties.
+    @Bean
+    public RelyingParties relyingParties(WebAuthnProperties properties,
+                                         UserStore userStore,
+                                         ChallengeStore challengeStore,
+                                         PublicKeyCache publicKeyCache,
+                                         Optional<AttestationArchive> attestationArchive,
+                                         Optional<CredentialSnapshots> credentialSnapshots,
+                                         SecureRandomPool secureRandomPool,
+                                         CredentialRecordCodec credentialRecordCodec) {
+        RelyingParty defaultRelyingParty = new RelyingParty(
+                WebAuthnProperties.RelyingParty.DEFAULT_ID,
+                properties.getRpId(),
+                properties.getRpName(),
+                List.of(properties.getOrigin()),
+                List.of(),
+                userStore,
+                challengeStore,
+                publicKeyCache,
+                attestationArchive.orElse(null),
+                credentialSnapshots.orElse(null)
+        );
+        List<RelyingParty> others = new ArrayList<>();
+        List<AutoCloseable> resources = new ArrayList<>();
+        for (Map.Entry<String, WebAuthnProperties.RelyingParty> entry : properties.getRelyingParties().entrySet()) {
+            String id = entry.getKey();
+            WebAuthnProperties.RelyingParty config = entry.getValue();
+            CredentialRepository repository = tenantCredentialRepository(properties, id, credentialRecordCodec, resources);
+            CredentialSnapshots tenantCredentialSnapshots = null;
+            if (repository instanceof InMemoryCredentialRepository inMemory
+                    && properties.getStorage().getSnapshot().isEnabled()) {
+                WebAuthnProperties.Storage.Snapshot snapshot = properties.getStorage().getSnapshot();
+                tenantCredentialSnapshots = new CredentialSnapshots(
+                        Path.of(snapshot.getFile() + "." + id),
+                        snapshot.getIntervalMs(),
+                        inMemory,
+                        credentialRecordCodec
+                );
+                resources.add(tenantCredentialSnapshots);
+            }
+            PublicKeyCache tenantPublicKeyCache = new PublicKeyCache(properties);
+            AttestationArchive tenantAttestationArchive = null;
+            if (properties.getAttestationArchive().isEnabled()) {
+                tenantAttestationArchive = new AttestationArchive(
+                        Path.of(properties.getAttestationArchive().getFile() + "." + id),
+                        config.getRpId(),
+                        config.getOrigins().getFirst()
+                );
+                resources.add(tenantAttestationArchive);
+            }
+            others.add(new RelyingParty(
+                    id,
+                    config.getRpId(),
+                    config.getRpName(),
+                    config.getOrigins(),
+                    config.effectiveHosts(),
+                    new UserStore(repository, secureRandomPool, tenantPublicKeyCache, new SignCounterTracker()),
+                    tenantChallengeStore(properties, id, secureRandomPool),
+                    tenantPublicKeyCache,
+                    tenantAttestationArchive,
+                    tenantCredentialSnapshots
+            ));
+        }
+        return new RelyingParties(defaultRelyingParty, others, resources);
+    }
+
+    // Next to the default relying party's: mapped-file directories get the ID appended, like snapshot files
+    private static CredentialRepository tenantCredentialRepository(WebAuthnProperties properties, String id,
+                                                                   CredentialRecordCodec credentialRecordCodec,
+                                                                   List<AutoCloseable> resources) {
+        WebAuthnProperties.Storage storage = properties.getStorage();
+        switch (storage.getType()) {
+            case WebAuthnProperties.Storage.MAPPED_FILE -> {
+                MappedFileCredentialRepository repository = new MappedFileCredentialRepository(
+                        Path.of(storage.getDirectory(), id),
+                        storage.getSegmentSizeBytes(),
+                        storage.getCompactionIntervalMs(),
+                        storage.getDecodedUserCacheEntries(),
+                        credentialRecordCodec
+                );
+                resources.add(repository);
+                return repository;
+            }
+            case WebAuthnProperties.Storage.OFF_HEAP -> {
+                OffHeapCredentialRepository repository =
+                        new OffHeapCredentialRepository(storage.getSegmentSizeBytes(), credentialRecordCodec);
+                resources.add(repository);
+                return repository;
+            }
+            default -> {
+                return new InMemoryCredentialRepository();
+            }
+        }
+    }
+
+    // A signed-token store signs with a key derived from webauthn.challenge-store.secret and the ID, so a token
+    // issued for one relying party is never accepted by another
+    private static ChallengeStore tenantChallengeStore(WebAuthnProperties properties, String id,
+                                                       SecureRandomPool secureRandomPool) {
+        if (!WebAuthnProperties.ChallengeStore.SIGNED_TOKEN.equals(properties.getChallengeStore().getType())) {
+            return new InMemoryChallengeStore(properties, secureRandomPool);
+        }
+        byte[] secret;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(properties.getChallengeStore().getSecretBytes(), "HmacSHA256"));
+            secret = mac.doFinal(("rp:" + id).getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+        return new SignedTokenChallengeStore(
+                secret,
+                properties.getTimeoutMs(),
+                properties.getChallengeStore().getMaxEntries(),
+                secureRandomPool
+        );
+    }
+
+    // Bulk import on startup, into relying parties whose snapshots (if any) have been loaded already
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.migration.import-file")
+    public CredentialImport credentialImport(WebAuthnProperties properties,
+                                             RelyingParties relyingParties,
+                                             CredentialTransfer credentialTransfer) {
+        return new CredentialImport(
+                Path.of(properties.getMigration().getImportFile()),
+                WebAuthnProperties.Storage.MAPPED_FILE.equals(properties.getStorage().getType()),
+                relyingParties,
+                credentialTransfer
+        );
+    }
+
+    // Default execution, ceremonies run on the servlet request thread
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.execution.mode", havingValue = WebAuthnProperties.Execution.BLOCKING, matchIfMissing = true)
+    public CeremonyExecutor directCeremonyExecutor() {
+        return new DirectCeremonyExecutor();
+    }
+
+    // Ceremonies on virtual threads, verification on a bounded CPU pool
+    @Bean
+    @ConditionalOnProperty(name = "webauthn.execution.mode", havingValue = WebAuthnProperties.Execution.ASYNC)
+    public CeremonyExecutor virtualThreadCeremonyExecutor(WebAuthnProperties properties) {
+        WebAuthnProperties.Execution execution = properties.getExecution();
+        return new VirtualThreadCeremonyExecutor(
+                execution.getVerificationThreads(),
+                execution.getVerificationQueueCapacity()
+        );
     }
 }
@@ -3,6 +3,17 @@ package com.example.WebAuthn_Demo_App_2.config;
 import jakarta.annotation.PostConstruct;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
 @ConfigurationProperties(prefix = "webauthn")
 public class WebAuthnProperties {
 
@@ -10,6 +21,16 @@ public class WebAuthnProperties {
     private String rpName;
     private String origin;
     private long timeoutMs;
+    // Further relying parties served next to the one above, by ID (see RelyingParties)
+    private final Map<String, RelyingParty> relyingParties = new LinkedHashMap<>();
+    private final ChallengeStore challengeStore = new ChallengeStore();
+    private final Storage storage = new Storage();
+    private final AttestationArchive attestationArchive = new AttestationArchive();
+    private final Migration migration = new Migration();
+    private final Execution execution = new Execution();
+    private final PublicKeyCache publicKeyCache = new PublicKeyCache();
+    private final Batch batch = new Batch();
+    private final RateLimit rateLimit = new RateLimit();
 
     @PostConstruct
     public void validate() {
@@ -22,15 +43,143 @@ public class WebAuthnProperties {
         if (isBlank(origin)) {
             throw new IllegalStateException("webauthn.origin must be configured");
         }
+        validateOrigins("webauthn.origin", rpId, List.of(origin));
+        Set<String> hosts = new HashSet<>();
+        for (Map.Entry<String, RelyingParty> entry : relyingParties.entrySet()) {
+            String prefix = "webauthn.relying-parties." + entry.getKey();
+            RelyingParty relyingParty = entry.getValue();
+            if (!entry.getKey().matches("[a-z0-9][a-z0-9-]*") || RelyingParty.DEFAULT_ID.equals(entry.getKey())) {
+                throw new IllegalStateException(prefix + " must be named with lowercase letters, digits and dashes, "
+                        + "and not \"" + RelyingParty.DEFAULT_ID + "\"");
+            }
+            if (isBlank(relyingParty.getRpId())) {
+                throw new IllegalStateException(prefix + ".rp-id must be configured");
+            }
+            if (isBlank(relyingParty.getRpName())) {
+                throw new IllegalStateException(prefix + ".rp-name must be configured");
+            }
+            if (relyingParty.getOrigins().isEmpty()) {
+                throw new IllegalStateException(prefix + ".origins must list at least one origin");
+            }
+            validateOrigins(prefix + ".origins", relyingParty.getRpId(), relyingParty.getOrigins());
+            for (String host : relyingParty.effectiveHosts()) {
+                if (!hosts.add(host.toLowerCase(Locale.ROOT))) {
+                    throw new IllegalStateException(prefix + ".hosts: " + host + " already selects another relying party");
+                }
+            }
+        }
         if (timeoutMs <= 0) {
             throw new IllegalStateException("webauthn.timeout-ms must be greater than 0");
         }
+        if (challengeStore.getMaxEntries() <= 0) {
+            throw new IllegalStateException("webauthn.challenge-store.max-entries must be greater than 0");
+        }
+        if (!ChallengeStore.MEMORY.equals(challengeStore.getType()) && !ChallengeStore.SIGNED_TOKEN.equals(challengeStore.getType())) {
+            throw new IllegalStateException("webauthn.challenge-store.type must be " + ChallengeStore.MEMORY + " or " + ChallengeStore.SIGNED_TOKEN);
+        }
+        if (ChallengeStore.SIGNED_TOKEN.equals(challengeStore.getType()) && challengeStore.getSecretBytes().length < 32) {
+            throw new IllegalStateException("webauthn.challenge-store.secret must be at least 32 bytes, base64 encoded");
+        }
+        if (!Storage.MEMORY.equals(storage.getType()) && !Storage.MAPPED_FILE.equals(storage.getType())
+                && !Storage.OFF_HEAP.equals(storage.getType())) {
+            throw new IllegalStateException("webauthn.storage.type must be " + Storage.MEMORY + ", " + Storage.MAPPED_FILE
+                    + " or " + Storage.OFF_HEAP);
+        }
+        if (Storage.OFF_HEAP.equals(storage.getType()) && storage.getSegmentSizeBytes() < 64 * 1024) {
+            throw new IllegalStateException("webauthn.storage.segment-size-bytes must be at least 65536");
+        }
+        if (Storage.MAPPED_FILE.equals(storage.getType())) {
+            if (isBlank(storage.getDirectory())) {
+                throw new IllegalStateException("webauthn.storage.directory must be configured");
+            }
+            if (storage.getSegmentSizeBytes() < 64 * 1024) {
+                throw new IllegalStateException("webauthn.storage.segment-size-bytes must be at least 65536");
+            }
+            if (storage.getCompactionIntervalMs() <= 0) {
+                throw new IllegalStateException("webauthn.storage.compaction-interval-ms must be greater than 0");
+            }
+        }
+        if (storage.getSnapshot().isEnabled()) {
+            if (!Storage.MEMORY.equals(storage.getType())) {
+                throw new IllegalStateException("webauthn.storage.snapshot is only for webauthn.storage.type=" + Storage.MEMORY);
+            }
+            if (isBlank(storage.getSnapshot().getFile())) {
+                throw new IllegalStateException("webauthn.storage.snapshot.file must be configured");
+            }
+            if (storage.getSnapshot().getIntervalMs() <= 0) {
+                throw new IllegalStateException("webauthn.storage.snapshot.interval-ms must be greater than 0");
+            }
+        }
+        if (migration.getImportFile() != null && isBlank(migration.getImportFile())) {
+            throw new IllegalStateException("webauthn.migration.import-file must not be blank when set");
+        }
+        if (migration.isExportEnabled()
+                && (migration.getExportToken() == null || migration.getExportToken().trim().length() < 32)) {
+            throw new IllegalStateException("webauthn.migration.export-token must be at least 32 characters "
+                    + "when webauthn.migration.export-enabled is true");
+        }
+        if (attestationArchive.isEnabled() && isBlank(attestationArchive.getFile())) {
+            throw new IllegalStateException("webauthn.attestation-archive.file must be configured");
+        }
+        if (!Execution.BLOCKING.equals(execution.getMode()) && !Execution.ASYNC.equals(execution.getMode())) {
+            throw new IllegalStateException("webauthn.execution.mode must be " + Execution.BLOCKING + " or " + Execution.ASYNC);
+        }
+        if (execution.getVerificationThreads() <= 0) {
+            throw new IllegalStateException("webauthn.execution.verification-threads must be greater than 0");
+        }
+        if (execution.getVerificationQueueCapacity() <= 0) {
+            throw new IllegalStateException("webauthn.execution.verification-queue-capacity must be greater than 0");
+        }
+        if (publicKeyCache.getMaxEntries() < 0) {
+            throw new IllegalStateException("webauthn.public-key-cache.max-entries must not be negative");
+        }
+        if (batch.getMaxSize() <= 0) {
+            throw new IllegalStateException("webauthn.batch.max-size must be greater than 0");
+        }
+        if (batch.getParallelism() <= 0) {
+            throw new IllegalStateException("webauthn.batch.parallelism must be greater than 0");
+        }
+        if (rateLimit.isEnabled()) {
+            if (rateLimit.getUserRequestsPerMinute() <= 0 || rateLimit.getIpRequestsPerMinute() <= 0) {
+                throw new IllegalStateException("webauthn.rate-limit.*-requests-per-minute must be greater than 0");
+            }
+            if (rateLimit.getUserBurst() <= 0 || rateLimit.getIpBurst() <= 0) {
+                throw new IllegalStateException("webauthn.rate-limit.*-burst must be greater than 0");
+            }
+            if (rateLimit.getMaxEntries() <= 0) {
+                throw new IllegalStateException("webauthn.rate-limit.max-entries must be greater than 0");
+            }
+        }
     }
 
-    private boolean isBlank(String value) {
+    private static boolean isBlank(String value) {
         return value == null || value.trim().isEmpty();
     }
 
+    // Scheme, host and port only, https unless it is localhost, on the RP ID or a subdomain of it.
+    // Any other origin could never match what a browser puts in the client data for this RP ID.
+    private static void validateOrigins(String name, String rpId, List<String> origins) {
+        for (String origin : origins) {
+            URI uri;
+            try {
+                uri = new URI(origin);
+            } catch (URISyntaxException e) {
+                throw new IllegalStateException(name + ": " + origin + " is not a valid origin");
+            }
+            String host = uri.getHost();
+            boolean secure = "https".equals(uri.getScheme()) || "http".equals(uri.getScheme()) && "localhost".equals(host);
+            boolean bare = isBlank(uri.getRawPath()) && uri.getRawQuery() == null && uri.getRawFragment() == null
+                    && uri.getRawUserInfo() == null;
+            if (host == null || !secure || !bare) {
+                throw new IllegalStateException(name + ": " + origin
+                        + " must be an https:// (or http://localhost) origin without a path");
+            }
+            if (!host.equals(rpId) && !host.endsWith("." + rpId)) {
+                throw new IllegalStateException(name + ": " + origin + " is not on the RP ID " + rpId);
+            }
+        }
+    }
+
     public String getRpId() {
         return rpId;
     }
@@ -62,4 +211,434 @@ public class WebAuthnProperties {
     public void setTimeoutMs(long timeoutMs) {
         this.timeoutMs = timeoutMs;
     }
+
+    public Map<String, RelyingParty> getRelyingParties() {
+        return relyingParties;
+    }
+
+    public ChallengeStore getChallengeStore() {
+        return challengeStore;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public AttestationArchive getAttestationArchive() {
+        return attestationArchive;
+    }
+
+    public Migration getMigration() {
+        return migration;
+    }
+
+    public Execution getExecution() {
+        return execution;
+    }
+
+    public PublicKeyCache getPublicKeyCache() {
+        return publicKeyCache;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    // Another relying party on the same deployment, with users, credentials and challenges of its own.
+    // Requests reach it under /rp/{id}/webauthn/..., or under /webauthn/... with one of its hosts in the Host header.
+    public static class RelyingParty {
+
+        // What the relying party configured by webauthn.rp-id, webauthn.rp-name and webauthn.origin is called
+        public static final String DEFAULT_ID = "default";
+
+        private String rpId;
+        private String rpName;
+        private List<String> origins = new ArrayList<>();
+        // The hosts of the origins when empty
+        private List<String> hosts = new ArrayList<>();
+
+        public String getRpId() {
+            return rpId;
+        }
+
+        public void setRpId(String rpId) {
+            this.rpId = rpId;
+        }
+
+        public String getRpName() {
+            return rpName;
+        }
+
+        public void setRpName(String rpName) {
+            this.rpName = rpName;
+        }
+
+        public List<String> getOrigins() {
+            return origins;
+        }
+
+        public void setOrigins(List<String> origins) {
+            this.origins = origins;
+        }
+
+        public List<String> getHosts() {
+            return hosts;
+        }
+
+        public void setHosts(List<String> hosts) {
+            this.hosts = hosts;
+        }
+
+        // The Host header values that select this relying party
+        public List<String> effectiveHosts() {
+            if (!hosts.isEmpty()) {
+                return hosts;
+            }
+            List<String> originHosts = new ArrayList<>();
+            for (String origin : origins) {
+                String host = URI.create(origin).getHost();
+                if (!originHosts.contains(host)) {
+                    originHosts.add(host);
+                }
+            }
+            return originHosts;
+        }
+    }
+
+    // Where challenges issued by the options endpoints are kept until a finish call consumes them:
+    // "memory" (this node only) or "signed-token" (HMAC-signed challenges any node with the same secret accepts)
+    public static class ChallengeStore {
+
+        public static final String MEMORY = "memory";
+        public static final String SIGNED_TOKEN = "signed-token";
+
+        private String type = MEMORY;
+        // Base64 HMAC key, the same on every node
+        private String secret;
+        private int maxEntries = 100_000;
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        // Empty when no secret is set or it isn't valid base64
+        public byte[] getSecretBytes() {
+            if (secret == null) {
+                return new byte[0];
+            }
+            try {
+                return Base64.getDecoder().decode(secret.trim());
+            } catch (IllegalArgumentException e) {
+                return new byte[0];
+            }
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    // Where users and credentials are kept: "memory" (lost on restart) or "mapped-file" (append-only log on disk)
+    public static class Storage {
+
+        public static final String MEMORY = "memory";
+        public static final String MAPPED_FILE = "mapped-file";
+        // Users on the heap, credential records in native memory
+        public static final String OFF_HEAP = "off-heap";
+
+        private String type = MEMORY;
+        private String directory = "data/credentials";
+        private int segmentSizeBytes = 64 * 1024 * 1024;
+        private long compactionIntervalMs = 600_000;
+        // "mapped-file" storage only: how many decoded users are kept, 0 decodes every lookup
+        private int decodedUserCacheEntries = 10_000;
+        private final Snapshot snapshot = new Snapshot();
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        public int getSegmentSizeBytes() {
+            return segmentSizeBytes;
+        }
+
+        public void setSegmentSizeBytes(int segmentSizeBytes) {
+            this.segmentSizeBytes = segmentSizeBytes;
+        }
+
+        public long getCompactionIntervalMs() {
+            return compactionIntervalMs;
+        }
+
+        public void setCompactionIntervalMs(long compactionIntervalMs) {
+            this.compactionIntervalMs = compactionIntervalMs;
+        }
+
+        public int getDecodedUserCacheEntries() {
+            return decodedUserCacheEntries;
+        }
+
+        public void setDecodedUserCacheEntries(int decodedUserCacheEntries) {
+            this.decodedUserCacheEntries = decodedUserCacheEntries;
+        }
+
+        public Snapshot getSnapshot() {
+            return snapshot;
+        }
+
+        // "memory" storage only: written to file every interval-ms and on shutdown, loaded again on startup
+        public static class Snapshot {
+
+            private boolean enabled;
+            private String file = "data/credentials.snapshot";
+            private long intervalMs = 60_000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getFile() {
+                return file;
+            }
+
+            public void setFile(String file) {
+                this.file = file;
+            }
+
+            public long getIntervalMs() {
+                return intervalMs;
+            }
+
+            public void setIntervalMs(long intervalMs) {
+                this.intervalMs = intervalMs;
+            }
+        }
+    }
+
+    // Moving users and credentials in and out in bulk, in the CredentialTransfer format (the same as snapshots):
+    // import-file is imported on startup, and export-enabled serves GET /webauthn/admin/export to callers that send
+    // export-token as a bearer token
+    public static class Migration {
+
+        private String importFile;
+        private boolean exportEnabled;
+        private String exportToken;
+
+        public String getImportFile() {
+            return importFile;
+        }
+
+        public void setImportFile(String importFile) {
+            this.importFile = importFile;
+        }
+
+        public boolean isExportEnabled() {
+            return exportEnabled;
+        }
+
+        public void setExportEnabled(boolean exportEnabled) {
+            this.exportEnabled = exportEnabled;
+        }
+
+        public String getExportToken() {
+            return exportToken;
+        }
+
+        public void setExportToken(String exportToken) {
+            this.exportToken = exportToken;
+        }
+    }
+
+    // Stored credentials only keep what logins need, this appends the full attestation of every registration
+    // to a compressed file for audits
+    public static class AttestationArchive {
+
+        private boolean enabled;
+        private String file = "data/attestations.archive";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+    }
+
+    // How the /webauthn/* endpoints run: "blocking" (on the servlet thread) or "async"
+    // (a virtual thread per ceremony, signature checks on a bounded pool of verification threads)
+    public static class Execution {
+
+        public static final String BLOCKING = "blocking";
+        public static final String ASYNC = "async";
+
+        private String mode = BLOCKING;
+        private int verificationThreads = Runtime.getRuntime().availableProcessors();
+        private int verificationQueueCapacity = 10_000;
+
+        public String getMode() {
+            return mode;
+        }
+
+        public void setMode(String mode) {
+            this.mode = mode;
+        }
+
+        public int getVerificationThreads() {
+            return verificationThreads;
+        }
+
+        public void setVerificationThreads(int verificationThreads) {
+            this.verificationThreads = verificationThreads;
+        }
+
+        public int getVerificationQueueCapacity() {
+            return verificationQueueCapacity;
+        }
+
+        public void setVerificationQueueCapacity(int verificationQueueCapacity) {
+            this.verificationQueueCapacity = verificationQueueCapacity;
+        }
+    }
+
+    // Decoded public keys of recently used credentials, 0 turns the cache off
+    public static class PublicKeyCache {
+
+        private int maxEntries = 10_000;
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
+
+    // /webauthn/authenticate/finish-batch: how many assertions one call may carry and how many run at once
+    public static class Batch {
+
+        private int maxSize = 100;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    // Token buckets in front of the options endpoints, one per username and one per client IP.
+    // A bucket holds up to burst requests and refills at requests-per-minute. max-entries bounds each set of buckets.
+    public static class RateLimit {
+
+        private boolean enabled = true;
+        private int userRequestsPerMinute = 30;
+        private int userBurst = 10;
+        private int ipRequestsPerMinute = 600;
+        private int ipBurst = 100;
+        private int maxEntries = 100_000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getUserRequestsPerMinute() {
+            return userRequestsPerMinute;
+        }
+
+        public void setUserRequestsPerMinute(int userRequestsPerMinute) {
+            this.userRequestsPerMinute = userRequestsPerMinute;
+        }
+
+        public int getUserBurst() {
+            return userBurst;
+        }
+
+        public void setUserBurst(int userBurst) {
+            this.userBurst = userBurst;
+        }
+
+        public int getIpRequestsPerMinute() {
+            return ipRequestsPerMinute;
+        }
+
+        public void setIpRequestsPerMinute(int ipRequestsPerMinute) {
+            this.ipRequestsPerMinute = ipRequestsPerMinute;
+        }
+
+        public int getIpBurst() {
+            return ipBurst;
+        }
+
+        public void setIpBurst(int ipBurst) {
+            this.ipBurst = ipBurst;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+    }
 }
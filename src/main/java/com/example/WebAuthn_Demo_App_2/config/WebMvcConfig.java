@@ -0,0 +1,57 @@
+package com.example.WebAuthn_Demo_App_2.config;
+
+import com.example.WebAuthn_Demo_App_2.service.RegistrationOptionsTemplate;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParties;
+import com.webauthn4j.converter.util.ObjectConverter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverters;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final ObjectConverter objectConverter;
+    private final WebAuthnProperties properties;
+    private final JsonMapper jsonMapper;
+    private final RegistrationOptionsTemplate registrationOptionsTemplate;
+    private final RelyingParties relyingParties;
+
+    public WebMvcConfig(ObjectConverter objectConverter,
+                        WebAuthnProperties properties,
+                        JsonMapper jsonMapper,
+                        RegistrationOptionsTemplate registrationOptionsTemplate,
+                        RelyingParties relyingParties) {
+        this.objectConverter = objectConverter;
+        this.properties = properties;
+        this.jsonMapper = jsonMapper;
+        this.registrationOptionsTemplate = registrationOptionsTemplate;
+        this.relyingParties = relyingParties;
+    }
+
+    // Custom converters are consulted before the default Jackson one
+    @Override
+    public void configureMessageConverters(HttpMessageConverters.ServerBuilder builder) {
+        builder.addCustomConverter(new FinishRequestMessageConverter(objectConverter.getJsonMapper()));
+        // Uses Spring's mapper (WebAuthnJSONModule, non_null inclusion) so the output matches the default converter's
+        builder.addCustomConverter(new CreationOptionsMessageConverter(jsonMapper, registrationOptionsTemplate,
+                relyingParties));
+        builder.addCustomConverter(new FinishResponseMessageConverter(jsonMapper));
+    }
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new RelyingPartyArgumentResolver(relyingParties));
+    }
+
+    // In async mode a ceremony step may wait as long as its challenge is valid,
+    // instead of the servlet container's default async timeout (30s on Tomcat)
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(properties.getTimeoutMs());
+    }
+}
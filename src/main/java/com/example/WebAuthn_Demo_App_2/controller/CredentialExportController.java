@@ -0,0 +1,64 @@
+package com.example.WebAuthn_Demo_App_2.controller;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParty;
+import com.example.WebAuthn_Demo_App_2.store.CredentialTransfer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// Streams every user and credential of a relying party in the CredentialTransfer format, to move them to another
+// node or storage type: saved as that node's webauthn.migration.import-file (or snapshot file) it loads on startup.
+// Users are read and written a block at a time as the client takes them, so memory stays flat however many
+// there are. Only there with webauthn.migration.export-enabled=true, and it hands out every username, so callers
+// must send webauthn.migration.export-token as "Authorization: Bearer <token>".
+@RestController
+@RequestMapping({"/webauthn/admin", "/rp/{rp}/webauthn/admin"})
+@ConditionalOnProperty(name = "webauthn.migration.export-enabled", havingValue = "true")
+public class CredentialExportController {
+
+    private static final Logger log = LoggerFactory.getLogger(CredentialExportController.class);
+
+    private final CredentialTransfer credentialTransfer;
+    private final byte[] expectedAuthorization;
+
+    public CredentialExportController(CredentialTransfer credentialTransfer, WebAuthnProperties properties) {
+        this.credentialTransfer = credentialTransfer;
+        this.expectedAuthorization = ("Bearer " + properties.getMigration().getExportToken().trim())
+                .getBytes(StandardCharsets.UTF_8);
+        log.warn("Credential export is enabled: GET /webauthn/admin/export hands every user and credential to "
+                + "anyone with webauthn.migration.export-token, turn it off once the migration is done");
+    }
+
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export(
+            RelyingParty relyingParty,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        // Constant time, so the token can't be guessed a byte at a time
+        if (authorization == null
+                || !MessageDigest.isEqual(expectedAuthorization, authorization.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).header(HttpHeaders.WWW_AUTHENTICATE, "Bearer").build();
+        }
+        StreamingResponseBody body = out -> credentialTransfer.write(relyingParty.getUserStore().users(), out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(relyingParty.getId() + ".credentials").build().toString())
+                .cacheControl(CacheControl.noStore())
+                .body(body);
+    }
+}
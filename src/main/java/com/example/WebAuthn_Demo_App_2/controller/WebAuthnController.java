@@ -1,14 +1,21 @@
 package com.example.WebAuthn_Demo_App_2.controller;
 
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishBatchRequest;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishBatchResponse;
 import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishRequest;
 import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishResponse;
 import com.example.WebAuthn_Demo_App_2.dto.AuthenticationStartRequest;
 import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishRequest;
 import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishResponse;
 import com.example.WebAuthn_Demo_App_2.dto.RegistrationStartRequest;
+import com.example.WebAuthn_Demo_App_2.service.BatchAuthenticationService;
+import com.example.WebAuthn_Demo_App_2.service.CeremonyExecutor;
+import com.example.WebAuthn_Demo_App_2.service.RateLimiter;
+import com.example.WebAuthn_Demo_App_2.service.RelyingParty;
 import com.example.WebAuthn_Demo_App_2.service.WebAuthnService;
 import com.webauthn4j.data.PublicKeyCredentialCreationOptions;
 import com.webauthn4j.data.PublicKeyCredentialRequestOptions;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -17,47 +24,83 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
+// /webauthn/... is for the relying party serving the request's host (the default one for unknown hosts),
+// /rp/{rp}/webauthn/... for the one named in the path. The RelyingParty parameters come from RelyingPartyArgumentResolver.
 @RestController
-@RequestMapping("/webauthn")
+@RequestMapping({"/webauthn", "/rp/{rp}/webauthn"})
 public class WebAuthnController {
 
     private final WebAuthnService webAuthnService;
+    private final BatchAuthenticationService batchAuthenticationService;
+
+    // Already completed futures in blocking mode, virtual threads in async mode (webauthn.execution.mode)
+    private final CeremonyExecutor ceremonyExecutor;
+
+    // Options calls create users and challenges, so they are limited per username and client IP first
+    private final RateLimiter rateLimiter;
 
-    public WebAuthnController(WebAuthnService webAuthnService) {
+    public WebAuthnController(WebAuthnService webAuthnService,
+                              BatchAuthenticationService batchAuthenticationService,
+                              CeremonyExecutor ceremonyExecutor,
+                              RateLimiter rateLimiter) {
         this.webAuthnService = webAuthnService;
+        this.batchAuthenticationService = batchAuthenticationService;
+        this.ceremonyExecutor = ceremonyExecutor;
+        this.rateLimiter = rateLimiter;
     }
 
     // Starting registration, sending public key cred creation options to the client
     @PostMapping("/register/options")
-    public ResponseEntity<PublicKeyCredentialCreationOptions> registrationOptions(
-            @RequestBody RegistrationStartRequest request) {
-        PublicKeyCredentialCreationOptions options = webAuthnService.startRegistration(request);
-        return ResponseEntity.ok()
-                .cacheControl(CacheControl.noStore())
-                .body(options);
+    public CompletableFuture<ResponseEntity<PublicKeyCredentialCreationOptions>> registrationOptions(
+            RelyingParty relyingParty, @RequestBody RegistrationStartRequest request, HttpServletRequest httpRequest) {
+        rateLimiter.check(request.username(), httpRequest.getRemoteAddr());
+        return ceremonyExecutor.run(() -> {
+            PublicKeyCredentialCreationOptions options = webAuthnService.startRegistration(relyingParty, request);
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(options);
+        });
     }
 
     // Completing user registration
     @PostMapping("/register/finish")
-    public ResponseEntity<RegistrationFinishResponse> register(@RequestBody RegistrationFinishRequest request) {
-        RegistrationFinishResponse response = webAuthnService.finishRegistration(request);
-        return ResponseEntity.status(HttpStatus.CREATED).body(response);
+    public CompletableFuture<ResponseEntity<RegistrationFinishResponse>> register(
+            RelyingParty relyingParty, @RequestBody RegistrationFinishRequest request) {
+        return ceremonyExecutor.run(() -> {
+            RegistrationFinishResponse response = webAuthnService.finishRegistration(relyingParty, request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        });
     }
 
-    // Starting user authentication, sending public key cred request options to the client
+    // Starting user authentication, sending public key cred request options to the client.
+    // Without a username (or without a body) the options are for a usernameless login, see WebAuthnService.
     @PostMapping("/authenticate/options")
-    public ResponseEntity<PublicKeyCredentialRequestOptions> authenticationOptions(
-            @RequestBody AuthenticationStartRequest request) {
-        PublicKeyCredentialRequestOptions options = webAuthnService.startAuthentication(request);
-        return ResponseEntity.ok()
-                .cacheControl(CacheControl.noStore())
-                .body(options);
+    public CompletableFuture<ResponseEntity<PublicKeyCredentialRequestOptions>> authenticationOptions(
+            RelyingParty relyingParty,
+            @RequestBody(required = false) AuthenticationStartRequest request,
+            HttpServletRequest httpRequest) {
+        rateLimiter.check(request != null ? request.username() : null, httpRequest.getRemoteAddr());
+        return ceremonyExecutor.run(() -> {
+            PublicKeyCredentialRequestOptions options = webAuthnService.startAuthentication(relyingParty, request);
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.noStore())
+                    .body(options);
+        });
     }
 
     // Completing user authentication using passkey
     @PostMapping("/authenticate/finish")
-    public ResponseEntity<AuthenticationFinishResponse> authenticate(@RequestBody AuthenticationFinishRequest request) {
-        AuthenticationFinishResponse response = webAuthnService.finishAuthentication(request);
-        return ResponseEntity.ok(response);
+    public CompletableFuture<ResponseEntity<AuthenticationFinishResponse>> authenticate(
+            RelyingParty relyingParty, @RequestBody AuthenticationFinishRequest request) {
+        return ceremonyExecutor.run(() -> ResponseEntity.ok(webAuthnService.finishAuthentication(relyingParty, request)));
+    }
+
+    // Completing many authentications at once (e.g. from a gateway), one result per assertion in the same order
+    @PostMapping("/authenticate/finish-batch")
+    public CompletableFuture<ResponseEntity<AuthenticationFinishBatchResponse>> authenticateBatch(
+            RelyingParty relyingParty, @RequestBody AuthenticationFinishBatchRequest request) {
+        return ceremonyExecutor.run(() -> ResponseEntity.ok(batchAuthenticationService.finishAuthentication(relyingParty, request)));
     }
 }
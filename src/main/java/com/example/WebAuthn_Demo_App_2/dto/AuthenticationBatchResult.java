@@ -0,0 +1,18 @@
+package com.example.WebAuthn_Demo_App_2.dto;
+
+// Either credentialId and signCount (verified) or error (the message the single finish endpoint would give)
+public record AuthenticationBatchResult(
+        String username,
+        String credentialId,
+        Long signCount,
+        String error
+) {
+
+    public static AuthenticationBatchResult verified(AuthenticationFinishResponse response) {
+        return new AuthenticationBatchResult(response.username(), response.credentialId(), response.signCount(), null);
+    }
+
+    public static AuthenticationBatchResult failed(String username, String error) {
+        return new AuthenticationBatchResult(username, null, null, error);
+    }
+}
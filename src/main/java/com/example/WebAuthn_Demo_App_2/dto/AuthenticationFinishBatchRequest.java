@@ -0,0 +1,6 @@
+package com.example.WebAuthn_Demo_App_2.dto;
+
+import java.util.List;
+
+public record AuthenticationFinishBatchRequest(List<AuthenticationFinishRequest> assertions) {
+}
@@ -0,0 +1,7 @@
+package com.example.WebAuthn_Demo_App_2.dto;
+
+import java.util.List;
+
+// One result per assertion, in the order they were sent
+public record AuthenticationFinishBatchResponse(List<AuthenticationBatchResult> results) {
+}
@@ -1,6 +1,4 @@
 package com.example.WebAuthn_Demo_App_2.dto;
 
-import java.util.Map;
-
-public record AuthenticationFinishRequest(String username, Map<String, Object> credential) {
+public record AuthenticationFinishRequest(String username, CredentialJson credential) {
 }
@@ -0,0 +1,13 @@
+package com.example.WebAuthn_Demo_App_2.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+// The "credential" object of a finish request, kept as the raw JSON bytes it arrived as.
+// It points into the request body, so it is handed to webauthn4j without being parsed or copied first.
+public record CredentialJson(byte[] source, int offset, int length) {
+
+    public InputStream asInputStream() {
+        return new ByteArrayInputStream(source, offset, length);
+    }
+}
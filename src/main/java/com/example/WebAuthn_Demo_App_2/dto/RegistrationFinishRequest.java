@@ -1,6 +1,4 @@
 package com.example.WebAuthn_Demo_App_2.dto;
 
-import java.util.Map;
-
-public record RegistrationFinishRequest(String username, Map<String, Object> credential) {
+public record RegistrationFinishRequest(String username, CredentialJson credential) {
 }
@@ -0,0 +1,37 @@
+package com.example.WebAuthn_Demo_App_2.exception;
+
+// Thrown by the challenge stores when a finish call's challenge can't be used.
+// The handler answers 400 with the reason's message, the reason itself is there so the metrics can tell the
+// cases apart. The message doesn't name the user, so there is one shared instance per reason and a rejected
+// challenge allocates nothing.
+public class ChallengeException extends WebAuthnException {
+
+    public enum Reason {
+        MISSING("Missing challenge"),
+        EXPIRED("Challenge expired"),
+        MISMATCH("Challenge mismatch");
+
+        private final String message;
+        private final ChallengeException exception;
+
+        Reason(String message) {
+            this.message = message;
+            this.exception = new ChallengeException(this);
+        }
+    }
+
+    private final Reason reason;
+
+    private ChallengeException(Reason reason) {
+        super(reason.message, false);
+        this.reason = reason;
+    }
+
+    public static ChallengeException of(Reason reason) {
+        return reason.exception;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
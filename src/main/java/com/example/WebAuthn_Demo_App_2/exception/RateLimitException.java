@@ -0,0 +1,32 @@
+package com.example.WebAuthn_Demo_App_2.exception;
+
+// Thrown by RateLimiter, answered with 429 and a Retry-After header.
+// Stackless, and shared for the retry times a client usually gets, so refusing a flood costs next to nothing.
+public class RateLimitException extends RuntimeException {
+
+    private static final RateLimitException[] SHARED = new RateLimitException[61];
+
+    static {
+        for (int i = 1; i < SHARED.length; i++) {
+            SHARED[i] = new RateLimitException(i);
+        }
+    }
+
+    private final long retryAfterSeconds;
+
+    private RateLimitException(long retryAfterSeconds) {
+        super("Too many requests, try again later", null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public static RateLimitException of(long retryAfterSeconds) {
+        if (retryAfterSeconds > 0 && retryAfterSeconds < SHARED.length) {
+            return SHARED[(int) retryAfterSeconds];
+        }
+        return new RateLimitException(retryAfterSeconds);
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
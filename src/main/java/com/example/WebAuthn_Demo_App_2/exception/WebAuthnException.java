@@ -1,5 +1,8 @@
 package com.example.WebAuthn_Demo_App_2.exception;
 
+// Always a client error answered with 400.
+// The common rejections are shared instances made with rejection(), those have no stack trace, it would only
+// show where the constant was created. Everything else captures one like any exception.
 public class WebAuthnException extends RuntimeException {
     public WebAuthnException(String message, Throwable cause) {
         super(message, cause);
@@ -8,4 +11,14 @@ public class WebAuthnException extends RuntimeException {
     public WebAuthnException(String message) {
         super(message);
     }
+
+    // Stackless, for instances thrown from more than one place
+    protected WebAuthnException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
+    // A rejection to keep in a constant and throw every time
+    public static WebAuthnException rejection(String message) {
+        return new WebAuthnException(message, false);
+    }
 }
@@ -0,0 +1,42 @@
+package com.example.WebAuthn_Demo_App_2.model;
+
+import java.util.Arrays;
+
+// Credential ID used as a map key. The hash is computed once, and the raw bytes are compared directly
+// instead of going through a Base64URL string. Credential IDs come straight from request bodies, so the hash is a
+// KeyedHash under a key picked at startup, not Arrays.hashCode, which a client could make collide.
+public final class CredentialKey {
+
+    private static final KeyedHash KEYED_HASH = new KeyedHash();
+
+    private final byte[] credentialId;
+    private final int hash;
+
+    public CredentialKey(byte[] credentialId) {
+        this.credentialId = credentialId;
+        this.hash = hash(credentialId);
+    }
+
+    // Same value as hashCode() of a key built from these bytes, without having to build the key
+    public static int hash(byte[] credentialId) {
+        return KEYED_HASH.hash(credentialId);
+    }
+
+    public byte[] credentialId() {
+        return credentialId;
+    }
+
+    public boolean matches(byte[] otherCredentialId, int otherHash) {
+        return hash == otherHash && Arrays.equals(credentialId, otherCredentialId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CredentialKey other && matches(other.credentialId, other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.WebAuthn_Demo_App_2.model;
+
+import java.security.SecureRandom;
+
+// SipHash-1-3 with a random key, for hash tables keyed by something a client chooses (usernames, credential IDs).
+//
+// String.hashCode and Arrays.hashCode collide on demand, so an open-addressing table probed with them can be
+// filled with keys that all land in one chain. Without the key, colliding inputs can't be picked in advance.
+// A string is hashed as its UTF-16 code units, so the hash needs no encoded copy and allocates nothing.
+public final class KeyedHash {
+
+    private final long k0;
+    private final long k1;
+
+    public KeyedHash() {
+        SecureRandom random = new SecureRandom();
+        this.k0 = random.nextLong();
+        this.k1 = random.nextLong();
+    }
+
+    KeyedHash(long k0, long k1) {
+        this.k0 = k0;
+        this.k1 = k1;
+    }
+
+    public int hash(byte[] bytes) {
+        return fold(sipHash(bytes, null, bytes.length));
+    }
+
+    public int hash(String string) {
+        return fold(sipHash(null, string, string.length() * 2));
+    }
+
+    // Exactly one of bytes and string is set, length is in bytes
+    private long sipHash(byte[] bytes, String string, int length) {
+        long v0 = k0 ^ 0x736f6d6570736575L;
+        long v1 = k1 ^ 0x646f72616e646f6dL;
+        long v2 = k0 ^ 0x6c7967656e657261L;
+        long v3 = k1 ^ 0x7465646279746573L;
+        int fullWords = length >>> 3;
+        // One round per word, the last word holds the tail and the length
+        for (int word = 0; word <= fullWords; word++) {
+            long m = word < fullWords
+                    ? bytes != null ? bytesWord(bytes, word << 3, 8) : charsWord(string, word << 2, 4)
+                    : (bytes != null ? bytesWord(bytes, word << 3, length & 7) : charsWord(string, word << 2, (length & 7) >>> 1))
+                            | (long) length << 56;
+            v3 ^= m;
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+            v0 ^= m;
+        }
+        // Three to finish
+        v2 ^= 0xff;
+        for (int i = 0; i < 3; i++) {
+            v0 += v1; v1 = Long.rotateLeft(v1, 13); v1 ^= v0; v0 = Long.rotateLeft(v0, 32);
+            v2 += v3; v3 = Long.rotateLeft(v3, 16); v3 ^= v2;
+            v0 += v3; v3 = Long.rotateLeft(v3, 21); v3 ^= v0;
+            v2 += v1; v1 = Long.rotateLeft(v1, 17); v1 ^= v2; v2 = Long.rotateLeft(v2, 32);
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    // Little endian, count bytes from offset
+    private static long bytesWord(byte[] bytes, int offset, int count) {
+        long m = 0;
+        for (int i = 0; i < count; i++) {
+            m |= (bytes[offset + i] & 0xFFL) << (i << 3);
+        }
+        return m;
+    }
+
+    // Little endian UTF-16, count chars from offset
+    private static long charsWord(String string, int offset, int count) {
+        long m = 0;
+        for (int i = 0; i < count; i++) {
+            m |= (long) string.charAt(offset + i) << (i << 4);
+        }
+        return m;
+    }
+
+    private static int fold(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.WebAuthn_Demo_App_2.model;
+
+import com.webauthn4j.credential.CredentialRecord;
+
+// A credential record together with the user it was registered to
+public record StoredCredential(User user, CredentialRecord credentialRecord) {
+}
@@ -3,18 +3,25 @@ package com.example.WebAuthn_Demo_App_2.model;
 import com.webauthn4j.credential.CredentialRecord;
 import com.webauthn4j.data.PublicKeyCredentialDescriptor;
 import com.webauthn4j.data.PublicKeyCredentialType;
-import com.webauthn4j.util.Base64UrlUtil;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
+// The credential lists the ceremonies need (excludeCredentials, allowCredentials and the IDs verification is
+// restricted to) are built once in addCredential and swapped in as one immutable Credentials, so the options and
+// finish calls read them without copying anything, however many passkeys the user has.
+// Those lists are also all the per-user storage there is: most users have one or two passkeys, so a credential
+// is found by comparing IDs, and only past MAX_SCANNED_CREDENTIALS is an index by ID built alongside.
 public class User {
+    private static final int MAX_SCANNED_CREDENTIALS = 8;
+
     private final String username;
     private final String displayName;
     private final byte[] userId;
-    private final Map<String, CredentialRecord> credentialRecords = new ConcurrentHashMap<>();
+    private volatile Credentials credentials = Credentials.EMPTY;
 
     public User(String username, String displayName, byte[] userId) {
         this.username = username;
@@ -34,30 +41,78 @@ public class User {
         return userId;
     }
 
-    // Adding the credential record to a map with the credentialId as the key
-    public void addCredential(CredentialRecord credentialRecord) {
-        String key = Base64UrlUtil.encodeToString(credentialRecord.getAttestedCredentialData().getCredentialId());
-        credentialRecords.put(key, credentialRecord);
+    // Replaces the record with the same credential ID if there is one, then rebuilds the lists.
+    // Synchronized so two registrations finishing together cannot each publish lists missing the other's credential.
+    public synchronized void addCredential(CredentialRecord credentialRecord) {
+        byte[] credentialId = credentialRecord.getAttestedCredentialData().getCredentialId();
+        List<CredentialRecord> records = new ArrayList<>(credentials.records());
+        int index = credentials.indexOf(credentialId);
+        if (index >= 0) {
+            records.set(index, credentialRecord);
+        } else {
+            records.add(credentialRecord);
+        }
+        credentials = Credentials.of(records);
     }
 
     public CredentialRecord getCredentialById(byte[] credentialId) {
-        String key = Base64UrlUtil.encodeToString(credentialId);
-        return credentialRecords.get(key);
+        Credentials current = credentials;
+        int index = current.indexOf(credentialId);
+        return index < 0 ? null : current.records().get(index);
     }
 
+    // Immutable, shared by every caller
     public List<CredentialRecord> getCredentials() {
-        return new ArrayList<>(credentialRecords.values());
+        return credentials.records();
     }
 
+    // Immutable, shared by every caller
     public List<PublicKeyCredentialDescriptor> getCredentialDescriptors() {
-        List<PublicKeyCredentialDescriptor> descriptors = new ArrayList<>();
-        for (CredentialRecord credentialRecord : credentialRecords.values()) {
-            descriptors.add(new PublicKeyCredentialDescriptor(
-                    PublicKeyCredentialType.PUBLIC_KEY,
-                    credentialRecord.getAttestedCredentialData().getCredentialId(),
-                    null
-            ));
+        return credentials.descriptors();
+    }
+
+    // Immutable, shared by every caller
+    public List<byte[]> getCredentialIds() {
+        return credentials.ids();
+    }
+
+    // indexById is null until there are more credentials than are worth scanning one by one
+    private record Credentials(List<CredentialRecord> records,
+                               List<PublicKeyCredentialDescriptor> descriptors,
+                               List<byte[]> ids,
+                               Map<CredentialKey, Integer> indexById) {
+
+        static final Credentials EMPTY = new Credentials(List.of(), List.of(), List.of(), null);
+
+        static Credentials of(List<CredentialRecord> credentialRecords) {
+            List<CredentialRecord> records = List.copyOf(credentialRecords);
+            PublicKeyCredentialDescriptor[] descriptors = new PublicKeyCredentialDescriptor[records.size()];
+            byte[][] ids = new byte[records.size()][];
+            for (int i = 0; i < records.size(); i++) {
+                ids[i] = records.get(i).getAttestedCredentialData().getCredentialId();
+                descriptors[i] = new PublicKeyCredentialDescriptor(PublicKeyCredentialType.PUBLIC_KEY, ids[i], null);
+            }
+            Map<CredentialKey, Integer> indexById = null;
+            if (ids.length > MAX_SCANNED_CREDENTIALS) {
+                indexById = new HashMap<>(ids.length * 2);
+                for (int i = 0; i < ids.length; i++) {
+                    indexById.put(new CredentialKey(ids[i]), i);
+                }
+            }
+            return new Credentials(records, List.of(descriptors), List.of(ids), indexById);
+        }
+
+        int indexOf(byte[] credentialId) {
+            if (indexById != null) {
+                Integer index = indexById.get(new CredentialKey(credentialId));
+                return index == null ? -1 : index;
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                if (Arrays.equals(ids.get(i), credentialId)) {
+                    return i;
+                }
+            }
+            return -1;
         }
-        return descriptors;
     }
 }
@@ -2,10 +2,14 @@ package com.example.WebAuthn_Demo_App_2.model;
 
 import com.webauthn4j.data.client.challenge.Challenge;
 
+// userId and displayName are only set for registration: the user handle and display name the options were
+// built with, the user is created from them once the registration finishes
 public record WebAuthnChallenge(
         String username,
         ChallengeType type,
         Challenge challenge,
-        long createdAt
+        long createdAt,
+        byte[] userId,
+        String displayName
 ) {
 }
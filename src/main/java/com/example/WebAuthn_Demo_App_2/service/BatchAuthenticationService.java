@@ -0,0 +1,116 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationBatchResult;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishBatchRequest;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishBatchResponse;
+import com.example.WebAuthn_Demo_App_2.dto.AuthenticationFinishRequest;
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RejectedExecutionException;
+
+// Backs /webauthn/authenticate/finish-batch: many assertions from different sessions verified in one call.
+//
+// Assertions are grouped by username. Groups run in parallel on a fork-join pool, the assertions inside a group
+// run one after the other in the order they were sent, so the sign counter of a credential is never updated by
+// two assertions of the same batch at once. A usernameless assertion is a group of its own, its user is only
+// known once the credential is looked up, and SignCounterTracker already keeps two of them with the same credential
+// from both passing. Each assertion goes through WebAuthnService.finishAuthentication like a single finish call,
+// and a failure only fails that assertion.
+@Service
+public class BatchAuthenticationService implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchAuthenticationService.class);
+
+    private final WebAuthnService webAuthnService;
+    private final int maxSize;
+    private final ForkJoinPool pool;
+
+    public BatchAuthenticationService(WebAuthnService webAuthnService, WebAuthnProperties properties) {
+        this.webAuthnService = webAuthnService;
+        this.maxSize = properties.getBatch().getMaxSize();
+        this.pool = new ForkJoinPool(properties.getBatch().getParallelism());
+    }
+
+    // All assertions of a batch are for the one relying party the batch was sent to
+    public AuthenticationFinishBatchResponse finishAuthentication(RelyingParty relyingParty,
+                                                                  AuthenticationFinishBatchRequest request) {
+        List<AuthenticationFinishRequest> assertions = request.assertions();
+        if (assertions == null || assertions.isEmpty()) {
+            throw new WebAuthnException("No assertions in batch");
+        }
+        if (assertions.size() > maxSize) {
+            throw new WebAuthnException("At most " + maxSize + " assertions per batch");
+        }
+
+        // Indexes of each group's assertions, in request order. Each slot of results is written by one task only.
+        List<List<Integer>> groups = new ArrayList<>();
+        Map<String, List<Integer>> byUser = new HashMap<>();
+        for (int i = 0; i < assertions.size(); i++) {
+            String username = assertions.get(i).username();
+            List<Integer> group = username == null ? null : byUser.get(username);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.add(group);
+                if (username != null) {
+                    byUser.put(username, group);
+                }
+            }
+            group.add(i);
+        }
+        AuthenticationBatchResult[] results = new AuthenticationBatchResult[assertions.size()];
+
+        if (groups.size() == 1) {
+            // Nothing to run in parallel
+            verifyInOrder(relyingParty, assertions, groups.getFirst(), results);
+        } else {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(groups.size());
+            for (List<Integer> indexes : groups) {
+                tasks.add(ForkJoinTask.adapt(() -> verifyInOrder(relyingParty, assertions, indexes, results)));
+            }
+            // invokeAll forks the groups and waits for all of them, joining gives the writes to results happens-before
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+        return new AuthenticationFinishBatchResponse(Arrays.asList(results));
+    }
+
+    private void verifyInOrder(RelyingParty relyingParty,
+                               List<AuthenticationFinishRequest> assertions,
+                               List<Integer> indexes,
+                               AuthenticationBatchResult[] results) {
+        for (int index : indexes) {
+            results[index] = verify(relyingParty, assertions.get(index));
+        }
+    }
+
+    // Same outcomes WebAuthnExceptionHandler gives a single finish call
+    private AuthenticationBatchResult verify(RelyingParty relyingParty, AuthenticationFinishRequest assertion) {
+        try {
+            return AuthenticationBatchResult.verified(webAuthnService.finishAuthentication(relyingParty, assertion));
+        } catch (WebAuthnException | IllegalArgumentException e) {
+            return AuthenticationBatchResult.failed(assertion.username(), e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return AuthenticationBatchResult.failed(assertion.username(), "Server is busy, try again");
+        } catch (RuntimeException e) {
+            log.warn("Unexpected error verifying a batched assertion for user {}", assertion.username(), e);
+            return AuthenticationBatchResult.failed(assertion.username(), "Authentication failed");
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Decides which threads the /webauthn/* endpoints and the signature checks run on (see webauthn.execution.mode)
+public interface CeremonyExecutor {
+
+    // Runs a whole ceremony step for the controller
+    <T> CompletableFuture<T> run(Supplier<T> ceremony);
+
+    // Runs webauthn4j verification (the CPU heavy part) and waits for its result
+    <T> T verify(Supplier<T> verification);
+}
@@ -0,0 +1,371 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.exception.ChallengeException;
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import com.example.WebAuthn_Demo_App_2.model.ChallengeType;
+import com.example.WebAuthn_Demo_App_2.store.AttestationArchive;
+import com.example.WebAuthn_Demo_App_2.store.ChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.CredentialSnapshots;
+import com.example.WebAuthn_Demo_App_2.store.OffHeapCredentialRepository;
+import com.example.WebAuthn_Demo_App_2.store.PublicKeyCache;
+import com.example.WebAuthn_Demo_App_2.store.SecureRandomPool;
+import com.example.WebAuthn_Demo_App_2.store.UserStore;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Micrometer meters for the ceremonies, scraped from /actuator/prometheus.
+//
+//   webauthn.ceremony.phase     time spent in each step, by type, phase and algorithm
+//   webauthn.ceremony           whole options/finish calls, by type, step, algorithm, outcome and cause
+//   webauthn.challenge.failures challenges that could not be used, by type and reason
+//
+// The constructor also registers meters for the components worth watching: challenge store, users and
+// credentials, sign counter regressions, public key cache, random pool, rate limiter, and, when enabled,
+// snapshots, off-heap memory, the attestation archive and the startup import. Those of a relying party carry
+// its ID as the "rp" tag, "default" for the one configured by webauthn.rp-id.
+//
+// The algorithm is "unknown" until the credential has been parsed or looked up. Timers are cached after first
+// use and their histograms cover 10µs..10s.
+@Component
+public class CeremonyMetrics {
+
+    public enum Phase {
+        OPTIONS, PARSE, CHALLENGE, LOOKUP, VERIFY, STORE
+    }
+
+    public static final String UNKNOWN_ALGORITHM = "unknown";
+
+    // Anything else is reported as "other" so a client can't create new time series with made up algorithms
+    private static final Set<COSEAlgorithmIdentifier> KNOWN_ALGORITHMS = Set.of(
+            COSEAlgorithmIdentifier.ES256, COSEAlgorithmIdentifier.ES384, COSEAlgorithmIdentifier.ES512,
+            COSEAlgorithmIdentifier.RS256, COSEAlgorithmIdentifier.RS384, COSEAlgorithmIdentifier.RS512,
+            COSEAlgorithmIdentifier.RS1, COSEAlgorithmIdentifier.EdDSA
+    );
+
+    private static final Duration MIN_EXPECTED = Duration.ofNanos(10_000);
+    private static final Duration MAX_EXPECTED = Duration.ofSeconds(10);
+
+    private final MeterRegistry registry;
+    // By type, then phase (or step), then algorithm, so the common path does not build a key
+    private final Map<ChallengeType, Map<Phase, Map<String, Timer>>> phaseTimers = new EnumMap<>(ChallengeType.class);
+    private final Map<ChallengeType, Map<String, Timer>> optionsTimers = new EnumMap<>(ChallengeType.class);
+    private final Map<ChallengeType, Map<String, Timer>> finishTimers = new EnumMap<>(ChallengeType.class);
+    // Failures are rare enough for a plain string key
+    private final Map<String, Timer> failureTimers = new ConcurrentHashMap<>();
+    private final Map<ChallengeType, Map<ChallengeException.Reason, Counter>> challengeFailures =
+            new EnumMap<>(ChallengeType.class);
+
+    public CeremonyMetrics(MeterRegistry registry,
+                           RelyingParties relyingParties,
+                           SecureRandomPool secureRandomPool,
+                           RateLimiter rateLimiter,
+                           Optional<CredentialSnapshots> credentialSnapshots,
+                           Optional<OffHeapCredentialRepository> offHeapCredentialRepository,
+                           Optional<CredentialImport> credentialImport) {
+        this.registry = registry;
+
+        for (ChallengeType type : ChallengeType.values()) {
+            Map<Phase, Map<String, Timer>> byPhase = new EnumMap<>(Phase.class);
+            for (Phase phase : Phase.values()) {
+                byPhase.put(phase, new ConcurrentHashMap<>());
+            }
+            phaseTimers.put(type, byPhase);
+            optionsTimers.put(type, new ConcurrentHashMap<>());
+            finishTimers.put(type, new ConcurrentHashMap<>());
+
+            Map<ChallengeException.Reason, Counter> counters = new EnumMap<>(ChallengeException.Reason.class);
+            for (ChallengeException.Reason reason : ChallengeException.Reason.values()) {
+                counters.put(reason, Counter.builder("webauthn.challenge.failures")
+                        .description("Finish calls whose challenge was missing, expired or did not match")
+                        .tag("type", tagValue(type))
+                        .tag("reason", tagValue(reason))
+                        .register(registry));
+            }
+            challengeFailures.put(type, counters);
+        }
+
+        for (RelyingParty relyingParty : relyingParties.all()) {
+            registerRelyingParty(registry, relyingParty);
+        }
+
+        FunctionCounter.builder("webauthn.random.refills", secureRandomPool, SecureRandomPool::getRefillCount)
+                .description("SecureRandomPool buffer refills")
+                .register(registry);
+        FunctionCounter.builder("webauthn.random.refill.time", secureRandomPool,
+                        pool -> pool.getRefillNanosTotal() / 1e9)
+                .description("Time spent refilling SecureRandomPool buffers")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("webauthn.random.refill.max", secureRandomPool, pool -> pool.getRefillNanosMax() / 1e9)
+                .description("Slowest SecureRandomPool refill so far")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder("webauthn.random.bytes", secureRandomPool, SecureRandomPool::getBytesServed)
+                .description("Random bytes handed out by the SecureRandomPool")
+                .baseUnit("bytes")
+                .register(registry);
+
+        for (RateLimiter.Scope scope : RateLimiter.Scope.values()) {
+            FunctionCounter.builder("webauthn.rate.limited", rateLimiter, limiter -> limiter.getRejectedCount(scope))
+                    .description("Options calls refused with 429, by the limit they hit")
+                    .tag("scope", tagValue(scope))
+                    .register(registry);
+            Gauge.builder("webauthn.rate.limit.buckets", rateLimiter, limiter -> limiter.size(scope))
+                    .description("Token buckets held")
+                    .tag("scope", tagValue(scope))
+                    .register(registry);
+        }
+
+        // Only with webauthn.storage.snapshot.enabled
+        credentialSnapshots.ifPresent(snapshots -> {
+            Gauge.builder("webauthn.snapshot.load.time", snapshots, s -> s.getLoadNanos() / 1e9)
+                    .description("Time spent loading the credential snapshot on startup")
+                    .baseUnit("seconds")
+                    .register(registry);
+            Gauge.builder("webauthn.snapshot.load.users", snapshots, CredentialSnapshots::getLoadedUsers)
+                    .description("Users restored from the credential snapshot on startup")
+                    .register(registry);
+            FunctionTimer.builder("webauthn.snapshot.write", snapshots,
+                            CredentialSnapshots::getWriteCount, CredentialSnapshots::getWriteNanosTotal, TimeUnit.NANOSECONDS)
+                    .description("Credential snapshots written, they run in the background and block no request")
+                    .register(registry);
+            Gauge.builder("webauthn.snapshot.write.last", snapshots, s -> s.getLastWriteNanos() / 1e9)
+                    .description("How long the latest credential snapshot took")
+                    .baseUnit("seconds")
+                    .register(registry);
+            Gauge.builder("webauthn.snapshot.size", snapshots, CredentialSnapshots::getLastSizeBytes)
+                    .description("Size of the latest credential snapshot")
+                    .baseUnit("bytes")
+                    .register(registry);
+        });
+
+        // Only with webauthn.storage.type=off-heap
+        offHeapCredentialRepository.ifPresent(repository -> {
+            Gauge.builder("webauthn.storage.off.heap.allocated", repository, OffHeapCredentialRepository::getAllocatedBytes)
+                    .description("Native memory taken by credential record segments")
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("webauthn.storage.off.heap.used", repository, OffHeapCredentialRepository::getUsedBytes)
+                    .description("Bytes of the credential record segments written so far")
+                    .baseUnit("bytes")
+                    .register(registry);
+        });
+
+        // Only with webauthn.migration.import-file
+        credentialImport.ifPresent(imported -> {
+            Gauge.builder("webauthn.migration.import.users", imported, CredentialImport::getImportedUsers)
+                    .description("Users added by the bulk import on startup")
+                    .register(registry);
+            Gauge.builder("webauthn.migration.import.credentials", imported, CredentialImport::getImportedCredentials)
+                    .description("Credentials added by the bulk import on startup")
+                    .register(registry);
+            Gauge.builder("webauthn.migration.import.conflicts", imported, CredentialImport::getConflicts)
+                    .description("Imported users skipped, their username was taken with another user handle")
+                    .register(registry);
+            Gauge.builder("webauthn.migration.import.time", imported, i -> i.getImportNanos() / 1e9)
+                    .description("Time spent on the bulk import on startup")
+                    .baseUnit("seconds")
+                    .register(registry);
+        });
+    }
+
+    // Meters of the stores each relying party has to itself
+    private static void registerRelyingParty(MeterRegistry registry, RelyingParty relyingParty) {
+        UserStore userStore = relyingParty.getUserStore();
+        PublicKeyCache publicKeyCache = relyingParty.getPublicKeyCache();
+        Gauge.builder("webauthn.challenge.store.size", relyingParty.getChallengeStore(), ChallengeStore::size)
+                .description("Challenges held by this node")
+                .tag("rp", relyingParty.getId())
+                .register(registry);
+        Gauge.builder("webauthn.users", userStore, UserStore::getUserCount)
+                .description("Registered users")
+                .tag("rp", relyingParty.getId())
+                .register(registry);
+        Gauge.builder("webauthn.credentials", userStore, UserStore::getCredentialCount)
+                .description("Registered credentials")
+                .tag("rp", relyingParty.getId())
+                .register(registry);
+        FunctionCounter.builder("webauthn.counter.regressions", userStore, UserStore::getCounterRegressionCount)
+                .description("Assertions whose signature counter did not go up, a possibly cloned authenticator")
+                .tag("rp", relyingParty.getId())
+                .register(registry);
+
+        FunctionCounter.builder("webauthn.public.key.cache.requests", publicKeyCache, PublicKeyCache::getHitCount)
+                .description("Verifications that reused a decoded public key")
+                .tag("rp", relyingParty.getId())
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("webauthn.public.key.cache.requests", publicKeyCache, PublicKeyCache::getMissCount)
+                .description("Verifications that reused a decoded public key")
+                .tag("rp", relyingParty.getId())
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("webauthn.public.key.cache.evictions", publicKeyCache, PublicKeyCache::getEvictionCount)
+                .description("Public keys dropped to stay within webauthn.public-key-cache.max-entries")
+                .tag("rp", relyingParty.getId())
+                .register(registry);
+        Gauge.builder("webauthn.public.key.cache.size", publicKeyCache, PublicKeyCache::size)
+                .description("Decoded public keys held")
+                .tag("rp", relyingParty.getId())
+                .register(registry);
+
+        // Only with webauthn.attestation-archive.enabled
+        AttestationArchive archive = relyingParty.getAttestationArchive();
+        if (archive != null) {
+            FunctionCounter.builder("webauthn.attestation.archive.entries", archive, AttestationArchive::getEntryCount)
+                    .description("Registrations whose attestation was archived")
+                    .tag("rp", relyingParty.getId())
+                    .register(registry);
+            FunctionCounter.builder("webauthn.attestation.archive.input", archive, AttestationArchive::getInputBytes)
+                    .description("Attestation bytes handed to the archive, before compression")
+                    .tag("rp", relyingParty.getId())
+                    .baseUnit("bytes")
+                    .register(registry);
+            FunctionCounter.builder("webauthn.attestation.archive.written", archive, AttestationArchive::getWrittenBytes)
+                    .description("Bytes appended to the attestation archive")
+                    .tag("rp", relyingParty.getId())
+                    .baseUnit("bytes")
+                    .register(registry);
+        }
+    }
+
+    // One per options or finish call, see WebAuthnService
+    public Ceremony start(ChallengeType type, boolean finish) {
+        return new Ceremony(type, finish);
+    }
+
+    public static String algorithmName(COSEAlgorithmIdentifier algorithm) {
+        if (algorithm == null) {
+            return UNKNOWN_ALGORITHM;
+        }
+        return KNOWN_ALGORITHMS.contains(algorithm) ? algorithm.toString() : "other";
+    }
+
+    // Turns the exceptions WebAuthnExceptionHandler maps into a short, bounded tag value
+    static String cause(Throwable failure) {
+        if (failure instanceof ChallengeException challengeException) {
+            return "challenge_" + tagValue(challengeException.getReason());
+        }
+        // Verification and conversion errors are wrapped, the wrapped type is the interesting part
+        if (failure instanceof WebAuthnException && failure.getCause() != null) {
+            return failure.getCause().getClass().getSimpleName();
+        }
+        return failure.getClass().getSimpleName();
+    }
+
+    private Timer phaseTimer(ChallengeType type, Phase phase, String algorithm) {
+        Map<String, Timer> timers = phaseTimers.get(type).get(phase);
+        Timer timer = timers.get(algorithm);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(algorithm, k -> histogram(Timer.builder("webauthn.ceremony.phase")
+                    .description("Time spent in each step of a ceremony")
+                    .tag("type", tagValue(type))
+                    .tag("phase", tagValue(phase))
+                    .tag("algorithm", algorithm)));
+        }
+        return timer;
+    }
+
+    private Timer ceremonyTimer(ChallengeType type, boolean finish, String algorithm, String cause) {
+        Map<String, Timer> timers;
+        String key;
+        if (cause == null) {
+            timers = (finish ? finishTimers : optionsTimers).get(type);
+            key = algorithm;
+        } else {
+            timers = failureTimers;
+            key = type + "|" + finish + "|" + algorithm + "|" + cause;
+        }
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(key, k -> histogram(Timer.builder("webauthn.ceremony")
+                    .description("Options and finish calls")
+                    .tag("type", tagValue(type))
+                    .tag("step", finish ? "finish" : "options")
+                    .tag("algorithm", algorithm)
+                    .tag("outcome", cause == null ? "success" : "failure")
+                    .tag("cause", cause == null ? "none" : cause)));
+        }
+        return timer;
+    }
+
+    private Timer histogram(Timer.Builder builder) {
+        return builder
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED)
+                .register(registry);
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    // Times the phases of a single call and records the call itself once it succeeds or fails.
+    // Not thread safe, it lives on the stack of the thread running the ceremony.
+    public final class Ceremony {
+
+        private final ChallengeType type;
+        private final boolean finish;
+        private final long startNanos = System.nanoTime();
+        private String algorithm = UNKNOWN_ALGORITHM;
+        private boolean recorded;
+
+        private Ceremony(ChallengeType type, boolean finish) {
+            this.type = type;
+            this.finish = finish;
+        }
+
+        public void algorithm(COSEAlgorithmIdentifier algorithm) {
+            this.algorithm = algorithmName(algorithm);
+        }
+
+        // Runs one step, a failure is recorded against the whole call and rethrown
+        public <T> T phase(Phase phase, Supplier<T> step) {
+            long phaseStart = System.nanoTime();
+            try {
+                return step.get();
+            } catch (RuntimeException e) {
+                failed(phase, e);
+                throw e;
+            } finally {
+                phaseTimer(type, phase, algorithm).record(System.nanoTime() - phaseStart, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        public void succeeded() {
+            record(null);
+        }
+
+        private void failed(Phase phase, RuntimeException failure) {
+            if (phase == Phase.CHALLENGE && failure instanceof ChallengeException challengeException) {
+                challengeFailures.get(type).get(challengeException.getReason()).increment();
+            }
+            record(cause(failure));
+        }
+
+        private void record(String cause) {
+            if (recorded) {
+                return;
+            }
+            recorded = true;
+            ceremonyTimer(type, finish, algorithm, cause).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.store.CredentialSnapshots;
+import com.example.WebAuthn_Demo_App_2.store.CredentialTransfer;
+import com.example.WebAuthn_Demo_App_2.store.UserStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Bulk import of webauthn.migration.import-file on startup, before the web server takes any request.
+// Every relying party gets the file with its ID appended (the default one gets the file itself), if there is one.
+//
+// Users are added through UserStore.importUser from several threads while the file is read, see CredentialTransfer,
+// so the store, snapshot and metrics all see them like registered ones. A username already taken with another
+// user handle is skipped and counted as a conflict, a credential that is already stored is kept as it is.
+//
+// <file>.checkpoint holds how many blocks are done wherever the store outlives the process. Mapped-file storage
+// writes it as the import goes and a restart carries on from there. With snapshots it is written once a snapshot
+// with every imported user has been taken, so a restart loads the snapshot and imports nothing. Other storage
+// forgets everything on restart and imports the whole file every time.
+public class CredentialImport {
+
+    private static final Logger log = LoggerFactory.getLogger(CredentialImport.class);
+
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final CredentialTransfer transfer;
+    private final boolean persistentStorage;
+    private final LongAdder importedUsers = new LongAdder();
+    private final LongAdder importedCredentials = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final long importNanos;
+
+    // persistentStorage is true for mapped-file storage, where every user is on disk as soon as it is stored
+    public CredentialImport(Path file, boolean persistentStorage, RelyingParties relyingParties,
+                            CredentialTransfer transfer) {
+        this.transfer = transfer;
+        this.persistentStorage = persistentStorage;
+        long start = System.nanoTime();
+        for (RelyingParty relyingParty : relyingParties.all()) {
+            Path relyingPartyFile = WebAuthnProperties.RelyingParty.DEFAULT_ID.equals(relyingParty.getId())
+                    ? file
+                    : file.resolveSibling(file.getFileName() + "." + relyingParty.getId());
+            if (Files.exists(relyingPartyFile)) {
+                importFile(relyingPartyFile, relyingParty);
+            } else if (relyingPartyFile == file) {
+                log.warn("Nothing to import, {} does not exist", file);
+            }
+        }
+        this.importNanos = System.nanoTime() - start;
+    }
+
+    public long getImportedUsers() {
+        return importedUsers.sum();
+    }
+
+    public long getImportedCredentials() {
+        return importedCredentials.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getImportNanos() {
+        return importNanos;
+    }
+
+    private void importFile(Path file, RelyingParty relyingParty) {
+        Path checkpointFile = file.resolveSibling(file.getFileName() + ".checkpoint");
+        CredentialSnapshots snapshots = relyingParty.getCredentialSnapshots();
+        boolean checkpoints = persistentStorage || snapshots != null;
+        long skipBlocks = checkpoints ? readCheckpoint(checkpointFile) : 0;
+        UserStore userStore = relyingParty.getUserStore();
+        long start = System.nanoTime();
+        long credentialsBefore = importedCredentials.sum();
+        long conflictsBefore = conflicts.sum();
+        long[] lastCheckpoint = {start};
+        CredentialTransfer.Result result;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            result = transfer.read(in, skipBlocks, user -> {
+                int added = userStore.importUser(user);
+                if (added >= 0) {
+                    importedUsers.increment();
+                    importedCredentials.add(added);
+                } else {
+                    conflicts.increment();
+                }
+            }, persistentStorage ? blocks -> {
+                // Once a second is plenty, a restart only redoes what came after
+                long now = System.nanoTime();
+                if (now - lastCheckpoint[0] >= CHECKPOINT_INTERVAL_NANOS) {
+                    writeCheckpoint(checkpointFile, blocks);
+                    lastCheckpoint[0] = now;
+                }
+            } : null);
+        } catch (IOException e) {
+            // Includes a file cut short, the end marker is missing then
+            throw new UncheckedIOException("Unable to import " + file, e);
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException("Unable to import " + file, e);
+        }
+        if (checkpoints) {
+            if (snapshots != null) {
+                // Otherwise a crash before the next scheduled snapshot would lose users the checkpoint counts as done
+                snapshots.snapshot();
+            }
+            writeCheckpoint(checkpointFile, result.blocks());
+        }
+        log.info("Imported {} users with {} credentials, {} of them new, into relying party {} from {} in {} ms "
+                        + "({} blocks skipped, {} usernames taken by another user handle)",
+                result.users(), result.credentials(), importedCredentials.sum() - credentialsBefore,
+                relyingParty.getId(), file,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), skipBlocks, conflicts.sum() - conflictsBefore);
+    }
+
+    private static long readCheckpoint(Path checkpointFile) {
+        if (!Files.exists(checkpointFile)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(Files.readString(checkpointFile, StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            throw new IllegalStateException("Unable to read import checkpoint " + checkpointFile
+                    + ", delete it to import from the start", e);
+        }
+    }
+
+    // Replaced in one rename, so a crash leaves the previous checkpoint
+    private static void writeCheckpoint(Path checkpointFile, long blocks) {
+        Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Files.writeString(temporary, Long.toString(blocks), StandardCharsets.UTF_8);
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write import checkpoint " + checkpointFile, e);
+        }
+    }
+}
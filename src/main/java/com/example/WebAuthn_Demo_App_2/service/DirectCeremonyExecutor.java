@@ -0,0 +1,19 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+// Default mode, everything runs right away on the servlet request thread
+public class DirectCeremonyExecutor implements CeremonyExecutor {
+
+    @Override
+    public <T> CompletableFuture<T> run(Supplier<T> ceremony) {
+        // Exceptions are thrown straight to the controller, the same as a plain method call
+        return CompletableFuture.completedFuture(ceremony.get());
+    }
+
+    @Override
+    public <T> T verify(Supplier<T> verification) {
+        return verification.get();
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.exception.RateLimitException;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Checked by WebAuthnController before an options call does anything, so nobody can create users or
+// challenges (and burn SecureRandom output) faster than webauthn.rate-limit allows.
+//
+// Each bucket is a single AtomicLong: the time at which it will be full again. Taking a token moves that
+// time forward by one refill interval with a compare-and-set, and the request is refused when it would end
+// up more than burst intervals ahead of now. That is a token bucket without a lock or a refill thread.
+//
+// A bucket whose time has passed is full, the same as having no bucket, so those are what gets dropped when
+// a set of buckets reaches max-entries, by a sweep that runs at most once per refill interval. Otherwise (many
+// clients all over their limit, or a sweep ran recently) the oldest bucket makes room for the new client. That
+// lets a client over its limit start again early, which is better than refusing every new user and IP.
+// The client IP is the request's remote address, set server.forward-headers-strategy when behind a proxy.
+@Component
+public class RateLimiter {
+
+    public enum Scope {
+        USER, IP
+    }
+
+    private final boolean enabled;
+    private final Buckets users;
+    private final Buckets ips;
+
+    public RateLimiter(WebAuthnProperties properties) {
+        WebAuthnProperties.RateLimit rateLimit = properties.getRateLimit();
+        this.enabled = rateLimit.isEnabled();
+        this.users = new Buckets(rateLimit.getUserRequestsPerMinute(), rateLimit.getUserBurst(), rateLimit.getMaxEntries());
+        this.ips = new Buckets(rateLimit.getIpRequestsPerMinute(), rateLimit.getIpBurst(), rateLimit.getMaxEntries());
+    }
+
+    // Takes a token for the client IP, then for the username, throws RateLimitException if either is empty.
+    // A usernameless login (no username) only counts against its IP.
+    public void check(String username, String clientIp) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        ips.acquire(clientIp == null ? "" : clientIp, now);
+        if (username != null && !username.isBlank()) {
+            users.acquire(username, now);
+        }
+    }
+
+    public long getRejectedCount(Scope scope) {
+        return (scope == Scope.USER ? users : ips).rejected.sum();
+    }
+
+    public int size(Scope scope) {
+        return (scope == Scope.USER ? users : ips).buckets.size();
+    }
+
+    private static final class Buckets {
+
+        private final long intervalNanos;
+        // How far ahead of now a bucket may get, burst - 1 intervals
+        private final long toleranceNanos;
+        private final int maxEntries;
+        private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        // Every bucket in the map, oldest first. Buckets only leave the map through here, so the two agree.
+        private final Queue<Entry> order = new ConcurrentLinkedQueue<>();
+        private final ReentrantLock sweepLock = new ReentrantLock();
+        private final AtomicLong nextSweepAt = new AtomicLong(System.nanoTime());
+        private final LongAdder rejected = new LongAdder();
+
+        Buckets(int requestsPerMinute, int burst, int maxEntries) {
+            this.intervalNanos = TimeUnit.MINUTES.toNanos(1) / requestsPerMinute;
+            this.toleranceNanos = intervalNanos * (burst - 1);
+            this.maxEntries = maxEntries;
+        }
+
+        void acquire(String key, long now) {
+            AtomicLong bucket = bucket(key, now);
+            while (true) {
+                long fullAt = bucket.get();
+                long from = fullAt - now > 0 ? fullAt : now;
+                long ahead = from - now;
+                if (ahead > toleranceNanos) {
+                    rejected.increment();
+                    throw RateLimitException.of(retryAfterSeconds(ahead - toleranceNanos));
+                }
+                if (bucket.compareAndSet(fullAt, from + intervalNanos)) {
+                    return;
+                }
+            }
+        }
+
+        private AtomicLong bucket(String key, long now) {
+            AtomicLong bucket = buckets.get(key);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (buckets.size() >= maxEntries) {
+                sweep(now);
+                while (buckets.size() >= maxEntries) {
+                    Entry oldest = order.poll();
+                    if (oldest == null) {
+                        break;
+                    }
+                    buckets.remove(oldest.key(), oldest.bucket());
+                }
+            }
+            return buckets.computeIfAbsent(key, k -> {
+                AtomicLong created = new AtomicLong(now);
+                order.add(new Entry(k, created));
+                return created;
+            });
+        }
+
+        // Drops the full buckets, if no sweep ran in the last refill interval. A request racing with this may
+        // take its token from a bucket that is being dropped, which only lets that one request through a
+        // little early.
+        private void sweep(long now) {
+            long sweepAt = nextSweepAt.get();
+            if (now - sweepAt < 0 || !nextSweepAt.compareAndSet(sweepAt, now + intervalNanos) || !sweepLock.tryLock()) {
+                return;
+            }
+            try {
+                order.removeIf(entry -> entry.bucket().get() - now <= 0 && buckets.remove(entry.key(), entry.bucket()));
+            } finally {
+                sweepLock.unlock();
+            }
+        }
+
+        private record Entry(String key, AtomicLong bucket) {
+        }
+
+        private static long retryAfterSeconds(long nanos) {
+            return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(nanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.webauthn4j.data.AttestationConveyancePreference;
+import com.webauthn4j.data.AuthenticatorSelectionCriteria;
+import com.webauthn4j.data.PublicKeyCredentialCreationOptions;
+import com.webauthn4j.data.PublicKeyCredentialDescriptor;
+import com.webauthn4j.data.PublicKeyCredentialHints;
+import com.webauthn4j.data.PublicKeyCredentialParameters;
+import com.webauthn4j.data.PublicKeyCredentialRpEntity;
+import com.webauthn4j.data.PublicKeyCredentialType;
+import com.webauthn4j.data.PublicKeyCredentialUserEntity;
+import com.webauthn4j.data.ResidentKeyRequirement;
+import com.webauthn4j.data.UserVerificationRequirement;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// The parts of PublicKeyCredentialCreationOptions that are the same for every registration, built once.
+// The rp entity is the only one that differs between relying parties and comes from RelyingParty.
+// CreationOptionsMessageConverter also keeps these pre-encoded as JSON, so only the user, challenge
+// and excludeCredentials get serialized per request.
+@Component
+public class RegistrationOptionsTemplate {
+
+    private final List<PublicKeyCredentialParameters> pubKeyCredParams = List.of(
+            new PublicKeyCredentialParameters(PublicKeyCredentialType.PUBLIC_KEY, COSEAlgorithmIdentifier.ES256),
+            new PublicKeyCredentialParameters(PublicKeyCredentialType.PUBLIC_KEY, COSEAlgorithmIdentifier.RS256)
+    );
+    private final AuthenticatorSelectionCriteria authenticatorSelection = new AuthenticatorSelectionCriteria(
+            null,
+            ResidentKeyRequirement.PREFERRED,
+            UserVerificationRequirement.REQUIRED
+    );
+    private final List<PublicKeyCredentialHints> hints = List.of();
+    private final AttestationConveyancePreference attestation = AttestationConveyancePreference.NONE;
+    private final long timeoutMs;
+
+    public RegistrationOptionsTemplate(WebAuthnProperties properties) {
+        this.timeoutMs = properties.getTimeoutMs();
+    }
+
+    public PublicKeyCredentialCreationOptions create(PublicKeyCredentialRpEntity rpEntity,
+                                                     PublicKeyCredentialUserEntity userEntity,
+                                                     Challenge challenge,
+                                                     List<PublicKeyCredentialDescriptor> excludeCredentials) {
+        return new PublicKeyCredentialCreationOptions(
+                rpEntity,
+                userEntity,
+                challenge,
+                pubKeyCredParams, // type of key and algorithm identifier
+                timeoutMs,
+                excludeCredentials, // credentials to be excluded
+                authenticatorSelection,
+                hints,
+                attestation,
+                null
+        );
+    }
+
+    public List<PublicKeyCredentialParameters> getPubKeyCredParams() {
+        return pubKeyCredParams;
+    }
+
+    public AuthenticatorSelectionCriteria getAuthenticatorSelection() {
+        return authenticatorSelection;
+    }
+
+    public List<PublicKeyCredentialHints> getHints() {
+        return hints;
+    }
+
+    public AttestationConveyancePreference getAttestation() {
+        return attestation;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Every relying party this deployment serves (webauthn.relying-parties), and which one a request is for.
+//
+// Built once at startup and never changed, so resolving a request is one or two map reads. With only the
+// default relying party configured there are no hosts to look at and every request gets the default one.
+public class RelyingParties implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(RelyingParties.class);
+
+    private static final WebAuthnException UNKNOWN_RELYING_PARTY = WebAuthnException.rejection("Unknown relying party");
+
+    private final RelyingParty defaultRelyingParty;
+    private final Map<String, RelyingParty> byId = new LinkedHashMap<>();
+    // Host names are case-insensitive, this avoids lowercasing every request's
+    private final Map<String, RelyingParty> byHost = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    // Stores the non-default relying parties own, closed with them
+    private final List<AutoCloseable> resources;
+
+    public RelyingParties(RelyingParty defaultRelyingParty, List<RelyingParty> others, List<AutoCloseable> resources) {
+        this.defaultRelyingParty = defaultRelyingParty;
+        byId.put(defaultRelyingParty.getId(), defaultRelyingParty);
+        for (RelyingParty relyingParty : others) {
+            byId.put(relyingParty.getId(), relyingParty);
+            for (String host : relyingParty.getHosts()) {
+                byHost.put(host, relyingParty);
+            }
+        }
+        this.resources = new ArrayList<>(resources);
+    }
+
+    // The one named in the path if there is one (/rp/{id}/webauthn/...), else the one serving the host the
+    // request was sent to, else the default
+    public RelyingParty resolve(String id, String host) {
+        if (id != null) {
+            RelyingParty relyingParty = byId.get(id);
+            if (relyingParty == null) {
+                throw UNKNOWN_RELYING_PARTY;
+            }
+            return relyingParty;
+        }
+        if (host != null && !byHost.isEmpty()) {
+            RelyingParty relyingParty = byHost.get(host);
+            if (relyingParty != null) {
+                return relyingParty;
+            }
+        }
+        return defaultRelyingParty;
+    }
+
+    public RelyingParty getDefault() {
+        return defaultRelyingParty;
+    }
+
+    // The default one first
+    public Collection<RelyingParty> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    // Last created first, so snapshots are taken before the repositories under them close
+    @Override
+    public void close() {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            try {
+                resources.get(i).close();
+            } catch (Exception e) {
+                log.error("Unable to close {}", resources.get(i), e);
+            }
+        }
+    }
+}
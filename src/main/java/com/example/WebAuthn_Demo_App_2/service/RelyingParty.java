@@ -0,0 +1,109 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.store.AttestationArchive;
+import com.example.WebAuthn_Demo_App_2.store.ChallengeStore;
+import com.example.WebAuthn_Demo_App_2.store.CredentialSnapshots;
+import com.example.WebAuthn_Demo_App_2.store.PublicKeyCache;
+import com.example.WebAuthn_Demo_App_2.store.UserStore;
+import com.webauthn4j.data.PublicKeyCredentialRpEntity;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.server.OriginPredicate;
+import com.webauthn4j.server.ServerProperty;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// One relying party this deployment serves, with everything its ceremonies need built once at startup.
+//
+// The RP entity, RP ID and origin set never change, so a finish call only adds its challenge to them instead of
+// parsing the origin again. Users, credentials, challenges, sign counters and decoded keys are kept apart per
+// relying party: the same username can be registered with two brands, and a credential ID registered with one
+// can't touch the counter or cached key of a credential with that ID at another.
+public final class RelyingParty {
+
+    private final String id;
+    private final String rpId;
+    private final PublicKeyCredentialRpEntity rpEntity;
+    private final Set<Origin> origins;
+    private final OriginPredicate originPredicate;
+    private final List<String> hosts;
+    private final UserStore userStore;
+    private final ChallengeStore challengeStore;
+    private final PublicKeyCache publicKeyCache;
+    private final AttestationArchive attestationArchive; // null unless webauthn.attestation-archive.enabled
+    private final CredentialSnapshots credentialSnapshots; // null unless webauthn.storage.snapshot.enabled
+
+    public RelyingParty(String id, String rpId, String rpName, List<String> origins, List<String> hosts,
+                        UserStore userStore, ChallengeStore challengeStore, PublicKeyCache publicKeyCache,
+                        AttestationArchive attestationArchive, CredentialSnapshots credentialSnapshots) {
+        this.id = id;
+        this.rpId = rpId;
+        this.rpEntity = new PublicKeyCredentialRpEntity(rpId, rpName);
+        Set<Origin> parsed = new LinkedHashSet<>();
+        for (String origin : origins) {
+            parsed.add(new Origin(origin));
+        }
+        this.origins = Set.copyOf(parsed);
+        this.originPredicate = this.origins::contains;
+        this.hosts = List.copyOf(hosts);
+        this.userStore = userStore;
+        this.challengeStore = challengeStore;
+        this.publicKeyCache = publicKeyCache;
+        this.attestationArchive = attestationArchive;
+        this.credentialSnapshots = credentialSnapshots;
+    }
+
+    // What webAuthnManager.verify checks a finish call against
+    public ServerProperty serverProperty(Challenge challenge) {
+        return ServerProperty.builder()
+                .originPredicate(originPredicate)
+                .rpId(rpId)
+                .challenge(challenge)
+                .build();
+    }
+
+    // "default" for the one configured by webauthn.rp-id, the key under webauthn.relying-parties otherwise
+    public String getId() {
+        return id;
+    }
+
+    public String getRpId() {
+        return rpId;
+    }
+
+    public PublicKeyCredentialRpEntity getRpEntity() {
+        return rpEntity;
+    }
+
+    public Set<Origin> getOrigins() {
+        return origins;
+    }
+
+    // Host header values that select this relying party on /webauthn/..., none for the default one
+    public List<String> getHosts() {
+        return hosts;
+    }
+
+    public UserStore getUserStore() {
+        return userStore;
+    }
+
+    public ChallengeStore getChallengeStore() {
+        return challengeStore;
+    }
+
+    public PublicKeyCache getPublicKeyCache() {
+        return publicKeyCache;
+    }
+
+    public AttestationArchive getAttestationArchive() {
+        return attestationArchive;
+    }
+
+    // Already loaded when the relying party is built
+    public CredentialSnapshots getCredentialSnapshots() {
+        return credentialSnapshots;
+    }
+}
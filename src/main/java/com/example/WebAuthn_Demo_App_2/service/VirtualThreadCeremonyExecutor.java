@@ -0,0 +1,59 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Async mode: every ceremony gets its own virtual thread, so waiting on storage doesn't hold a servlet thread,
+// while signature verification is limited to a fixed pool sized for the CPU.
+// When the verification queue is full the request fails with RejectedExecutionException (503) instead of piling up.
+public class VirtualThreadCeremonyExecutor implements CeremonyExecutor, AutoCloseable {
+
+    private final ExecutorService ceremonyExecutor;
+    private final ThreadPoolExecutor verificationExecutor;
+
+    public VirtualThreadCeremonyExecutor(int verificationThreads, int verificationQueueCapacity) {
+        this.ceremonyExecutor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("webauthn-ceremony-", 0).factory());
+        this.verificationExecutor = new ThreadPoolExecutor(
+                verificationThreads,
+                verificationThreads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(verificationQueueCapacity),
+                Thread.ofPlatform().name("webauthn-verify-", 0).daemon().factory(),
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+
+    @Override
+    public <T> CompletableFuture<T> run(Supplier<T> ceremony) {
+        return CompletableFuture.supplyAsync(ceremony, ceremonyExecutor);
+    }
+
+    @Override
+    public <T> T verify(Supplier<T> verification) {
+        try {
+            // Blocking here only parks the ceremony's virtual thread
+            return CompletableFuture.supplyAsync(verification, verificationExecutor).join();
+        } catch (CompletionException e) {
+            // Let VerificationException and friends reach the service as if verify() had been called directly
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        ceremonyExecutor.shutdown();
+        verificationExecutor.shutdown();
+    }
+
+}
@@ -9,123 +9,158 @@ import com.example.WebAuthn_Demo_App_2.dto.RegistrationFinishResponse;
 import com.example.WebAuthn_Demo_App_2.dto.RegistrationStartRequest;
 import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
 import com.example.WebAuthn_Demo_App_2.model.ChallengeType;
+import com.example.WebAuthn_Demo_App_2.model.StoredCredential;
 import com.example.WebAuthn_Demo_App_2.model.User;
 import com.example.WebAuthn_Demo_App_2.model.WebAuthnChallenge;
+import com.example.WebAuthn_Demo_App_2.service.CeremonyMetrics.Phase;
+import com.example.WebAuthn_Demo_App_2.store.AttestationArchive;
 import com.example.WebAuthn_Demo_App_2.store.ChallengeStore;
 import com.example.WebAuthn_Demo_App_2.store.UserStore;
+import com.example.WebAuthn_Demo_App_2.store.VerificationRecord;
 import com.webauthn4j.WebAuthnManager;
 import com.webauthn4j.converter.exception.DataConversionException;
-import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.credential.CredentialRecord;
 import com.webauthn4j.credential.CredentialRecordImpl;
 import com.webauthn4j.data.*;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.AuthenticatorData;
 import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
-import com.webauthn4j.data.client.Origin;
 import com.webauthn4j.data.client.challenge.Challenge;
 import com.webauthn4j.server.ServerProperty;
 import com.webauthn4j.util.Base64UrlUtil;
+import com.webauthn4j.verifier.exception.MaliciousCounterValueException;
 import com.webauthn4j.verifier.exception.VerificationException;
 import org.springframework.stereotype.Service;
 import tools.jackson.core.JacksonException;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Service
 public class WebAuthnService {
 
+    // Rejections that never carry anything request specific, thrown as shared instances
+    private static final WebAuthnException MISSING_REGISTRATION_PAYLOAD =
+            WebAuthnException.rejection("Missing registration credential payload");
+    private static final WebAuthnException MISSING_AUTHENTICATION_PAYLOAD =
+            WebAuthnException.rejection("Missing authentication credential payload");
+    private static final WebAuthnException MISSING_REGISTRATION_CLIENT_DATA =
+            WebAuthnException.rejection("Missing client data in registration response");
+    private static final WebAuthnException MISSING_AUTHENTICATION_CLIENT_DATA =
+            WebAuthnException.rejection("Missing client data in authentication response");
+
     private final WebAuthnManager webAuthnManager;
-    private final ObjectConverter objectConverter;
     private final WebAuthnProperties properties;
-    private final UserStore userStore;
-    private final ChallengeStore challengeStore;
+    private final CeremonyExecutor ceremonyExecutor;
+    private final RegistrationOptionsTemplate registrationOptionsTemplate;
+    private final CeremonyMetrics ceremonyMetrics;
 
+    // The manager comes without webauthn4j's counter check, see WebAuthnConfig
     public WebAuthnService(WebAuthnManager webAuthnManager,
-                           ObjectConverter objectConverter,
                            WebAuthnProperties properties,
-                           UserStore userStore,
-                           ChallengeStore challengeStore) {
+                           CeremonyExecutor ceremonyExecutor,
+                           RegistrationOptionsTemplate registrationOptionsTemplate,
+                           CeremonyMetrics ceremonyMetrics) {
         this.webAuthnManager = webAuthnManager;
-        this.objectConverter = objectConverter;
         this.properties = properties;
-        this.userStore = userStore;
-        this.challengeStore = challengeStore;
+        this.ceremonyExecutor = ceremonyExecutor;
+        this.registrationOptionsTemplate = registrationOptionsTemplate;
+        this.ceremonyMetrics = ceremonyMetrics;
     }
 
-    public PublicKeyCredentialCreationOptions startRegistration(RegistrationStartRequest request) {
-
-        // Find existing user details from the store or create new if user not found
-        User user = userStore.getOrCreate(request.username(), resolveDisplayName(request));
-
-        // Creating a default challenge and storing it into a map
-        Challenge challenge = challengeStore.createAndStoreChallenge(
-                user.getUsername(),
-                ChallengeType.REGISTRATION
-        );
+    // Every step below runs inside ceremony.phase(...), which times it and records why the call failed.
+    // Users, credentials and challenges all come from the relying party the request was sent to, see RelyingParties.
+    public PublicKeyCredentialCreationOptions startRegistration(RelyingParty relyingParty, RegistrationStartRequest request) {
+        CeremonyMetrics.Ceremony ceremony = ceremonyMetrics.start(ChallengeType.REGISTRATION, false);
+        PublicKeyCredentialCreationOptions options =
+                ceremony.phase(Phase.OPTIONS, () -> createRegistrationOptions(relyingParty, request));
+        ceremony.succeeded();
+        return options;
+    }
 
-        PublicKeyCredentialRpEntity rpEntity =
-                new PublicKeyCredentialRpEntity(properties.getRpId(), properties.getRpName());
-        PublicKeyCredentialUserEntity userEntity =
-                new PublicKeyCredentialUserEntity(user.getUserId(), user.getUsername(), user.getDisplayName());
+    private PublicKeyCredentialCreationOptions createRegistrationOptions(RelyingParty relyingParty,
+                                                                         RegistrationStartRequest request) {
+        UserStore userStore = relyingParty.getUserStore();
 
-        List<PublicKeyCredentialParameters> pubKeyCredParams = getPublicKeyCredentialParams(); // type of key and algorithm identifier
+        // Find existing user details from the store. A new username gets a provisional user handle that only
+        // travels with the challenge, so an abandoned registration leaves nothing behind once it expires.
+        User user = userStore.find(request.username());
+        PublicKeyCredentialUserEntity userEntity = user != null
+                ? new PublicKeyCredentialUserEntity(user.getUserId(), user.getUsername(), user.getDisplayName())
+                : new PublicKeyCredentialUserEntity(userStore.newUserId(), request.username(), resolveDisplayName(request));
 
-        AuthenticatorSelectionCriteria authenticatorSelection = new AuthenticatorSelectionCriteria(
-                null,
-                ResidentKeyRequirement.PREFERRED,
-                UserVerificationRequirement.REQUIRED
+        // Creating a default challenge and storing it with the user handle and display name
+        Challenge challenge = relyingParty.getChallengeStore().createAndStoreChallenge(
+                request.username(),
+                ChallengeType.REGISTRATION,
+                userEntity.getId(),
+                userEntity.getDisplayName()
         );
 
-        return new PublicKeyCredentialCreationOptions(
-                rpEntity,
+        // rp, pubKeyCredParams, authenticatorSelection and attestation are shared, see RegistrationOptionsTemplate
+        return registrationOptionsTemplate.create(
+                relyingParty.getRpEntity(),
                 userEntity,
                 challenge,
-                pubKeyCredParams,
-                properties.getTimeoutMs(),
-                userStore.getCredentialDescriptors(user.getUsername()), // credentials to be excluded
-                authenticatorSelection,
-                List.of(),
-                AttestationConveyancePreference.NONE,
-                null
+                user != null ? user.getCredentialDescriptors() : List.of() // credentials to be excluded
         );
     }
 
-    public RegistrationFinishResponse finishRegistration(RegistrationFinishRequest request) {
+    public RegistrationFinishResponse finishRegistration(RelyingParty relyingParty, RegistrationFinishRequest request) {
+        CeremonyMetrics.Ceremony ceremony = ceremonyMetrics.start(ChallengeType.REGISTRATION, true);
 
         // We convert credential data from request into the right format for webAuthnManager
-        RegistrationData registrationData = parseRegistrationData(request);
-        WebAuthnChallenge expectedChallengeEntry = getRegistrationChallengeEntry(
+        RegistrationData registrationData = ceremony.phase(Phase.PARSE, () -> parseRegistrationData(request));
+        ceremony.algorithm(registrationAlgorithm(registrationData));
+        WebAuthnChallenge expectedChallengeEntry = ceremony.phase(Phase.CHALLENGE, () -> getRegistrationChallengeEntry(
+                relyingParty.getChallengeStore(),
                 request.username(),
                 ChallengeType.REGISTRATION,
                 registrationData
-        );
-        ServerProperty serverProperty = buildServerProperty(expectedChallengeEntry.challenge());
+        ));
+        ServerProperty serverProperty = relyingParty.serverProperty(expectedChallengeEntry.challenge());
 
         RegistrationParameters parameters = new RegistrationParameters(
                 serverProperty,
-                getPublicKeyCredentialParams(),
+                registrationOptionsTemplate.getPubKeyCredParams(),
                 false,
                 true
         );
 
-        try {
-            // Verifying the credential and the challenge using webAuthnManager
-            webAuthnManager.verify(registrationData, parameters);
-        } catch (VerificationException e) {
-            throw new WebAuthnException("Registration verification failed", e);
-        }
+        ceremony.phase(Phase.VERIFY, () -> {
+            try {
+                // Verifying the credential and the challenge using webAuthnManager
+                return ceremonyExecutor.verify(() -> webAuthnManager.verify(registrationData, parameters));
+            } catch (VerificationException e) {
+                throw new WebAuthnException("Registration verification failed", e);
+            }
+        });
 
         // Registration is successful at this point.
 
-        CredentialRecord credentialRecord = new CredentialRecordImpl(
-                registrationData.getAttestationObject(),
-                registrationData.getCollectedClientData(),
-                registrationData.getClientExtensions(),
-                registrationData.getTransports()
-        );
-
-        // Adding the credential record in the credentialRecords map
-        userStore.addCredential(request.username(), credentialRecord);
+        CredentialRecord credentialRecord = trimmedCredentialRecord(registrationData);
+
+        // Creating the user if this was its first registration, then adding the credential record to it.
+        // The attestation is only archived once the credential is stored, a rejected one leaves nothing behind.
+        UserStore userStore = relyingParty.getUserStore();
+        ceremony.phase(Phase.STORE, () -> {
+            userStore.createIfAbsent(
+                    request.username(),
+                    expectedChallengeEntry.displayName(),
+                    expectedChallengeEntry.userId()
+            );
+            userStore.addCredential(request.username(), credentialRecord);
+            AttestationArchive attestationArchive = relyingParty.getAttestationArchive();
+            if (attestationArchive != null) {
+                attestationArchive.append(
+                        request.username(),
+                        credentialRecord.getAttestedCredentialData().getCredentialId(),
+                        registrationData.getAttestationObjectBytes(),
+                        registrationData.getCollectedClientDataBytes()
+                );
+            }
+            return credentialRecord;
+        });
+        ceremony.succeeded();
 
         return new RegistrationFinishResponse(
                 request.username(),
@@ -134,14 +169,27 @@ public class WebAuthnService {
         );
     }
 
-    public PublicKeyCredentialRequestOptions startAuthentication(AuthenticationStartRequest request) {
-        User user = userStore.getRequired(request.username());
-        Challenge challenge = challengeStore.createAndStoreChallenge(
+    public PublicKeyCredentialRequestOptions startAuthentication(RelyingParty relyingParty,
+                                                                 AuthenticationStartRequest request) {
+        CeremonyMetrics.Ceremony ceremony = ceremonyMetrics.start(ChallengeType.AUTHENTICATION, false);
+        PublicKeyCredentialRequestOptions options =
+                ceremony.phase(Phase.OPTIONS, () -> createAuthenticationOptions(relyingParty, request));
+        ceremony.succeeded();
+        return options;
+    }
+
+    private PublicKeyCredentialRequestOptions createAuthenticationOptions(RelyingParty relyingParty,
+                                                                          AuthenticationStartRequest request) {
+        if (request == null || isUsernameless(request.username())) {
+            return createDiscoverableAuthenticationOptions(relyingParty);
+        }
+        User user = relyingParty.getUserStore().getRequired(request.username());
+        Challenge challenge = relyingParty.getChallengeStore().createAndStoreChallenge(
                 user.getUsername(),
                 ChallengeType.AUTHENTICATION
         );
 
-        List<PublicKeyCredentialDescriptor> allowCredentials = userStore.getCredentialDescriptors(user.getUsername());
+        List<PublicKeyCredentialDescriptor> allowCredentials = user.getCredentialDescriptors();
         if (allowCredentials.isEmpty()) {
             throw new WebAuthnException("No credentials registered for user: " + user.getUsername());
         }
@@ -149,7 +197,7 @@ public class WebAuthnService {
         PublicKeyCredentialRequestOptions options = new PublicKeyCredentialRequestOptions(
                 challenge,
                 properties.getTimeoutMs(),
-                properties.getRpId(),
+                relyingParty.getRpId(),
                 allowCredentials,
                 UserVerificationRequirement.REQUIRED,
                 null
@@ -158,57 +206,120 @@ public class WebAuthnService {
         return options;
     }
 
-    public AuthenticationFinishResponse finishAuthentication(AuthenticationFinishRequest request) {
-        AuthenticationData authenticationData = parseAuthenticationData(request);
-        WebAuthnChallenge expectedChallengeEntry = getAuthenticationChallengeEntry(
-                request.username(),
-                ChallengeType.AUTHENTICATION,
-                authenticationData
+    // Usernameless login: an empty allowCredentials lets the authenticator offer any passkey it has for this RP
+    // (this is what passkey autofill uses), and the challenge is not tied to a user. Nothing is looked up here.
+    private PublicKeyCredentialRequestOptions createDiscoverableAuthenticationOptions(RelyingParty relyingParty) {
+        Challenge challenge = relyingParty.getChallengeStore().createAndStoreChallenge(null, ChallengeType.AUTHENTICATION);
+        return new PublicKeyCredentialRequestOptions(
+                challenge,
+                properties.getTimeoutMs(),
+                relyingParty.getRpId(),
+                List.of(),
+                UserVerificationRequirement.REQUIRED,
+                null
         );
+    }
 
-        CredentialRecord credentialRecord =
-                userStore.getCredential(request.username(), authenticationData.getCredentialId());
-
-        // Collect all registered credential IDs for this user to restrict authentication
-        // to only their known passkeys (username-first flow).
-        List<byte[]> allowCredentialIds = new ArrayList<>();
-        for (CredentialRecord record : userStore.getCredentials(request.username())) {
-            allowCredentialIds.add(record.getAttestedCredentialData().getCredentialId());
-        }
+    public AuthenticationFinishResponse finishAuthentication(RelyingParty relyingParty, AuthenticationFinishRequest request) {
+        CeremonyMetrics.Ceremony ceremony = ceremonyMetrics.start(ChallengeType.AUTHENTICATION, true);
 
-        AuthenticationParameters parameters = new AuthenticationParameters(
-                buildServerProperty(expectedChallengeEntry.challenge()),
+        // No username means a usernameless login, the user comes from the credential and its user handle instead
+        boolean usernameless = isUsernameless(request.username());
+        AuthenticationData authenticationData = ceremony.phase(Phase.PARSE, () -> parseAuthenticationData(request));
+        WebAuthnChallenge expectedChallengeEntry = ceremony.phase(Phase.CHALLENGE, () -> getAuthenticationChallengeEntry(
+                relyingParty.getChallengeStore(),
+                usernameless ? null : request.username(),
+                ChallengeType.AUTHENTICATION,
+                authenticationData
+        ));
+
+        UserStore userStore = relyingParty.getUserStore();
+        StoredCredential storedCredential = ceremony.phase(Phase.LOOKUP, () -> usernameless
+                ? userStore.getDiscoverableCredential(authenticationData.getCredentialId(), authenticationData.getUserHandle())
+                : userStore.getCredential(request.username(), authenticationData.getCredentialId()));
+        CredentialRecord credentialRecord = storedCredential.credentialRecord();
+        String username = storedCredential.user().getUsername();
+        // Read once, off-heap storage decodes it on every call
+        AttestedCredentialData attestedCredentialData = credentialRecord.getAttestedCredentialData();
+        byte[] credentialId = attestedCredentialData.getCredentialId();
+        ceremony.algorithm(algorithm(attestedCredentialData));
+
+        // Restricting authentication to the user's known passkeys (username-first flow),
+        // the ID list is kept up to date by User.addCredential. A usernameless login had an empty allow list.
+        List<byte[]> allowCredentialIds = usernameless ? null : storedCredential.user().getCredentialIds();
+
+        // The stored record with the PublicKey already decoded and the current counter, see VerificationRecord
+        long counter = userStore.getCounter(credentialId, credentialRecord);
+        CredentialRecord verificationRecord = new VerificationRecord(
                 credentialRecord,
+                relyingParty.getPublicKeyCache().forVerification(attestedCredentialData),
+                counter
+        );
+        AuthenticationParameters parameters = new AuthenticationParameters(
+                relyingParty.serverProperty(expectedChallengeEntry.challenge()),
+                verificationRecord,
                 allowCredentialIds,
                 false,
                 true
         );
 
-        try {
-            webAuthnManager.verify(authenticationData, parameters);
-        } catch (VerificationException e) {
-            throw new WebAuthnException("Authentication verification failed", e);
-        }
-
-        // Update the stored signature counter to prevent replay attacks on future authentications.
+        ceremony.phase(Phase.VERIFY, () -> {
+            try {
+                return ceremonyExecutor.verify(() -> webAuthnManager.verify(authenticationData, parameters));
+            } catch (VerificationException e) {
+                throw new WebAuthnException("Authentication verification failed", e);
+            }
+        });
+
+        // Move the stored signature counter forward to prevent replay attacks on future authentications.
+        // Of two assertions racing with the same counter only one gets through, the other looks like a clone.
+        long signCount = verificationRecord.getCounter();
         if (authenticationData.getAuthenticatorData() != null) {
-            credentialRecord.setCounter(authenticationData.getAuthenticatorData().getSignCount());
+            signCount = authenticationData.getAuthenticatorData().getSignCount();
+            long newCounter = signCount;
+            ceremony.phase(Phase.STORE, () -> {
+                if (!userStore.advanceCounter(username, credentialRecord, credentialId, counter, newCounter)) {
+                    throw new WebAuthnException("Authentication verification failed", new MaliciousCounterValueException(
+                            "Signature counter did not increase, the authenticator may be cloned"));
+                }
+                return credentialRecord;
+            });
         }
+        ceremony.succeeded();
 
         return new AuthenticationFinishResponse(
-                request.username(),
-                Base64UrlUtil.encodeToString(credentialRecord.getAttestedCredentialData().getCredentialId()),
-                credentialRecord.getCounter()
+                username,
+                Base64UrlUtil.encodeToString(credentialId),
+                signCount
+        );
+    }
+
+    // Only what verifying an assertion reads: the attested credential data, the counter and the UV, BE and BS
+    // flags, plus the transports for allowCredentials. The attestation statement, client data and extensions would
+    // stay on the heap (and in every persisted record) for as long as the credential exists, see AttestationArchive.
+    private static CredentialRecord trimmedCredentialRecord(RegistrationData registrationData) {
+        AuthenticatorData<?> authenticatorData = registrationData.getAttestationObject().getAuthenticatorData();
+        return new CredentialRecordImpl(
+                null,
+                authenticatorData.isFlagUV(),
+                authenticatorData.isFlagBE(),
+                authenticatorData.isFlagBS(),
+                authenticatorData.getSignCount(),
+                authenticatorData.getAttestedCredentialData(),
+                null,
+                null,
+                null,
+                registrationData.getTransports()
         );
     }
 
     private RegistrationData parseRegistrationData(RegistrationFinishRequest request) {
         if (request.credential() == null) {
-            throw new WebAuthnException("Missing registration credential payload");
+            throw MISSING_REGISTRATION_PAYLOAD;
         }
         try {
-            String credentialJsonString = objectConverter.getJsonMapper().writeValueAsString(request.credential());
-            return webAuthnManager.parseRegistrationResponseJSON(credentialJsonString);
+            // The credential is still the raw JSON from the request body, so this is the only time it gets parsed
+            return webAuthnManager.parseRegistrationResponseJSON(request.credential().asInputStream());
         } catch (JacksonException | DataConversionException e) {
             throw new WebAuthnException("Invalid registration credential payload", e);
         }
@@ -216,29 +327,35 @@ public class WebAuthnService {
 
     private AuthenticationData parseAuthenticationData(AuthenticationFinishRequest request) {
         if (request.credential() == null) {
-            throw new WebAuthnException("Missing authentication credential payload");
+            throw MISSING_AUTHENTICATION_PAYLOAD;
         }
         try {
-            String json = objectConverter.getJsonMapper().writeValueAsString(request.credential());
-            return webAuthnManager.parseAuthenticationResponseJSON(json);
+            return webAuthnManager.parseAuthenticationResponseJSON(request.credential().asInputStream());
         } catch (JacksonException | DataConversionException e) {
             throw new WebAuthnException("Invalid authentication credential payload", e);
         }
     }
 
-    private ServerProperty buildServerProperty(Challenge challenge) {
-        return ServerProperty.builder()
-                .origin(new Origin(properties.getOrigin()))
-                .rpId(properties.getRpId())
-                .challenge(challenge)
-                .build();
+    private static COSEAlgorithmIdentifier registrationAlgorithm(RegistrationData registrationData) {
+        if (registrationData.getAttestationObject() == null) {
+            return null;
+        }
+        return algorithm(registrationData.getAttestationObject().getAuthenticatorData().getAttestedCredentialData());
     }
 
-    private WebAuthnChallenge getRegistrationChallengeEntry(String username,
+    private static COSEAlgorithmIdentifier algorithm(AttestedCredentialData attestedCredentialData) {
+        if (attestedCredentialData == null || attestedCredentialData.getCOSEKey() == null) {
+            return null;
+        }
+        return attestedCredentialData.getCOSEKey().getAlgorithm();
+    }
+
+    private WebAuthnChallenge getRegistrationChallengeEntry(ChallengeStore challengeStore,
+                                       String username,
                                        ChallengeType type,
                                        RegistrationData registrationData) {
         if (registrationData.getCollectedClientData() == null) {
-            throw new WebAuthnException("Missing client data in registration response");
+            throw MISSING_REGISTRATION_CLIENT_DATA;
         }
         return challengeStore.getChallengeEntry(
                 username,
@@ -247,11 +364,12 @@ public class WebAuthnService {
         );
     }
 
-    private WebAuthnChallenge getAuthenticationChallengeEntry(String username,
+    private WebAuthnChallenge getAuthenticationChallengeEntry(ChallengeStore challengeStore,
+                                       String username,
                                        ChallengeType type,
                                        AuthenticationData authenticationData) {
         if (authenticationData.getCollectedClientData() == null) {
-            throw new WebAuthnException("Missing client data in authentication response");
+            throw MISSING_AUTHENTICATION_CLIENT_DATA;
         }
         return challengeStore.getChallengeEntry(
                 username,
@@ -260,6 +378,10 @@ public class WebAuthnService {
         );
     }
 
+    private static boolean isUsernameless(String username) {
+        return username == null || username.isBlank();
+    }
+
     private String resolveDisplayName(RegistrationStartRequest request) {
         if (request.displayName() != null && !request.displayName().isBlank()) {
             return request.displayName().trim();
@@ -267,11 +389,4 @@ public class WebAuthnService {
         return request.username();
     }
 
-    private List<PublicKeyCredentialParameters> getPublicKeyCredentialParams() {
-        return List.of(
-                new PublicKeyCredentialParameters(PublicKeyCredentialType.PUBLIC_KEY, COSEAlgorithmIdentifier.ES256),
-                new PublicKeyCredentialParameters(PublicKeyCredentialType.PUBLIC_KEY, COSEAlgorithmIdentifier.RS256)
-        );
-    }
-
 }
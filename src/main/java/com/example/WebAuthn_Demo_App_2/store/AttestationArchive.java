@@ -0,0 +1,348 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.webauthn4j.util.MessageDigestUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Append-only file of the attestations credentials were registered with (webauthn.attestation-archive).
+//
+// The stored credential records only keep what an authentication needs, so this is where the rest goes when an
+// audit wants it: the attestation object and client data JSON exactly as the authenticator and browser sent them,
+// enough to verify the registration again later. A background thread takes whatever has been queued, up to 64
+// entries, and appends it as one deflated block, so the registration never waits for the disk unless the queue
+// is full. The file is synced on shutdown.
+//
+// Most of an entry is random (keys, IDs, challenges), what repeats is the RP ID hash, the origin, the JSON and
+// CBOR field names and, in a busy block, certificate chains of the same authenticator model. Each block is
+// deflated on its own so it can be read without the ones before it, with a preset dictionary of the parts that
+// repeat in every entry. It is kept in the file header, so the file stays readable whatever the RP is later.
+//
+// Layout: [magic][version][dictionary length, 2 bytes][dictionary], then blocks of
+// [deflated length][CRC32C of the deflated bytes][deflated bytes]. A block inflates to [entry count, entries...],
+// an entry is [registered at, epoch ms][username][credential ID][attestation object][client data JSON], each
+// length prefixed. A crash can leave half a block at the end, it is cut off when the file is opened again.
+public class AttestationArchive implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AttestationArchive.class);
+
+    private static final int MAGIC = 0x57414152; // "WAAR"
+    private static final byte VERSION = 1;
+    private static final int BLOCK_HEADER_LENGTH = 8;
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_ENTRIES_PER_BLOCK = 64;
+
+    // Field names and values every registration carries, see dictionary()
+    private static final String COMMON_STRINGS = "\"crossOrigin\":false}{\"type\":\"webauthn.create\",\"challenge\":\""
+            + "\",\"origin\":\"cfmtdnonefpackedgattStmtcalgcsigcx5chauthData";
+
+    // Tells the writer thread to stop once everything queued before it is written
+    private static final Entry STOP = new Entry(0, null, null, null, null);
+
+    public record Entry(long registeredAt, String username, byte[] credentialId, byte[] attestationObject,
+                        byte[] clientDataJson) {
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final byte[] dictionary;
+    // Only ever used under this, by the writer thread or a caller that found the queue full
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final AtomicLong entryCount = new AtomicLong();
+    private final AtomicLong inputBytes = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+
+    public AttestationArchive(Path file, String rpId, String origin) {
+        this.file = file;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                this.dictionary = dictionary(rpId, origin);
+                ByteBuffer header = ByteBuffer.allocate(7 + dictionary.length);
+                header.putInt(MAGIC).put(VERSION).putShort((short) dictionary.length).put(dictionary).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            } else {
+                this.dictionary = readHeader();
+                truncateTornBlock(7 + dictionary.length);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open attestation archive " + file, e);
+        }
+        this.writer = new Thread(this::writeQueued, "attestation-archive");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Queues the entry, the arrays are not copied and must not change afterwards
+    public void append(String username, byte[] credentialId, byte[] attestationObject, byte[] clientDataJson) {
+        Entry entry = new Entry(System.currentTimeMillis(), username, credentialId, attestationObject, clientDataJson);
+        if (closed) {
+            log.warn("Attestation archive {} is closed, not archiving the attestation of {}", file, username);
+        } else if (!queue.offer(entry)) {
+            // Full: this thread writes its own entry rather than dropping it
+            writeBlock(List.of(entry));
+        }
+    }
+
+    // Reads every entry of an archive in order, for audits. Stops quietly at a torn block at the end.
+    public static void read(Path file, Consumer<Entry> consumer) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IllegalStateException("Not an attestation archive: " + file);
+            }
+            byte[] dictionary = new byte[in.readUnsignedShort()];
+            in.readFully(dictionary);
+            Inflater inflater = new Inflater();
+            try {
+                while (true) {
+                    int expectedCrc;
+                    byte[] deflated;
+                    try {
+                        int length = in.readInt();
+                        expectedCrc = in.readInt();
+                        deflated = new byte[length];
+                        in.readFully(deflated);
+                    } catch (EOFException e) {
+                        return;
+                    }
+                    CRC32C crc = new CRC32C();
+                    crc.update(deflated);
+                    if ((int) crc.getValue() != expectedCrc) {
+                        throw new IllegalStateException("Attestation archive is corrupt: " + file);
+                    }
+                    DataInputStream block = new DataInputStream(
+                            new ByteArrayInputStream(inflate(inflater, dictionary, deflated)));
+                    int count = block.readInt();
+                    for (int i = 0; i < count; i++) {
+                        consumer.accept(readEntry(block));
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read attestation archive " + file, e);
+        }
+    }
+
+    public long getEntryCount() {
+        return entryCount.get();
+    }
+
+    // Bytes of the entries archived since startup, before compression
+    public long getInputBytes() {
+        return inputBytes.get();
+    }
+
+    // Bytes appended to the file since startup
+    public long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    @Override
+    public void close() {
+        // Letting the queued entries go out first
+        closed = true;
+        try {
+            queue.put(STOP);
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Attestation archive writer did not finish, {} entries not written", queue.size());
+        }
+        synchronized (this) {
+            try {
+                channel.force(true);
+                channel.close();
+            } catch (IOException e) {
+                log.error("Unable to close attestation archive {}", file, e);
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private void writeQueued() {
+        List<Entry> block = new ArrayList<>(MAX_ENTRIES_PER_BLOCK);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                block.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(block, MAX_ENTRIES_PER_BLOCK - 1);
+            stopping = block.remove(STOP);
+            if (!block.isEmpty()) {
+                writeBlock(block);
+            }
+            block.clear();
+        }
+    }
+
+    private synchronized void writeBlock(List<Entry> entries) {
+        try {
+            ByteArrayOutputStream raw = new ByteArrayOutputStream(1024 * entries.size());
+            DataOutputStream out = new DataOutputStream(raw);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeLong(entry.registeredAt());
+                writeBytes(out, entry.username().getBytes(StandardCharsets.UTF_8));
+                writeBytes(out, entry.credentialId());
+                writeBytes(out, entry.attestationObject());
+                writeBytes(out, entry.clientDataJson());
+            }
+            byte[] input = raw.toByteArray();
+
+            deflater.reset();
+            deflater.setDictionary(dictionary);
+            deflater.setInput(input);
+            deflater.finish();
+            byte[] deflated = new byte[input.length + input.length / 1000 + 64];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == deflated.length) {
+                    deflated = Arrays.copyOf(deflated, deflated.length * 2);
+                }
+                length += deflater.deflate(deflated, length, deflated.length - length);
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(deflated, 0, length);
+
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_LENGTH + length);
+            buffer.putInt(length).putInt((int) crc.getValue()).put(deflated, 0, length).flip();
+            long position = channel.size();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+
+            entryCount.addAndGet(entries.size());
+            inputBytes.addAndGet(input.length);
+            writtenBytes.addAndGet(BLOCK_HEADER_LENGTH + length);
+        } catch (IOException | RuntimeException e) {
+            // The credentials are registered either way, the archive is only for audits
+            log.error("Unable to archive {} attestations to {}", entries.size(), file, e);
+        }
+    }
+
+    // What every entry of this RP repeats: the field names, the origin and the SHA-256 of the RP ID that starts
+    // the authenticator data. Deflate looks furthest back for matches, so the most common parts go last.
+    private static byte[] dictionary(String rpId, String origin) {
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(256);
+        dictionary.writeBytes(origin.getBytes(StandardCharsets.UTF_8));
+        dictionary.writeBytes(COMMON_STRINGS.getBytes(StandardCharsets.UTF_8));
+        dictionary.writeBytes(MessageDigestUtil.createSHA256().digest(rpId.getBytes(StandardCharsets.UTF_8)));
+        return dictionary.toByteArray();
+    }
+
+    private byte[] readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(7);
+        channel.read(header, 0);
+        if (header.hasRemaining() || header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+            throw new IllegalStateException("Not an attestation archive: " + file);
+        }
+        ByteBuffer dictionary = ByteBuffer.allocate(Short.toUnsignedInt(header.getShort(5)));
+        channel.read(dictionary, 7);
+        if (dictionary.hasRemaining()) {
+            throw new IllegalStateException("Not an attestation archive: " + file);
+        }
+        return dictionary.array();
+    }
+
+    // Walks the block headers and cuts the file after the last complete block
+    private void truncateTornBlock(long headerLength) throws IOException {
+        long size = channel.size();
+        long position = headerLength;
+        ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER_LENGTH);
+        while (position + BLOCK_HEADER_LENGTH <= size) {
+            blockHeader.clear();
+            channel.read(blockHeader, position);
+            int length = blockHeader.getInt(0);
+            if (length < 0 || position + BLOCK_HEADER_LENGTH + length > size) {
+                break;
+            }
+            position += BLOCK_HEADER_LENGTH + length;
+        }
+        if (position < size) {
+            log.warn("Attestation archive {} ends with a torn block, cutting {} bytes", file, size - position);
+            channel.truncate(position);
+        }
+    }
+
+    private static byte[] inflate(Inflater inflater, byte[] dictionary, byte[] deflated) throws IOException {
+        inflater.reset();
+        inflater.setInput(deflated);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(deflated.length * 2);
+        byte[] chunk = new byte[8192];
+        try {
+            while (!inflater.finished()) {
+                int length = inflater.inflate(chunk);
+                if (length == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IOException("Attestation archive block is cut short");
+                    }
+                }
+                out.write(chunk, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Attestation archive block is not valid deflate data", e);
+        }
+        return out.toByteArray();
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        long registeredAt = in.readLong();
+        String username = new String(readBytes(in), StandardCharsets.UTF_8);
+        return new Entry(registeredAt, username, readBytes(in), readBytes(in), readBytes(in));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+}
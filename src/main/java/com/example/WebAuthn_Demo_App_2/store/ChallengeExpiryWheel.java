@@ -0,0 +1,122 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.WebAuthnChallenge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Timer wheel that groups challenge entries into buckets by creation time.
+// A bucket is only drained once every entry in it is older than the timeout, so expiring costs O(1)
+// per entry and we never have to scan the whole challenge map.
+class ChallengeExpiryWheel {
+
+    // Resolution of the wheel: the timeout is split into this many ticks
+    private static final int TICKS_PER_TIMEOUT = 32;
+    // Must be larger than TICKS_PER_TIMEOUT + 1 so that live ticks never share a bucket
+    private static final int BUCKET_COUNT = 64;
+
+    private final long timeoutMs;
+    private final long tickMs;
+    private final List<Queue<WebAuthnChallenge>> buckets = new ArrayList<>(BUCKET_COUNT);
+    // Entries still referenced by the wheel, including the ones already taken from the store
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    // Every tick up to this one has been drained (guarded by sweepLock)
+    private long sweptTick;
+
+    ChallengeExpiryWheel(long timeoutMs, long now) {
+        this.timeoutMs = timeoutMs;
+        this.tickMs = Math.max(1, timeoutMs / TICKS_PER_TIMEOUT);
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.add(new ConcurrentLinkedQueue<>());
+        }
+        this.sweptTick = tickOf(now - timeoutMs) - 1;
+    }
+
+    void schedule(WebAuthnChallenge entry) {
+        bucket(tickOf(entry.createdAt())).offer(entry);
+        size.incrementAndGet();
+    }
+
+    boolean isExpired(WebAuthnChallenge entry, long now) {
+        return now - entry.createdAt() > timeoutMs;
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    // Drains all buckets whose whole tick is past the timeout. If another thread is already sweeping we skip,
+    // the next call will pick up whatever is left.
+    void expire(long now, Predicate<WebAuthnChallenge> evictor) {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            long lastExpiredTick = tickOf(now - timeoutMs) - 1;
+            // After a long idle period only one revolution of the wheel can still hold entries
+            long from = Math.max(sweptTick + 1, lastExpiredTick - BUCKET_COUNT + 1);
+            for (long tick = from; tick <= lastExpiredTick; tick++) {
+                drain(bucket(tick), now, evictor);
+            }
+            sweptTick = Math.max(sweptTick, lastExpiredTick);
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    // Used when the store is over its hard cap: removes entries starting from the oldest bucket,
+    // whether they are expired or not, until the wheel has shrunk by the requested amount.
+    void evictOldest(int count, long now, Predicate<WebAuthnChallenge> evictor) {
+        sweepLock.lock();
+        try {
+            int removed = 0;
+            long currentTick = tickOf(now);
+            for (long tick = Math.max(sweptTick + 1, currentTick - BUCKET_COUNT + 1);
+                 tick <= currentTick && removed < count; tick++) {
+                Queue<WebAuthnChallenge> bucket = bucket(tick);
+                WebAuthnChallenge entry;
+                while (removed < count && (entry = bucket.poll()) != null) {
+                    size.decrementAndGet();
+                    evictor.test(entry);
+                    removed++;
+                }
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void drain(Queue<WebAuthnChallenge> bucket, long now, Predicate<WebAuthnChallenge> evictor) {
+        // A bucket can be shared with a tick one full revolution later, those entries go back in
+        List<WebAuthnChallenge> live = null;
+        WebAuthnChallenge entry;
+        while ((entry = bucket.poll()) != null) {
+            if (isExpired(entry, now)) {
+                size.decrementAndGet();
+                evictor.test(entry);
+            } else {
+                if (live == null) {
+                    live = new ArrayList<>();
+                }
+                live.add(entry);
+            }
+        }
+        if (live != null) {
+            bucket.addAll(live);
+        }
+    }
+
+    private Queue<WebAuthnChallenge> bucket(long tick) {
+        return buckets.get((int) Math.floorMod(tick, (long) BUCKET_COUNT));
+    }
+
+    private long tickOf(long timestamp) {
+        return Math.floorDiv(timestamp, tickMs);
+    }
+}
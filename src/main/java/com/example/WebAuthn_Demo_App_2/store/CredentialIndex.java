@@ -0,0 +1,195 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.CredentialKey;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+
+// Hash index from raw credential ID bytes to a value, used to find a credential without knowing the user.
+//
+// Lookups take the byte[] straight from the assertion and allocate nothing: the hash is computed over the
+// bytes and compared against the precomputed hash of each stored CredentialKey. Writes are rare (one per
+// registration) and lock one of the stripes, reads never lock. Each stripe is an open-addressing table that
+// is published again as a whole when it grows.
+public class CredentialIndex<V> {
+
+    private static final int STRIPE_BITS = 6;
+    private static final int STRIPE_COUNT = 1 << STRIPE_BITS;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe<V>[] stripes;
+
+    @SuppressWarnings("unchecked")
+    public CredentialIndex() {
+        stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe<>();
+        }
+    }
+
+    public V get(byte[] credentialId) {
+        int hash = CredentialKey.hash(credentialId);
+        return stripe(hash).get(credentialId, hash);
+    }
+
+    // Returns the value previously stored for the credential ID, or null
+    public V put(byte[] credentialId, V value) {
+        CredentialKey key = new CredentialKey(credentialId);
+        return stripe(key.hashCode()).put(key, value, false);
+    }
+
+    // Returns the value already stored for the credential ID, or stores this one and returns null
+    public V putIfAbsent(byte[] credentialId, V value) {
+        CredentialKey key = new CredentialKey(credentialId);
+        return stripe(key.hashCode()).put(key, value, true);
+    }
+
+    public V remove(byte[] credentialId) {
+        int hash = CredentialKey.hash(credentialId);
+        return stripe(hash).remove(credentialId, hash, null);
+    }
+
+    // Removes the entry only while it still maps to expected (compared by identity), true if it did
+    public boolean remove(byte[] credentialId, V expected) {
+        int hash = CredentialKey.hash(credentialId);
+        return stripe(hash).remove(credentialId, hash, expected) != null;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    public void forEach(BiConsumer<CredentialKey, V> action) {
+        for (Stripe<V> stripe : stripes) {
+            stripe.forEach(action);
+        }
+    }
+
+    // The high bits pick the stripe, the low bits the slot inside it
+    private Stripe<V> stripe(int hash) {
+        return stripes[hash >>> (Integer.SIZE - STRIPE_BITS)];
+    }
+
+    private static final class Stripe<V> {
+
+        private volatile Table<V> table = new Table<>(INITIAL_CAPACITY);
+        // Live entries and used slots (a removed entry keeps its slot until the next resize), guarded by this
+        private volatile int size;
+        private int usedSlots;
+
+        V get(byte[] credentialId, int hash) {
+            Table<V> current = table;
+            int mask = current.keys.length() - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                CredentialKey key = current.keys.get(slot);
+                if (key == null) {
+                    return null;
+                }
+                if (key.matches(credentialId, hash)) {
+                    return current.values.get(slot);
+                }
+            }
+        }
+
+        synchronized V put(CredentialKey key, V value, boolean onlyIfAbsent) {
+            Table<V> current = table;
+            int mask = current.keys.length() - 1;
+            int slot = key.hashCode() & mask;
+            for (CredentialKey existing; (existing = current.keys.get(slot)) != null; slot = (slot + 1) & mask) {
+                if (existing.equals(key)) {
+                    if (onlyIfAbsent && current.values.get(slot) != null) {
+                        return current.values.get(slot);
+                    }
+                    V previous = current.values.getAndSet(slot, value);
+                    if (previous == null) {
+                        size++;
+                    }
+                    return previous;
+                }
+            }
+            // Value before key, so a reader that finds the key also finds its value
+            current.values.set(slot, value);
+            current.keys.set(slot, key);
+            size++;
+            usedSlots++;
+            if (usedSlots * 4 >= current.keys.length() * 3) {
+                table = current.resize(size);
+                usedSlots = size;
+            }
+            return null;
+        }
+
+        // Any value when expected is null
+        synchronized V remove(byte[] credentialId, int hash, V expected) {
+            Table<V> current = table;
+            int mask = current.keys.length() - 1;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+                CredentialKey key = current.keys.get(slot);
+                if (key == null) {
+                    return null;
+                }
+                if (key.matches(credentialId, hash)) {
+                    if (expected != null && current.values.get(slot) != expected) {
+                        return null;
+                    }
+                    // The key stays as a tombstone so probe chains through this slot are not broken
+                    V previous = current.values.getAndSet(slot, null);
+                    if (previous != null) {
+                        size--;
+                    }
+                    return previous;
+                }
+            }
+        }
+
+        void forEach(BiConsumer<CredentialKey, V> action) {
+            Table<V> current = table;
+            for (int slot = 0; slot < current.keys.length(); slot++) {
+                CredentialKey key = current.keys.get(slot);
+                V value = current.values.get(slot);
+                if (key != null && value != null) {
+                    action.accept(key, value);
+                }
+            }
+        }
+    }
+
+    private static final class Table<V> {
+
+        private final AtomicReferenceArray<CredentialKey> keys;
+        private final AtomicReferenceArray<V> values;
+
+        Table(int capacity) {
+            keys = new AtomicReferenceArray<>(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+        }
+
+        // Builds a bigger table with only the live entries, the old one is left untouched for concurrent readers
+        Table<V> resize(int liveEntries) {
+            int capacity = INITIAL_CAPACITY;
+            while (capacity * 3 <= liveEntries * 8) {
+                capacity <<= 1;
+            }
+            Table<V> resized = new Table<>(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < keys.length(); i++) {
+                CredentialKey key = keys.get(i);
+                V value = values.get(i);
+                if (key == null || value == null) {
+                    continue;
+                }
+                int slot = key.hashCode() & mask;
+                while (resized.keys.get(slot) != null) {
+                    slot = (slot + 1) & mask;
+                }
+                resized.values.set(slot, value);
+                resized.keys.set(slot, key);
+            }
+            return resized;
+        }
+    }
+}
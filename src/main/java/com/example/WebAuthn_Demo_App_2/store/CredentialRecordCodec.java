@@ -0,0 +1,219 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.webauthn4j.converter.AttestedCredentialDataConverter;
+import com.webauthn4j.converter.AuthenticationExtensionsClientOutputsConverter;
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.extension.authenticator.AuthenticationExtensionsAuthenticatorOutputs;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientOutputs;
+import com.webauthn4j.data.extension.client.RegistrationExtensionClientOutput;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.ObjectReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// Binary form of a CredentialRecord, used by the persistent credential repositories.
+// Every webauthn4j structure is written with its own converter, so the bytes stay readable across library upgrades.
+public class CredentialRecordCodec {
+
+    private static final byte VERSION = 1;
+
+    private static final TypeReference<AuthenticationExtensionsAuthenticatorOutputs<RegistrationExtensionAuthenticatorOutput>>
+            AUTHENTICATOR_EXTENSIONS_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectConverter objectConverter;
+    private final AttestedCredentialDataConverter attestedCredentialDataConverter;
+    private final CollectedClientDataConverter collectedClientDataConverter;
+    private final AuthenticationExtensionsClientOutputsConverter clientExtensionsConverter;
+    private final ObjectReader coseKeyReader;
+
+    public CredentialRecordCodec(ObjectConverter objectConverter) {
+        this.objectConverter = objectConverter;
+        this.attestedCredentialDataConverter = new AttestedCredentialDataConverter(objectConverter);
+        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+        this.clientExtensionsConverter = new AuthenticationExtensionsClientOutputsConverter(objectConverter);
+        this.coseKeyReader = objectConverter.getCborMapper().readerFor(COSEKey.class);
+    }
+
+    public byte[] encode(CredentialRecord credentialRecord) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeBoolean(out, credentialRecord.isUvInitialized());
+            writeBoolean(out, credentialRecord.isBackupEligible());
+            writeBoolean(out, credentialRecord.isBackedUp());
+            out.writeLong(credentialRecord.getCounter());
+            writeBytes(out, encodeAttestedCredentialData(credentialRecord.getAttestedCredentialData()));
+            AttestationStatement attestationStatement = credentialRecord.getAttestationStatement();
+            writeBytes(out, attestationStatement == null ? null
+                    : objectConverter.getCborMapper().writeValueAsBytes(new AttestationStatementEnvelope(attestationStatement)));
+            AuthenticationExtensionsAuthenticatorOutputs<RegistrationExtensionAuthenticatorOutput> authenticatorExtensions =
+                    credentialRecord.getAuthenticatorExtensions();
+            writeBytes(out, authenticatorExtensions == null ? null
+                    : objectConverter.getCborMapper().writeValueAsBytes(authenticatorExtensions));
+            CollectedClientData clientData = credentialRecord.getClientData();
+            writeBytes(out, clientData == null ? null : collectedClientDataConverter.convertToBytes(clientData));
+            AuthenticationExtensionsClientOutputs<RegistrationExtensionClientOutput> clientExtensions =
+                    credentialRecord.getClientExtensions();
+            writeString(out, clientExtensions == null ? null : clientExtensionsConverter.convertToString(clientExtensions));
+            Set<AuthenticatorTransport> transports = credentialRecord.getTransports();
+            out.writeShort(transports == null ? -1 : transports.size());
+            if (transports != null) {
+                for (AuthenticatorTransport transport : transports) {
+                    out.writeUTF(transport.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public CredentialRecord decode(byte[] encoded) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded))) {
+            byte version = in.readByte();
+            if (version != VERSION) {
+                throw new IllegalStateException("Unsupported credential record version: " + version);
+            }
+            Boolean uvInitialized = readBoolean(in);
+            Boolean backupEligible = readBoolean(in);
+            Boolean backedUp = readBoolean(in);
+            long counter = in.readLong();
+            AttestedCredentialData attestedCredentialData = decodeAttestedCredentialData(readBytes(in));
+            byte[] attestationStatementBytes = readBytes(in);
+            AttestationStatement attestationStatement = attestationStatementBytes == null ? null
+                    : objectConverter.getCborMapper()
+                    .readValue(attestationStatementBytes, AttestationStatementEnvelope.class)
+                    .getAttestationStatement();
+            byte[] authenticatorExtensionBytes = readBytes(in);
+            AuthenticationExtensionsAuthenticatorOutputs<RegistrationExtensionAuthenticatorOutput> authenticatorExtensions =
+                    authenticatorExtensionBytes == null ? null
+                            : objectConverter.getCborMapper().readValue(authenticatorExtensionBytes, AUTHENTICATOR_EXTENSIONS_TYPE);
+            byte[] clientDataBytes = readBytes(in);
+            CollectedClientData clientData = clientDataBytes == null ? null : collectedClientDataConverter.convert(clientDataBytes);
+            String clientExtensionsJson = readString(in);
+            AuthenticationExtensionsClientOutputs<RegistrationExtensionClientOutput> clientExtensions =
+                    clientExtensionsJson == null ? null : clientExtensionsConverter.convert(clientExtensionsJson);
+            int transportCount = in.readShort();
+            Set<AuthenticatorTransport> transports = null;
+            if (transportCount >= 0) {
+                transports = new LinkedHashSet<>();
+                for (int i = 0; i < transportCount; i++) {
+                    transports.add(AuthenticatorTransport.create(in.readUTF()));
+                }
+            }
+            return new CredentialRecordImpl(
+                    attestationStatement,
+                    uvInitialized,
+                    backupEligible,
+                    backedUp,
+                    counter,
+                    attestedCredentialData,
+                    authenticatorExtensions,
+                    clientData,
+                    clientExtensions,
+                    transports
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // AAGUID, credential ID length and ID, then the COSE key, as in authenticator data
+    public byte[] encodeAttestedCredentialData(AttestedCredentialData attestedCredentialData) {
+        return attestedCredentialDataConverter.convert(attestedCredentialData);
+    }
+
+    // Same bytes AttestedCredentialDataConverter.convert reads, but that one builds a new CBORMapper for every
+    // key, so each decode starts with empty deserializer caches. Loading a snapshot decodes thousands of them.
+    public AttestedCredentialData decodeAttestedCredentialData(byte[] value) {
+        AAGUID aaguid = new AAGUID(Arrays.copyOfRange(value, 0, 16));
+        int credentialIdLength = ((value[16] & 0xFF) << 8) | (value[17] & 0xFF);
+        byte[] credentialId = Arrays.copyOfRange(value, 18, 18 + credentialIdLength);
+        int keyOffset = 18 + credentialIdLength;
+        COSEKey coseKey = coseKeyReader.readValue(value, keyOffset, value.length - keyOffset);
+        return new AttestedCredentialData(aaguid, credentialId, coseKey);
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte(value == null ? -1 : (value ? 1 : 0));
+    }
+
+    private static Boolean readBoolean(DataInputStream in) throws IOException {
+        byte value = in.readByte();
+        return value < 0 ? null : value == 1;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] value = readBytes(in);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    // The attestation statement only knows its concrete type through the "fmt" field next to it,
+    // so it is wrapped the same way it appears inside an attestation object.
+    public static class AttestationStatementEnvelope {
+
+        @JsonProperty("attStmt")
+        @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.EXTERNAL_PROPERTY, property = "fmt")
+        private final AttestationStatement attestationStatement;
+
+        @JsonCreator
+        public AttestationStatementEnvelope(@JsonProperty("attStmt") AttestationStatement attestationStatement) {
+            this.attestationStatement = attestationStatement;
+        }
+
+        @JsonProperty("fmt")
+        public String getFormat() {
+            return attestationStatement.getFormat();
+        }
+
+        public AttestationStatement getAttestationStatement() {
+            return attestationStatement;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.StoredCredential;
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecord;
+
+// Storage behind UserStore. The default keeps users on the heap, other implementations persist them,
+// the choice is made with webauthn.storage.type.
+public interface CredentialRepository {
+
+    // Returns null when the user does not exist
+    User findUser(String username);
+
+    // Stores the user unless one with the same username already exists, in which case that one is returned
+    User createUserIfAbsent(User user);
+
+    // Adds the credential to the user, replacing that user's record with the same credential ID. Throws a
+    // WebAuthnException if another user holds the credential ID, checked and claimed atomically: a registration
+    // must never take over someone else's passkey (WebAuthn §7.1 step 22).
+    void saveCredential(String username, CredentialRecord credentialRecord);
+
+    // Looks a credential up by its ID alone, returns null when it is not registered to anyone
+    StoredCredential findCredential(byte[] credentialId);
+
+    // Called after every successful authentication with the new signature counter
+    void updateCounter(String username, CredentialRecord credentialRecord, long counter);
+
+    // Every user with its credentials, for snapshots and exports. A live view: users added while it is
+    // iterated may or may not show up, and nothing blocks while it is.
+    Iterable<User> users();
+
+    // For the metrics gauges, cheap enough to be read on every scrape
+    int userCount();
+
+    int credentialCount();
+}
@@ -0,0 +1,165 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Periodic snapshots of InMemoryCredentialRepository to a single file, loaded back on startup (webauthn.storage.snapshot).
+//
+// A snapshot walks the repository's striped UserIndex on a background thread, which never blocks registrations or
+// logins, and writes a new file that replaces the previous one in one atomic rename once it is complete and
+// synced. The file on disk is always a whole snapshot, at most interval-ms old, and one more is written on shutdown.
+//
+// The file is in the CredentialTransfer format, so a bulk export can be loaded as a snapshot and the other way
+// round. Loading decodes the blocks in parallel and happens in the constructor, so before the web server takes
+// any request.
+public class CredentialSnapshots implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CredentialSnapshots.class);
+
+    private final Path file;
+    private final InMemoryCredentialRepository repository;
+    private final CredentialTransfer transfer;
+    private final ScheduledExecutorService snapshotExecutor;
+    // The scheduled snapshots and the one on shutdown never overlap
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final int loadedUsers;
+    private final long loadNanos;
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong writeNanosTotal = new AtomicLong();
+    private volatile long lastWriteNanos;
+    private volatile long lastSizeBytes;
+
+    public CredentialSnapshots(Path file, long intervalMs, InMemoryCredentialRepository repository,
+                               CredentialRecordCodec codec) {
+        this.file = file;
+        this.repository = repository;
+        this.transfer = new CredentialTransfer(codec);
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create snapshot directory " + file.getParent(), e);
+        }
+
+        long start = System.nanoTime();
+        this.loadedUsers = load();
+        this.loadNanos = System.nanoTime() - start;
+        if (loadedUsers > 0) {
+            log.info("Loaded {} users from {} in {} ms", loadedUsers, file, TimeUnit.NANOSECONDS.toMillis(loadNanos));
+        }
+
+        this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "credential-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotExecutor.scheduleWithFixedDelay(this::snapshotIfPossible, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Writes every user to a new file and swaps it in
+    public void snapshot() {
+        writeLock.lock();
+        try {
+            long start = System.nanoTime();
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            long size;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+                transfer.write(repository.users(), out);
+                channel.force(true);
+                size = channel.size();
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            long elapsed = System.nanoTime() - start;
+            lastWriteNanos = elapsed;
+            lastSizeBytes = size;
+            writeNanosTotal.addAndGet(elapsed);
+            writeCount.incrementAndGet();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write credential snapshot " + file, e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        // Letting a running snapshot finish, then taking the last one
+        snapshotExecutor.shutdown();
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Final credential snapshot failed, the previous one is still in place", e);
+        }
+    }
+
+    public int getLoadedUsers() {
+        return loadedUsers;
+    }
+
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getWriteNanosTotal() {
+        return writeNanosTotal.get();
+    }
+
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+
+    public long getLastSizeBytes() {
+        return lastSizeBytes;
+    }
+
+    private void snapshotIfPossible() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            // Keeping the schedule alive, the previous snapshot is still intact
+            log.warn("Credential snapshot failed, will retry", e);
+        }
+    }
+
+    // Returns how many users were restored, 0 when there is no snapshot yet
+    private int load() {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            return (int) transfer.read(in, 0, repository::restore, null).users();
+        } catch (IOException e) {
+            // Includes a file cut short, the end marker is missing then
+            throw new UncheckedIOException("Unable to read credential snapshot " + file, e);
+        } catch (IllegalStateException e) {
+            throw new IllegalStateException("Unable to read credential snapshot " + file, e);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32C;
+
+// The file format of credential snapshots and bulk exports/imports: users with their credentials, in blocks.
+//
+// Layout: [magic][version], then blocks of [payload length][CRC32C][user count, users...], then a 0 length.
+// A user is its username, display name, user ID and credential records (see CredentialRecordCodec).
+// Writing goes one block of USERS_PER_BLOCK users at a time and reading holds a few blocks per core, so either
+// way memory stays the same however many users there are. Reading decodes blocks in parallel, decoding the
+// records is the expensive part, and reports each block once it and every block before it are done, which is
+// what an import can be resumed from.
+public class CredentialTransfer {
+
+    private static final int MAGIC = 0x5741534E; // "WASN"
+    private static final byte VERSION = 1;
+    private static final int USERS_PER_BLOCK = 256;
+
+    private final CredentialRecordCodec codec;
+
+    public CredentialTransfer(CredentialRecordCodec codec) {
+        this.codec = codec;
+    }
+
+    // What was written or read. Skipped blocks are counted in blocks, their users and credentials are not.
+    public record Result(long blocks, long users, long credentials) {
+    }
+
+    // Writes the users with the end marker, out is flushed but left open
+    public Result write(Iterable<User> users, OutputStream out) throws IOException {
+        DataOutputStream dataOut = new DataOutputStream(out);
+        dataOut.writeInt(MAGIC);
+        dataOut.writeByte(VERSION);
+
+        ByteArrayOutputStream block = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream blockOut = new DataOutputStream(block);
+        blockOut.writeInt(0); // user count, filled in by writeBlock
+        long blocks = 0;
+        long userCount = 0;
+        long credentialCount = 0;
+        int usersInBlock = 0;
+        for (User user : users) {
+            credentialCount += writeUser(blockOut, user);
+            userCount++;
+            if (++usersInBlock == USERS_PER_BLOCK) {
+                writeBlock(dataOut, block, usersInBlock);
+                blocks++;
+                usersInBlock = 0;
+                blockOut.writeInt(0);
+            }
+        }
+        if (usersInBlock > 0) {
+            writeBlock(dataOut, block, usersInBlock);
+            blocks++;
+        }
+        dataOut.writeInt(0);
+        dataOut.flush();
+        return new Result(blocks, userCount, credentialCount);
+    }
+
+    // Hands every user to sink, from several threads at once. The first skipBlocks blocks are passed over
+    // without decoding them. completedBlocks, if not null, is called on this thread with the number of blocks
+    // from the start of the stream that have all gone through sink.
+    public Result read(InputStream in, long skipBlocks, Consumer<User> sink, LongConsumer completedBlocks)
+            throws IOException {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        ExecutorService decoders = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "credential-transfer-read");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Bounds how much of the stream is held in memory waiting to be decoded
+        Semaphore pendingBlocks = new Semaphore(parallelism * 2);
+        ArrayDeque<Future<Result>> pending = new ArrayDeque<>();
+        long users = 0;
+        long credentials = 0;
+        long done = 0;
+        try {
+            DataInputStream dataIn = new DataInputStream(in);
+            if (dataIn.readInt() != MAGIC || dataIn.readByte() != VERSION) {
+                throw new IllegalStateException("Not a credential export");
+            }
+            long index = 0;
+            for (int length; (length = dataIn.readInt()) != 0; index++) {
+                if (length < 0) {
+                    throw new IllegalStateException("Corrupt block " + index);
+                }
+                int crc = dataIn.readInt();
+                if (index < skipBlocks) {
+                    dataIn.skipNBytes(length);
+                    done++;
+                    continue;
+                }
+                byte[] payload = new byte[length];
+                dataIn.readFully(payload);
+                pendingBlocks.acquire();
+                long blockIndex = index;
+                pending.add(decoders.submit(() -> {
+                    try {
+                        return readBlock(payload, crc, blockIndex, sink);
+                    } finally {
+                        pendingBlocks.release();
+                    }
+                }));
+                // Reporting the blocks at the front that are finished, in order
+                while (!pending.isEmpty() && pending.peek().isDone()) {
+                    Result block = pending.poll().get();
+                    users += block.users();
+                    credentials += block.credentials();
+                    report(completedBlocks, ++done);
+                }
+            }
+            while (!pending.isEmpty()) {
+                Result block = pending.poll().get();
+                users += block.users();
+                credentials += block.credentials();
+                report(completedBlocks, ++done);
+            }
+            return new Result(done, users, credentials);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Unable to read credential export", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading credential export", e);
+        } finally {
+            decoders.shutdownNow();
+        }
+    }
+
+    private static void report(LongConsumer completedBlocks, long done) {
+        if (completedBlocks != null) {
+            completedBlocks.accept(done);
+        }
+    }
+
+    private int writeUser(DataOutputStream out, User user) throws IOException {
+        writeString(out, user.getUsername());
+        writeString(out, user.getDisplayName());
+        out.writeShort(user.getUserId().length);
+        out.write(user.getUserId());
+        List<CredentialRecord> credentials = user.getCredentials();
+        out.writeInt(credentials.size());
+        for (CredentialRecord credentialRecord : credentials) {
+            byte[] encoded = codec.encode(credentialRecord);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        return credentials.size();
+    }
+
+    private static void writeBlock(DataOutputStream out, ByteArrayOutputStream block, int userCount) throws IOException {
+        byte[] payload = block.toByteArray();
+        ByteBuffer.wrap(payload).putInt(0, userCount);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        block.reset();
+    }
+
+    private Result readBlock(byte[] payload, int expectedCrc, long index, Consumer<User> sink) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IllegalStateException("Corrupt block " + index);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int userCount = in.readInt();
+        long credentials = 0;
+        for (int i = 0; i < userCount; i++) {
+            User user = readUser(in);
+            credentials += user.getCredentials().size();
+            sink.accept(user);
+        }
+        return new Result(1, userCount, credentials);
+    }
+
+    private User readUser(DataInputStream in) throws IOException {
+        String username = readString(in);
+        String displayName = readString(in);
+        byte[] userId = new byte[in.readUnsignedShort()];
+        in.readFully(userId);
+        User user = new User(username, displayName, userId);
+        int credentialCount = in.readInt();
+        for (int i = 0; i < credentialCount; i++) {
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            user.addCredential(codec.decode(encoded));
+        }
+        return user;
+    }
+
+    // Length prefixed UTF-8, -1 for null. writeUTF would fail the whole write on a name over 64KB.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.exception.ChallengeException;
+import com.example.WebAuthn_Demo_App_2.model.ChallengeType;
+import com.example.WebAuthn_Demo_App_2.model.WebAuthnChallenge;
+import com.webauthn4j.data.client.challenge.Challenge;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Default challenge store, challenges live in this JVM's heap until the finish call takes them.
+// Only works when options and finish calls reach the same node.
+public class InMemoryChallengeStore implements ChallengeStore {
+
+    private final Map<String, WebAuthnChallenge> challengeEntriesMap = new ConcurrentHashMap<>();
+    // Usernameless logins, keyed by the challenge itself since there is no username yet.
+    // A client can have several of these open at once (e.g. one per tab waiting on passkey autofill).
+    private final Map<ByteBuffer, WebAuthnChallenge> discoverableEntriesMap = new ConcurrentHashMap<>();
+
+    // Tracks when each challenge expires so that abandoned ceremonies do not stay in the map forever
+    private final ChallengeExpiryWheel expiryWheel;
+    private final int maxEntries;
+
+    // Challenge bytes come from here instead of DefaultChallenge's UUID.randomUUID()
+    private final SecureRandomPool secureRandomPool;
+
+    public InMemoryChallengeStore(WebAuthnProperties properties, SecureRandomPool secureRandomPool) {
+        this.secureRandomPool = secureRandomPool;
+        this.expiryWheel = new ChallengeExpiryWheel(properties.getTimeoutMs(), System.currentTimeMillis());
+        this.maxEntries = properties.getChallengeStore().getMaxEntries();
+    }
+
+    @Override
+    public Challenge createAndStoreChallenge(String username, ChallengeType type, byte[] userId, String displayName) {
+        long now = System.currentTimeMillis();
+        // Dropping the challenges that have outlived webauthn.timeout-ms before adding a new one
+        expiryWheel.expire(now, this::evict);
+
+        Challenge challenge = secureRandomPool.newChallenge();
+        WebAuthnChallenge entry = new WebAuthnChallenge(
+                username,
+                type, // registration or authentication
+                challenge, // actual challenge
+                now, // timestamp
+                userId, // user handle for a registration, kept here until it finishes
+                displayName
+        );
+        // Storing the challenge entry in a map
+        if (username == null) {
+            discoverableEntriesMap.put(ByteBuffer.wrap(challenge.getValue()), entry);
+        } else {
+            challengeEntriesMap.put(challengeMapKey(username, type), entry);
+        }
+        expiryWheel.schedule(entry);
+
+        // Hard cap, so that a flood of options calls cannot grow the store without limit
+        int overflow = expiryWheel.size() - maxEntries;
+        if (overflow > 0) {
+            expiryWheel.evictOldest(overflow, now, this::evict);
+        }
+        return challenge;
+    }
+
+    // Clears the challenge but also tries to match the challenge received with the stored challenge in existing map
+    @Override
+    public WebAuthnChallenge getChallengeEntry(String username, ChallengeType type, Challenge clientChallenge) {
+        // Clearing the challenge entry from the map if it exists
+        WebAuthnChallenge entry = username == null
+                ? discoverableEntriesMap.remove(ByteBuffer.wrap(clientChallenge.getValue()))
+                : challengeEntriesMap.remove(challengeMapKey(username, type));
+        if (entry == null || entry.type() != type) {
+            throw ChallengeException.of(ChallengeException.Reason.MISSING);
+        }
+        // The wheel may not have swept this entry yet, so the timeout is checked here as well
+        if (expiryWheel.isExpired(entry, System.currentTimeMillis())) {
+            throw ChallengeException.of(ChallengeException.Reason.EXPIRED);
+        }
+        // If the actual challenge value is not the same, we do not move forward and throw an error
+        if (!Arrays.equals(entry.challenge().getValue(), clientChallenge.getValue())) {
+            throw ChallengeException.of(ChallengeException.Reason.MISMATCH);
+        }
+        return entry;
+    }
+
+    @Override
+    public int size() {
+        return challengeEntriesMap.size() + discoverableEntriesMap.size();
+    }
+
+    // Only removes the entry if it has not been replaced by a newer challenge for the same user and type
+    private boolean evict(WebAuthnChallenge entry) {
+        if (entry.username() == null) {
+            return discoverableEntriesMap.remove(ByteBuffer.wrap(entry.challenge().getValue()), entry);
+        }
+        return challengeEntriesMap.remove(challengeMapKey(entry.username(), entry.type()), entry);
+    }
+
+    // Register and authenticate will have different challenge entries, however the value will be the same
+    private String challengeMapKey(String username, ChallengeType type) {
+        return username + "|" + type;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import com.example.WebAuthn_Demo_App_2.model.StoredCredential;
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecord;
+
+// Keeps every user and their credential records on the heap. Nothing survives a restart unless
+// webauthn.storage.snapshot is enabled, see CredentialSnapshots.
+public class InMemoryCredentialRepository implements CredentialRepository {
+
+    private final UserIndex users = new UserIndex();
+    // Every credential of every user, by credential ID
+    private final CredentialIndex<StoredCredential> credentialIndex = new CredentialIndex<>();
+
+    @Override
+    public User findUser(String username) {
+        return users.get(username);
+    }
+
+    @Override
+    public User createUserIfAbsent(User user) {
+        User existing = users.putIfAbsent(user);
+        return existing != null ? existing : user;
+    }
+
+    @Override
+    public void saveCredential(String username, CredentialRecord credentialRecord) {
+        User user = users.get(username);
+        byte[] credentialId = credentialRecord.getAttestedCredentialData().getCredentialId();
+        StoredCredential stored = new StoredCredential(user, credentialRecord);
+        // Claimed in one step, so of two users registering the same credential ID only the first one gets it.
+        // Entries are never removed, so once the owner is known only that user can replace the record.
+        StoredCredential existing = credentialIndex.putIfAbsent(credentialId, stored);
+        if (existing != null) {
+            if (!existing.user().getUsername().equals(username)) {
+                throw new WebAuthnException("Credential is already registered to another user");
+            }
+            credentialIndex.put(credentialId, stored);
+        }
+        user.addCredential(credentialRecord);
+    }
+
+    @Override
+    public StoredCredential findCredential(byte[] credentialId) {
+        return credentialIndex.get(credentialId);
+    }
+
+    @Override
+    public void updateCounter(String username, CredentialRecord credentialRecord, long counter) {
+        // The record handed out by findUser is the stored one, so updating it is enough
+        credentialRecord.setCounter(counter);
+    }
+
+    @Override
+    public Iterable<User> users() {
+        return users;
+    }
+
+    // Puts back a user read from a snapshot, with its credentials. Safe to call from several threads.
+    public void restore(User user) {
+        users.put(user);
+        for (CredentialRecord credentialRecord : user.getCredentials()) {
+            credentialIndex.put(credentialRecord.getAttestedCredentialData().getCredentialId(),
+                    new StoredCredential(user, credentialRecord));
+        }
+    }
+
+    @Override
+    public int userCount() {
+        return users.size();
+    }
+
+    @Override
+    public int credentialCount() {
+        return credentialIndex.size();
+    }
+}
@@ -0,0 +1,589 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import com.example.WebAuthn_Demo_App_2.model.StoredCredential;
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.util.Base64UrlUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// Embedded storage engine: an append-only log of users and serialized credential records,
+// split into memory-mapped segment files.
+//
+// Only an offset index (username -> entries, credential ID -> entry) is kept on the heap. On startup the
+// segments are mapped and their entry headers scanned to rebuild that index, records themselves are only
+// decoded when a ceremony asks for them, and the most recently used users are kept decoded, each for as long
+// as the index still points at the entries it was decoded from. Entries that get superseded are left behind as
+// garbage and reclaimed by a periodic compaction.
+//
+// Every appended entry is forced to disk before the call that wrote it returns. Signature counters are updated
+// in place inside the mapped file and not forced, the OS writes them back within seconds, so a power loss can
+// bring a counter back to a slightly older value. A crash of the process alone loses nothing.
+public class MappedFileCredentialRepository implements CredentialRepository, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedFileCredentialRepository.class);
+
+    private static final byte USER_ENTRY = 1;
+    private static final byte CREDENTIAL_ENTRY = 2;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int CACHE_STRIPE_BITS = 4;
+    private static final int CACHE_STRIPE_COUNT = 1 << CACHE_STRIPE_BITS;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final CredentialRecordCodec codec;
+    // Null when webauthn.storage.decoded-user-cache-entries is 0
+    private final DecodedUserStripe[] decodedUsers;
+
+    // Serializes appends and compaction, lookups never take it
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Readers and in-place counter updates hold the read lock, compaction holds the write lock while it swaps files
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final ScheduledExecutorService compactionExecutor;
+
+    private volatile State state;
+    private boolean closed; // guarded by appendLock
+    private MappedSegment activeSegment; // guarded by appendLock
+    private int nextSegmentId; // guarded by appendLock
+
+    // Bytes taken by entries that have been superseded, used to decide when compaction is worth it
+    private final AtomicLong deadBytes = new AtomicLong();
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    public MappedFileCredentialRepository(Path directory, int segmentSize, long compactionIntervalMs,
+                                          int decodedUserCacheEntries, CredentialRecordCodec codec) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+        if (decodedUserCacheEntries > 0) {
+            int stripeCapacity = Math.max(1, (decodedUserCacheEntries + CACHE_STRIPE_COUNT - 1) / CACHE_STRIPE_COUNT);
+            this.decodedUsers = new DecodedUserStripe[CACHE_STRIPE_COUNT];
+            for (int i = 0; i < CACHE_STRIPE_COUNT; i++) {
+                decodedUsers[i] = new DecodedUserStripe(stripeCapacity);
+            }
+        } else {
+            this.decodedUsers = null;
+        }
+        this.state = load();
+        this.compactionExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "credential-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactionExecutor.scheduleWithFixedDelay(this::compactIfWorthwhile,
+                compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public User findUser(String username) {
+        return findUser(username, true);
+    }
+
+    // cache is false for walks over every user, which would only push the users that logins need out of the cache
+    private User findUser(String username, boolean cache) {
+        swapLock.readLock().lock();
+        try {
+            State current = state;
+            UserEntries entries = current.userIndex.get(username);
+            if (entries == null) {
+                return null;
+            }
+            DecodedUserStripe stripe = decodedUsers == null ? null
+                    : decodedUsers[username.hashCode() & (CACHE_STRIPE_COUNT - 1)];
+            DecodedUser decoded = stripe == null ? null : stripe.get(username);
+            // Any write to the user, and every compaction, puts new entries in the index
+            if (decoded != null && decoded.entries() == entries) {
+                refreshCounters(current, entries, decoded.user());
+                return decoded.user();
+            }
+            User user = decodeUser(current, entries.userLocation());
+            for (long credentialLocation : entries.credentialLocations()) {
+                user.addCredential(decodeCredential(current, credentialLocation));
+            }
+            if (stripe != null && cache) {
+                stripe.put(username, new DecodedUser(entries, user));
+            }
+            return user;
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User createUserIfAbsent(User user) {
+        appendLock.lock();
+        try {
+            User existing = findUser(user.getUsername());
+            if (existing != null) {
+                return existing;
+            }
+            long location = append(state, USER_ENTRY, 0, encodeUser(user));
+            state.userIndex.put(user.getUsername(), new UserEntries(location, new long[0]));
+            return user;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void saveCredential(String username, CredentialRecord credentialRecord) {
+        byte[] credentialId = credentialRecord.getAttestedCredentialData().getCredentialId();
+        byte[] body = encodeCredential(username, credentialId, codec.encode(credentialRecord));
+        appendLock.lock();
+        try {
+            State current = state;
+            UserEntries entries = current.userIndex.get(username);
+            if (entries == null) {
+                throw new IllegalArgumentException("User not found: " + username);
+            }
+            // Every write to the index happens under appendLock, so nobody can claim the ID between check and put
+            Long previous = current.credentialIndex.get(credentialId);
+            if (previous != null && !readString(current.segment(previous), offset(previous), 0).equals(username)) {
+                throw new WebAuthnException("Credential is already registered to another user");
+            }
+            long location = append(current, CREDENTIAL_ENTRY, credentialRecord.getCounter(), body);
+            current.credentialIndex.put(credentialId, location);
+            current.userIndex.put(username, entries.withCredential(location, previous));
+            if (previous != null) {
+                deadBytes.addAndGet(entrySize(current, previous));
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public StoredCredential findCredential(byte[] credentialId) {
+        swapLock.readLock().lock();
+        try {
+            State current = state;
+            Long location = current.credentialIndex.get(credentialId);
+            if (location == null) {
+                return null;
+            }
+            User user = findUser(readString(current.segment(location), offset(location), 0), true);
+            return user == null ? null : new StoredCredential(user, user.getCredentialById(credentialId));
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // Written into the mapped file without forcing it to disk, see the class comment
+    @Override
+    public void updateCounter(String username, CredentialRecord credentialRecord, long counter) {
+        credentialRecord.setCounter(counter);
+        swapLock.readLock().lock();
+        try {
+            State current = state;
+            Long location = current.credentialIndex.get(credentialRecord.getAttestedCredentialData().getCredentialId());
+            if (location != null) {
+                current.segment(location).writeCounter(offset(location), counter);
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // Decoded one by one as the iteration gets to them
+    @Override
+    public Iterable<User> users() {
+        return () -> state.userIndex.keySet().stream()
+                .map(username -> findUser(username, false))
+                .filter(Objects::nonNull)
+                .iterator();
+    }
+
+    // Only the in-memory indexes are read, nothing is decoded from the segments
+    @Override
+    public int userCount() {
+        return state.userIndex.size();
+    }
+
+    @Override
+    public int credentialCount() {
+        return state.credentialIndex.size();
+    }
+
+    // Rewrites the log when more than half of it is superseded entries
+    void compactIfWorthwhile() {
+        if (deadBytes.get() * 2 <= totalBytes.get()) {
+            return;
+        }
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            // Keeping the schedule alive, the old segments are still intact
+            log.warn("Credential log compaction failed, will retry", e);
+        }
+    }
+
+    // Copies every live entry into fresh segments and drops the old files. Appends wait for it to finish,
+    // lookups and counter updates only wait for the final swap.
+    void compact() {
+        appendLock.lock();
+        try {
+            State old = state;
+            Map<Integer, MappedSegment> segments = new ConcurrentHashMap<>();
+            Map<String, UserEntries> userIndex = new ConcurrentHashMap<>();
+            CredentialIndex<Long> credentialIndex = new CredentialIndex<>();
+            State compacted = new State(segments, userIndex, credentialIndex);
+            MappedSegment previousActiveSegment = activeSegment;
+            activeSegment = null;
+
+            Map<Long, Long> relocated = new HashMap<>();
+            long copiedBytes = 0;
+            try {
+                for (Map.Entry<String, UserEntries> user : old.userIndex.entrySet()) {
+                    long userLocation = copyEntry(old, compacted, user.getValue().userLocation());
+                    copiedBytes += entrySize(old, user.getValue().userLocation());
+                    long[] credentialLocations = new long[user.getValue().credentialLocations().length];
+                    for (int i = 0; i < credentialLocations.length; i++) {
+                        long oldLocation = user.getValue().credentialLocations()[i];
+                        credentialLocations[i] = copyEntry(old, compacted, oldLocation);
+                        copiedBytes += entrySize(old, oldLocation);
+                        relocated.put(oldLocation, credentialLocations[i]);
+                    }
+                    userIndex.put(user.getKey(), new UserEntries(userLocation, credentialLocations));
+                }
+            } catch (RuntimeException e) {
+                // Leaving the old log in charge, the partial copy is thrown away
+                activeSegment = previousActiveSegment;
+                for (MappedSegment segment : segments.values()) {
+                    segment.close();
+                    Files.deleteIfExists(segment.path());
+                }
+                throw e;
+            }
+            old.credentialIndex.forEach((key, location) -> {
+                // An ID whose entry no user points at any more has nothing left to find
+                Long newLocation = relocated.get(location);
+                if (newLocation != null) {
+                    credentialIndex.put(key.credentialId(), newLocation);
+                }
+            });
+            // The old files are deleted once the new ones are in charge, so these have to be on disk first
+            for (MappedSegment segment : segments.values()) {
+                segment.force();
+            }
+
+            swapLock.writeLock().lock();
+            try {
+                // Counters may have moved on while we were copying
+                for (Map.Entry<Long, Long> move : relocated.entrySet()) {
+                    long counter = old.segment(move.getKey()).counter(offset(move.getKey()));
+                    compacted.segment(move.getValue()).writeCounter(offset(move.getValue()), counter);
+                }
+                state = compacted;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+            deadBytes.set(0);
+            totalBytes.set(copiedBytes);
+
+            // Every read of a segment holds swapLock or appendLock, so nothing can still be reading the old ones
+            for (MappedSegment segment : old.segments.values()) {
+                segment.close();
+                Files.deleteIfExists(segment.path());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Credential log compaction failed", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        compactionExecutor.shutdownNow();
+        appendLock.lock();
+        // Closing unmaps the segments, so no lookup may be reading them
+        swapLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (MappedSegment segment : state.segments.values()) {
+                segment.force();
+                segment.close();
+            }
+        } finally {
+            swapLock.writeLock().unlock();
+            appendLock.unlock();
+        }
+    }
+
+    private State load() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create credential directory " + directory, e);
+        }
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.forEach(path -> {
+                String name = path.getFileName().toString();
+                if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    files.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), path);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to list credential directory " + directory, e);
+        }
+
+        State loaded = new State(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new CredentialIndex<>());
+        for (Map.Entry<Integer, Path> file : files.entrySet()) {
+            MappedSegment segment = MappedSegment.open(file.getKey(), file.getValue());
+            loaded.segments.put(segment.id(), segment);
+            scan(loaded, segment);
+            activeSegment = segment;
+            nextSegmentId = segment.id() + 1;
+        }
+        return loaded;
+    }
+
+    // Rebuilds the offset index from one segment, reading only entry headers and keys
+    private void scan(State loaded, MappedSegment segment) {
+        int offset = MappedSegment.FILE_HEADER_SIZE;
+        int length;
+        while ((length = segment.entryLength(offset)) > 0 && segment.checksumMatches(offset, length)) {
+            long location = location(segment.id(), offset);
+            int size = MappedSegment.ENTRY_HEADER_SIZE + length;
+            totalBytes.addAndGet(size);
+            String username = readString(segment, offset, 0);
+            if (segment.type(offset) == USER_ENTRY) {
+                UserEntries previous = loaded.userIndex.get(username);
+                if (previous != null) {
+                    deadBytes.addAndGet(entrySize(loaded, previous.userLocation()));
+                }
+                loaded.userIndex.put(username, new UserEntries(location,
+                        previous == null ? new long[0] : previous.credentialLocations()));
+            } else if (segment.type(offset) == CREDENTIAL_ENTRY) {
+                int idPosition = 2 + segment.readBodyShort(offset, 0);
+                byte[] credentialId = segment.readBody(offset, idPosition + 2, segment.readBodyShort(offset, idPosition));
+                Long previous = loaded.credentialIndex.put(credentialId, location);
+                // saveCredential never lets a credential change hands, a log where one did can not be trusted
+                if (previous != null && !readString(loaded.segment(previous), offset(previous), 0).equals(username)) {
+                    throw new IllegalStateException("Corrupt credential log " + segment.path() + ": credential "
+                            + Base64UrlUtil.encodeToString(credentialId) + " is stored for more than one user");
+                }
+                if (previous != null) {
+                    deadBytes.addAndGet(entrySize(loaded, previous));
+                    // A compaction interrupted by a crash can leave an older copy with a newer counter behind
+                    long counter = Math.max(loaded.segment(previous).counter(offset(previous)), segment.counter(offset));
+                    segment.writeCounter(offset, counter);
+                }
+                UserEntries entries = loaded.userIndex.get(username);
+                if (entries != null) {
+                    loaded.userIndex.put(username, entries.withCredential(location, previous));
+                }
+            }
+            offset += size;
+        }
+        segment.setWritePosition(offset);
+    }
+
+    private long append(State target, byte type, long counter, byte[] body) {
+        if (body.length + MappedSegment.ENTRY_HEADER_SIZE + MappedSegment.FILE_HEADER_SIZE + 4 > segmentSize) {
+            throw new IllegalArgumentException("Entry of " + body.length + " bytes does not fit in a credential segment");
+        }
+        if (activeSegment == null || !activeSegment.fits(body.length)) {
+            MappedSegment segment = MappedSegment.create(nextSegmentId,
+                    directory.resolve(SEGMENT_PREFIX + nextSegmentId + SEGMENT_SUFFIX), segmentSize);
+            nextSegmentId++;
+            target.segments.put(segment.id(), segment);
+            activeSegment = segment;
+        }
+        int offset = activeSegment.append(type, counter, body);
+        // Compaction forces its new segments as a whole before it swaps them in
+        if (target == state) {
+            activeSegment.force(offset, MappedSegment.ENTRY_HEADER_SIZE + body.length);
+            totalBytes.addAndGet(MappedSegment.ENTRY_HEADER_SIZE + body.length);
+        }
+        return location(activeSegment.id(), offset);
+    }
+
+    // Used by compaction to copy an entry as it is, counter included, into the new set of segments
+    private long copyEntry(State from, State to, long location) {
+        MappedSegment segment = from.segment(location);
+        int offset = offset(location);
+        byte[] body = segment.readBody(offset, segment.entryLength(offset));
+        return append(to, segment.type(offset), segment.counter(offset), body);
+    }
+
+    private User decodeUser(State current, long location) {
+        MappedSegment segment = current.segment(location);
+        int offset = offset(location);
+        int position = 0;
+        String username = readString(segment, offset, position);
+        position += 2 + segment.readBodyShort(offset, position);
+        int userIdLength = segment.readBodyShort(offset, position);
+        byte[] userId = segment.readBody(offset, position + 2, userIdLength);
+        position += 2 + userIdLength;
+        String displayName = readString(segment, offset, position);
+        return new User(username, displayName, userId);
+    }
+
+    private CredentialRecord decodeCredential(State current, long location) {
+        MappedSegment segment = current.segment(location);
+        int offset = offset(location);
+        int length = segment.entryLength(offset);
+        int position = 2 + segment.readBodyShort(offset, 0);
+        position += 2 + segment.readBodyShort(offset, position);
+        CredentialRecord credentialRecord = codec.decode(segment.readBody(offset, position, length - position));
+        credentialRecord.setCounter(segment.counter(offset));
+        return credentialRecord;
+    }
+
+    // Counters are updated in place, so the file can be ahead of a decoded copy another caller was handed
+    private static void refreshCounters(State current, UserEntries entries, User user) {
+        List<CredentialRecord> credentials = user.getCredentials();
+        long[] credentialLocations = entries.credentialLocations();
+        for (int i = 0; i < credentialLocations.length; i++) {
+            credentials.get(i).setCounter(current.segment(credentialLocations[i]).counter(offset(credentialLocations[i])));
+        }
+    }
+
+    private static byte[] encodeUser(User user) {
+        byte[] username = user.getUsername().getBytes(StandardCharsets.UTF_8);
+        byte[] displayName = user.getDisplayName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(6 + username.length + user.getUserId().length + displayName.length);
+        putShortBytes(body, username);
+        putShortBytes(body, user.getUserId());
+        putShortBytes(body, displayName);
+        return body.array();
+    }
+
+    private static byte[] encodeCredential(String username, byte[] credentialId, byte[] record) {
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(4 + usernameBytes.length + credentialId.length + record.length);
+        putShortBytes(body, usernameBytes);
+        putShortBytes(body, credentialId);
+        body.put(record);
+        return body.array();
+    }
+
+    private static void putShortBytes(ByteBuffer buffer, byte[] value) {
+        if (value.length > 0xFFFF) {
+            throw new IllegalArgumentException("Value too long for the credential log: " + value.length + " bytes");
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String readString(MappedSegment segment, int offset, int position) {
+        return new String(segment.readBody(offset, position + 2, segment.readBodyShort(offset, position)),
+                StandardCharsets.UTF_8);
+    }
+
+    private static int entrySize(State current, long location) {
+        return MappedSegment.ENTRY_HEADER_SIZE + current.segment(location).entryLength(offset(location));
+    }
+
+    // A location packs the segment ID in the high half and the offset inside the segment in the low half
+    private static long location(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+    // Segments plus the offset index pointing into them, swapped as a whole by compaction
+    private record State(Map<Integer, MappedSegment> segments,
+                         Map<String, UserEntries> userIndex,
+                         CredentialIndex<Long> credentialIndex) {
+
+        MappedSegment segment(long location) {
+            return segments.get(segmentId(location));
+        }
+    }
+
+    // A user as decoded from entries, only used while the index still holds that same UserEntries instance
+    private record DecodedUser(UserEntries entries, User user) {
+    }
+
+    // An access ordered LinkedHashMap behind a lock, like the stripes of PublicKeyCache
+    private static final class DecodedUserStripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, DecodedUser> users;
+
+        DecodedUserStripe(int capacity) {
+            this.users = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, DecodedUser> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        DecodedUser get(String username) {
+            lock.lock();
+            try {
+                return users.get(username);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(String username, DecodedUser decodedUser) {
+            lock.lock();
+            try {
+                users.put(username, decodedUser);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Where a user's own entry and each of their credential entries are, replaced rather than mutated
+    private record UserEntries(long userLocation, long[] credentialLocations) {
+
+        UserEntries withCredential(long location, Long replaced) {
+            if (replaced != null) {
+                long[] locations = credentialLocations.clone();
+                for (int i = 0; i < locations.length; i++) {
+                    if (locations[i] == replaced) {
+                        locations[i] = location;
+                        return new UserEntries(userLocation, locations);
+                    }
+                }
+            }
+            long[] locations = Arrays.copyOf(credentialLocations, credentialLocations.length + 1);
+            locations[credentialLocations.length] = location;
+            return new UserEntries(userLocation, locations);
+        }
+    }
+}
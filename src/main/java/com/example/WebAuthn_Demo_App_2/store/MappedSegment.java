@@ -0,0 +1,198 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// One file of the credential log, mapped into memory as a whole.
+//
+// File layout: [int magic][int version] followed by entries of
+// [int bodyLength][byte type][long counter][int crc32(body)][body]
+// A bodyLength of 0 marks the end of the written data. The length is written last, so an entry that was
+// only partly written before a crash is never visible. The counter sits outside the checksum so it can be
+// updated in place after every authentication.
+//
+// append() does not flush anything, the repository forces the entries it needs on disk with force(offset, length).
+// The file is mapped in an Arena of its own, so close() unmaps it right away rather than whenever the buffer
+// is collected, and a compaction doesn't leave the old segments' address space and disk blocks held. Callers
+// make sure nothing reads a segment once it is closed, an access after that throws instead of crashing.
+class MappedSegment implements AutoCloseable {
+
+    static final int MAGIC = 0x57414352; // "WACR"
+    static final int VERSION = 1;
+    static final int FILE_HEADER_SIZE = 8;
+    static final int ENTRY_HEADER_SIZE = 4 + 1 + 8 + 4;
+
+    static final int LENGTH_OFFSET = 0;
+    static final int TYPE_OFFSET = 4;
+    static final int COUNTER_OFFSET = 5;
+    static final int CRC_OFFSET = 13;
+
+    private final int id;
+    private final Path path;
+    private final Arena arena;
+    private final FileChannel channel;
+    private final MemorySegment mapping;
+    private final ByteBuffer buffer;
+    private final int capacity;
+    // Only moved by the single writer holding the repository's append lock
+    private int writePosition;
+
+    private MappedSegment(int id, Path path, Arena arena, FileChannel channel, MemorySegment mapping, int capacity,
+                          int writePosition) {
+        this.id = id;
+        this.path = path;
+        this.arena = arena;
+        this.channel = channel;
+        this.mapping = mapping;
+        this.buffer = mapping.asByteBuffer();
+        this.capacity = capacity;
+        this.writePosition = writePosition;
+    }
+
+    static MappedSegment create(int id, Path path, int capacity) {
+        try {
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Arena arena = Arena.ofShared();
+            MappedSegment segment = new MappedSegment(id, path, arena, channel,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity, arena), capacity, FILE_HEADER_SIZE);
+            segment.buffer.putInt(0, MAGIC);
+            segment.buffer.putInt(4, VERSION);
+            segment.force(0, FILE_HEADER_SIZE);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create credential segment " + path, e);
+        }
+    }
+
+    // Maps an existing file. The write position is found by the caller while it scans the entries.
+    static MappedSegment open(int id, Path path) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            int capacity = (int) Files.size(path);
+            Arena arena = Arena.ofShared();
+            MappedSegment segment = new MappedSegment(id, path, arena, channel,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity, arena), capacity, FILE_HEADER_SIZE);
+            if (capacity < FILE_HEADER_SIZE || segment.buffer.getInt(0) != MAGIC || segment.buffer.getInt(4) != VERSION) {
+                segment.close();
+                throw new IllegalStateException("Not a credential segment: " + path);
+            }
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open credential segment " + path, e);
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    void setWritePosition(int writePosition) {
+        this.writePosition = writePosition;
+    }
+
+    boolean fits(int bodyLength) {
+        // Leaving room for the terminating zero length
+        return (long) writePosition + ENTRY_HEADER_SIZE + bodyLength + 4 <= capacity;
+    }
+
+    // Appends an entry and returns its offset. Callers must check fits() first.
+    int append(byte type, long counter, byte[] body) {
+        int offset = writePosition;
+        buffer.put(offset + TYPE_OFFSET, type);
+        buffer.putLong(offset + COUNTER_OFFSET, counter);
+        buffer.putInt(offset + CRC_OFFSET, crc(body, 0, body.length));
+        buffer.put(offset + ENTRY_HEADER_SIZE, body);
+        buffer.putInt(offset + LENGTH_OFFSET, body.length);
+        writePosition = offset + ENTRY_HEADER_SIZE + body.length;
+        return offset;
+    }
+
+    // Returns the body length of the entry at the offset, or -1 if there is no complete entry there
+    int entryLength(int offset) {
+        if ((long) offset + ENTRY_HEADER_SIZE > capacity) {
+            return -1;
+        }
+        int length = buffer.getInt(offset + LENGTH_OFFSET);
+        if (length <= 0 || (long) offset + ENTRY_HEADER_SIZE + length > capacity) {
+            return -1;
+        }
+        return length;
+    }
+
+    boolean checksumMatches(int offset, int length) {
+        // CRC32 can't read a buffer of a closeable mapping directly, only a copy
+        return crc(readBody(offset, length), 0, length) == buffer.getInt(offset + CRC_OFFSET);
+    }
+
+    byte type(int offset) {
+        return buffer.get(offset + TYPE_OFFSET);
+    }
+
+    long counter(int offset) {
+        return buffer.getLong(offset + COUNTER_OFFSET);
+    }
+
+    void writeCounter(int offset, long counter) {
+        buffer.putLong(offset + COUNTER_OFFSET, counter);
+    }
+
+    byte[] readBody(int offset, int length) {
+        return readBody(offset, 0, length);
+    }
+
+    // Reads part of an entry body, used to pick up keys without copying the whole record
+    byte[] readBody(int offset, int bodyPosition, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset + ENTRY_HEADER_SIZE + bodyPosition, bytes);
+        return bytes;
+    }
+
+    int readBodyShort(int offset, int bodyPosition) {
+        return Short.toUnsignedInt(buffer.getShort(offset + ENTRY_HEADER_SIZE + bodyPosition));
+    }
+
+    void force() {
+        mapping.force();
+    }
+
+    // Flushes only the pages holding this range, an entry is usually a single page
+    void force(int offset, int length) {
+        mapping.asSlice(offset, length).force();
+    }
+
+    // Unmaps the file, see the class comment. Closing twice does nothing.
+    @Override
+    public void close() {
+        try {
+            if (arena.scope().isAlive()) {
+                arena.close();
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to close credential segment " + path, e);
+        }
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+}
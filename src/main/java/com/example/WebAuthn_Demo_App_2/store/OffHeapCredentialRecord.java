@@ -0,0 +1,173 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.client.CollectedClientData;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// A credential record kept in OffHeapCredentialRepository's memory, this object is only where it is.
+//
+// Only what an authentication needs is stored: the counter, the flags, the transports and the attested
+// credential data (AAGUID, credential ID, COSE key). The attestation statement, client data and extensions
+// of the registration are gone, so their getters return null. The attested credential data is decoded
+// again on every getAttestedCredentialData(), nothing of it stays on the heap between logins.
+//
+// Layout at offset: [counter, 8 bytes][flags][transports][attested credential data length, 2 bytes][data]
+public final class OffHeapCredentialRecord implements CredentialRecord {
+
+    static final int HEADER_LENGTH = 12;
+
+    private static final long COUNTER = 0;
+    private static final long FLAGS = 8;
+    private static final long TRANSPORTS = 9;
+    private static final long DATA_LENGTH = 10;
+
+    // Two bits per Boolean flag: 0 for null, 2 for false, 3 for true
+    private static final int UV_INITIALIZED_SHIFT = 0;
+    private static final int BACKUP_ELIGIBLE_SHIFT = 2;
+    private static final int BACKED_UP_SHIFT = 4;
+
+    // One bit per transport webauthn4j knows, other values are only hints and are dropped.
+    // The top bit marks a record that had no transports at all, rather than an empty set.
+    private static final AuthenticatorTransport[] KNOWN_TRANSPORTS = {
+            AuthenticatorTransport.USB,
+            AuthenticatorTransport.NFC,
+            AuthenticatorTransport.BLE,
+            AuthenticatorTransport.HYBRID,
+            AuthenticatorTransport.INTERNAL
+    };
+    private static final int NO_TRANSPORTS = 0x80;
+
+    private final MemorySegment segment;
+    private final long offset;
+    private final CredentialRecordCodec codec;
+
+    private OffHeapCredentialRecord(MemorySegment segment, long offset, CredentialRecordCodec codec) {
+        this.segment = segment;
+        this.offset = offset;
+        this.codec = codec;
+    }
+
+    // Bytes needed for a record with this much attested credential data, kept 8 byte aligned for the counter
+    static long size(int attestedCredentialDataLength) {
+        return (HEADER_LENGTH + attestedCredentialDataLength + 7) & ~7L;
+    }
+
+    // Writes credentialRecord at offset, which has room for size(attestedCredentialData.length)
+    static OffHeapCredentialRecord write(MemorySegment segment, long offset, CredentialRecord credentialRecord,
+                                         byte[] attestedCredentialData, CredentialRecordCodec codec) {
+        segment.set(ValueLayout.JAVA_LONG, offset + COUNTER, credentialRecord.getCounter());
+        int flags = flag(credentialRecord.isUvInitialized(), UV_INITIALIZED_SHIFT)
+                | flag(credentialRecord.isBackupEligible(), BACKUP_ELIGIBLE_SHIFT)
+                | flag(credentialRecord.isBackedUp(), BACKED_UP_SHIFT);
+        segment.set(ValueLayout.JAVA_BYTE, offset + FLAGS, (byte) flags);
+        segment.set(ValueLayout.JAVA_BYTE, offset + TRANSPORTS, (byte) transportBits(credentialRecord.getTransports()));
+        segment.set(ValueLayout.JAVA_SHORT_UNALIGNED, offset + DATA_LENGTH, (short) attestedCredentialData.length);
+        MemorySegment.copy(attestedCredentialData, 0, segment, ValueLayout.JAVA_BYTE, offset + HEADER_LENGTH,
+                attestedCredentialData.length);
+        return new OffHeapCredentialRecord(segment, offset, codec);
+    }
+
+    @Override
+    public AttestedCredentialData getAttestedCredentialData() {
+        byte[] data = new byte[Short.toUnsignedInt(segment.get(ValueLayout.JAVA_SHORT_UNALIGNED, offset + DATA_LENGTH))];
+        MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, offset + HEADER_LENGTH, data, 0, data.length);
+        return codec.decodeAttestedCredentialData(data);
+    }
+
+    // The signature counter is owned by SignCounterTracker, which writes it back through here
+    @Override
+    public long getCounter() {
+        return segment.get(ValueLayout.JAVA_LONG, offset + COUNTER);
+    }
+
+    @Override
+    public void setCounter(long value) {
+        segment.set(ValueLayout.JAVA_LONG, offset + COUNTER, value);
+    }
+
+    @Override
+    public Boolean isUvInitialized() {
+        return flag(UV_INITIALIZED_SHIFT);
+    }
+
+    @Override
+    public void setUvInitialized(boolean value) {
+        setFlag(UV_INITIALIZED_SHIFT, value);
+    }
+
+    @Override
+    public Boolean isBackupEligible() {
+        return flag(BACKUP_ELIGIBLE_SHIFT);
+    }
+
+    @Override
+    public void setBackupEligible(boolean value) {
+        setFlag(BACKUP_ELIGIBLE_SHIFT, value);
+    }
+
+    @Override
+    public Boolean isBackedUp() {
+        return flag(BACKED_UP_SHIFT);
+    }
+
+    @Override
+    public void setBackedUp(boolean value) {
+        setFlag(BACKED_UP_SHIFT, value);
+    }
+
+    @Override
+    public Set<AuthenticatorTransport> getTransports() {
+        int bits = Byte.toUnsignedInt(segment.get(ValueLayout.JAVA_BYTE, offset + TRANSPORTS));
+        if ((bits & NO_TRANSPORTS) != 0) {
+            return null;
+        }
+        Set<AuthenticatorTransport> transports = new LinkedHashSet<>();
+        for (int i = 0; i < KNOWN_TRANSPORTS.length; i++) {
+            if ((bits & (1 << i)) != 0) {
+                transports.add(KNOWN_TRANSPORTS[i]);
+            }
+        }
+        return transports;
+    }
+
+    // Not kept, an authentication never looks at the registration's client data
+    @Override
+    public CollectedClientData getClientData() {
+        return null;
+    }
+
+    private Boolean flag(int shift) {
+        int value = (segment.get(ValueLayout.JAVA_BYTE, offset + FLAGS) >> shift) & 3;
+        return value == 0 ? null : value == 3;
+    }
+
+    // The flags share a byte, so two updates at once must not both read the old one
+    private synchronized void setFlag(int shift, boolean value) {
+        int flags = segment.get(ValueLayout.JAVA_BYTE, offset + FLAGS);
+        flags = (flags & ~(3 << shift)) | flag(value, shift);
+        segment.set(ValueLayout.JAVA_BYTE, offset + FLAGS, (byte) flags);
+    }
+
+    private static int flag(Boolean value, int shift) {
+        return value == null ? 0 : (value ? 3 : 2) << shift;
+    }
+
+    private static int transportBits(Set<AuthenticatorTransport> transports) {
+        if (transports == null) {
+            return NO_TRANSPORTS;
+        }
+        int bits = 0;
+        for (int i = 0; i < KNOWN_TRANSPORTS.length; i++) {
+            if (transports.contains(KNOWN_TRANSPORTS[i])) {
+                bits |= 1 << i;
+            }
+        }
+        return bits;
+    }
+}
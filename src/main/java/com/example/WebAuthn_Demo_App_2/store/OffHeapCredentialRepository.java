@@ -0,0 +1,143 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import com.example.WebAuthn_Demo_App_2.model.StoredCredential;
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecord;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps users on the heap but their credential records off it (webauthn.storage.type=off-heap).
+//
+// A CredentialRecordImpl from a registration holds the whole attestation object, client data and extensions as
+// object graphs, several KB per credential that the GC has to walk for as long as the credential exists. Here
+// each record is written into segments of native memory as an OffHeapCredentialRecord, about a hundred bytes
+// for an ES256 key, and the heap only keeps a small handle to it. The segments are allocated from one shared
+// Arena in segment-size-bytes blocks, records are appended to the current one. A credential registered again
+// leaves its old bytes behind until restart. Nothing survives a restart, the same as the heap storage.
+public class OffHeapCredentialRepository implements CredentialRepository, AutoCloseable {
+
+    private final CredentialRecordCodec codec;
+    private final long segmentSize;
+    private final Arena arena = Arena.ofShared();
+
+    private final UserIndex users = new UserIndex();
+    // Every credential of every user, by credential ID
+    private final CredentialIndex<StoredCredential> credentialIndex = new CredentialIndex<>();
+
+    // Serializes appends, reads never take it
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private MemorySegment segment; // guarded by appendLock
+    private long position; // guarded by appendLock
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    public OffHeapCredentialRepository(long segmentSize, CredentialRecordCodec codec) {
+        this.segmentSize = segmentSize;
+        this.codec = codec;
+    }
+
+    @Override
+    public User findUser(String username) {
+        return users.get(username);
+    }
+
+    @Override
+    public User createUserIfAbsent(User user) {
+        User existing = users.putIfAbsent(user);
+        return existing != null ? existing : user;
+    }
+
+    @Override
+    public void saveCredential(String username, CredentialRecord credentialRecord) {
+        User user = users.get(username);
+        if (user == null) {
+            throw new IllegalArgumentException("User not found: " + username);
+        }
+        byte[] credentialId = credentialRecord.getAttestedCredentialData().getCredentialId();
+        // Early way out before any native memory is spent, the claim below is what actually decides
+        checkOwner(credentialIndex.get(credentialId), username);
+        // Encoded before taking the lock, only the copy into the segment happens under it
+        byte[] attestedCredentialData = codec.encodeAttestedCredentialData(credentialRecord.getAttestedCredentialData());
+        if (attestedCredentialData.length > 0xFFFF) {
+            throw new IllegalArgumentException("Attested credential data of " + attestedCredentialData.length
+                    + " bytes is too large to store");
+        }
+        OffHeapCredentialRecord stored;
+        appendLock.lock();
+        try {
+            long size = OffHeapCredentialRecord.size(attestedCredentialData.length);
+            if (segment == null || position + size > segment.byteSize()) {
+                segment = arena.allocate(Math.max(segmentSize, size), Long.BYTES);
+                position = 0;
+                allocatedBytes.addAndGet(segment.byteSize());
+            }
+            stored = OffHeapCredentialRecord.write(segment, position, credentialRecord, attestedCredentialData, codec);
+            position += size;
+            usedBytes.addAndGet(size);
+        } finally {
+            appendLock.unlock();
+        }
+        // Claimed in one step, so of two users registering the same credential ID only the first one gets it.
+        // The loser's record stays behind in the segment like a replaced one.
+        StoredCredential storedCredential = new StoredCredential(user, stored);
+        StoredCredential existing = credentialIndex.putIfAbsent(credentialId, storedCredential);
+        if (existing != null) {
+            checkOwner(existing, username);
+            credentialIndex.put(credentialId, storedCredential);
+        }
+        user.addCredential(stored);
+    }
+
+    @Override
+    public StoredCredential findCredential(byte[] credentialId) {
+        return credentialIndex.get(credentialId);
+    }
+
+    @Override
+    public void updateCounter(String username, CredentialRecord credentialRecord, long counter) {
+        // The record handed out by findUser is the stored one, this writes straight into the segment
+        credentialRecord.setCounter(counter);
+    }
+
+    @Override
+    public Iterable<User> users() {
+        return users;
+    }
+
+    @Override
+    public int userCount() {
+        return users.size();
+    }
+
+    @Override
+    public int credentialCount() {
+        return credentialIndex.size();
+    }
+
+    // Native memory taken by segments so far
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    // Of that, the bytes records have been written to
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    // Frees all segments, nothing may read a record after this
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private static void checkOwner(StoredCredential existing, String username) {
+        if (existing != null && !existing.user().getUsername().equals(username)) {
+            throw new WebAuthnException("Credential is already registered to another user");
+        }
+    }
+}
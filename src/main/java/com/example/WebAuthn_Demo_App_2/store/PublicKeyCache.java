@@ -0,0 +1,239 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.model.CredentialKey;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.attestation.statement.COSEKeyOperation;
+import com.webauthn4j.data.attestation.statement.COSEKeyType;
+import org.springframework.stereotype.Component;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keeps the java.security.PublicKey of recently used credentials, so repeat logins skip turning the COSE key
+// into a PublicKey (a KeyFactory lookup and, for EC keys, a point check) on every assertion.
+//
+// webauthn4j calls COSEKey.getPublicKey() during verify, so the cache hands out attested credential data
+// whose COSE key returns the cached PublicKey, and VerificationRecord puts it in front of the stored record.
+// webauthn4j builds its own Signature internally, so that part can't be reused from here.
+//
+// An entry is only used while the credential's COSE key still equals the one it was built from, so a
+// replaced credential never verifies against an old key. Size is bounded per stripe, least recently used first.
+@Component
+public class PublicKeyCache {
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPE_COUNT = 1 << STRIPE_BITS;
+
+    private final Stripe[] stripes;
+    private final boolean enabled;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public PublicKeyCache(WebAuthnProperties properties) {
+        int maxEntries = properties.getPublicKeyCache().getMaxEntries();
+        this.enabled = maxEntries > 0;
+        int stripeCapacity = Math.max(1, (maxEntries + STRIPE_COUNT - 1) / STRIPE_COUNT);
+        this.stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    // The attested credential data to verify with, a copy whose COSE key returns the cached PublicKey
+    // when there is one and the credential's own otherwise
+    public AttestedCredentialData forVerification(AttestedCredentialData attestedCredentialData) {
+        if (!enabled || attestedCredentialData == null || attestedCredentialData.getCOSEKey() == null) {
+            return attestedCredentialData;
+        }
+        COSEKey coseKey = attestedCredentialData.getCOSEKey();
+        CredentialKey key = new CredentialKey(attestedCredentialData.getCredentialId());
+        Stripe stripe = stripe(key.hashCode());
+
+        Entry entry = stripe.get(key);
+        // Same instance for heap storage, an equal decoded copy for mapped-file storage
+        if (entry != null && (entry.source() == coseKey || entry.source().equals(coseKey))) {
+            hits.increment();
+            return entry.attestedCredentialData();
+        }
+        misses.increment();
+
+        PublicKey publicKey;
+        try {
+            publicKey = coseKey.hasPublicKey() ? coseKey.getPublicKey() : null;
+        } catch (RuntimeException e) {
+            // Leaving a broken key for webauthn4j to reject the way it normally does
+            publicKey = null;
+        }
+        if (publicKey == null) {
+            return attestedCredentialData;
+        }
+        AttestedCredentialData cached = new AttestedCredentialData(
+                attestedCredentialData.getAaguid(),
+                attestedCredentialData.getCredentialId(),
+                new CachedCOSEKey(coseKey, publicKey)
+        );
+        stripe.put(key, new Entry(coseKey, cached));
+        return cached;
+    }
+
+    // Called when a credential is replaced or removed
+    public void invalidate(byte[] credentialId) {
+        CredentialKey key = new CredentialKey(credentialId);
+        stripe(key.hashCode()).remove(key);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Stripe stripe(int hash) {
+        return stripes[hash >>> (Integer.SIZE - STRIPE_BITS)];
+    }
+
+    private record Entry(COSEKey source, AttestedCredentialData attestedCredentialData) {
+    }
+
+    // An access ordered LinkedHashMap behind a lock, reads reorder the map so they need the lock as well
+    private final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<CredentialKey, Entry> entries;
+
+        Stripe(int capacity) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<CredentialKey, Entry> eldest) {
+                    if (size() > capacity) {
+                        evictions.increment();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        Entry get(CredentialKey key) {
+            lock.lock();
+            try {
+                return entries.get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(CredentialKey key, Entry entry) {
+            lock.lock();
+            try {
+                entries.put(key, entry);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(CredentialKey key) {
+            lock.lock();
+            try {
+                entries.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // The credential's COSE key with the PublicKey already built
+    private static final class CachedCOSEKey implements COSEKey {
+
+        private final COSEKey delegate;
+        private final PublicKey publicKey;
+
+        CachedCOSEKey(COSEKey delegate, PublicKey publicKey) {
+            this.delegate = delegate;
+            this.publicKey = publicKey;
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            return publicKey;
+        }
+
+        @Override
+        public boolean hasPublicKey() {
+            return true;
+        }
+
+        @Override
+        public boolean hasPrivateKey() {
+            return delegate.hasPrivateKey();
+        }
+
+        @Override
+        public PrivateKey getPrivateKey() {
+            return delegate.getPrivateKey();
+        }
+
+        @Override
+        public COSEKeyType getKeyType() {
+            return delegate.getKeyType();
+        }
+
+        @Override
+        public byte[] getKeyId() {
+            return delegate.getKeyId();
+        }
+
+        @Override
+        public COSEAlgorithmIdentifier getAlgorithm() {
+            return delegate.getAlgorithm();
+        }
+
+        @Override
+        public List<COSEKeyOperation> getKeyOps() {
+            return delegate.getKeyOps();
+        }
+
+        @Override
+        public byte[] getBaseIV() {
+            return delegate.getBaseIV();
+        }
+
+        @Override
+        public void validate() {
+            delegate.validate();
+        }
+    }
+}
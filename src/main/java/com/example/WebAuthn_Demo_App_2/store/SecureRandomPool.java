@@ -0,0 +1,154 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.springframework.stereotype.Component;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Random bytes for challenges and user IDs.
+//
+// DefaultChallenge() goes through UUID.randomUUID(), which shares one SecureRandom across the JVM
+// (and only gives 122 random bits). Here every stripe has its own DRBG and hands out bytes from a
+// 4KB buffer, so a draw is normally just an array copy and threads only meet when they land on the same stripe.
+// A thread tries its own stripe first and moves on to the next free one instead of waiting.
+@Component
+public class SecureRandomPool {
+
+    private static final int CHALLENGE_LENGTH = 16;
+    private static final int USER_ID_LENGTH = 32;
+    private static final int BATCH_SIZE = 4096;
+
+    private final Stripe[] stripes;
+    private final int mask;
+
+    // Entropy draw metrics, i.e. the DRBG calls that refill a stripe's buffer
+    private final LongAdder refills = new LongAdder();
+    private final LongAdder refillNanos = new LongAdder();
+    private final AtomicLong maxRefillNanos = new AtomicLong();
+    private final LongAdder bytesServed = new LongAdder();
+
+    public SecureRandomPool() {
+        // Power of two, at least two stripes per core
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(newDrbg());
+        }
+        this.mask = count - 1;
+    }
+
+    public Challenge newChallenge() {
+        byte[] value = new byte[CHALLENGE_LENGTH];
+        nextBytes(value);
+        return new DefaultChallenge(value);
+    }
+
+    public byte[] newUserId() {
+        byte[] userId = new byte[USER_ID_LENGTH];
+        nextBytes(userId);
+        return userId;
+    }
+
+    public void nextBytes(byte[] bytes) {
+        int home = (int) mix(Thread.currentThread().threadId()) & mask;
+        for (int i = 0; i <= mask; i++) {
+            Stripe stripe = stripes[(home + i) & mask];
+            if (stripe.lock.tryLock()) {
+                try {
+                    stripe.copyTo(bytes);
+                } finally {
+                    stripe.lock.unlock();
+                }
+                return;
+            }
+        }
+        // Every stripe is busy, just wait for our own
+        Stripe stripe = stripes[home];
+        stripe.lock.lock();
+        try {
+            stripe.copyTo(bytes);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    public long getRefillCount() {
+        return refills.sum();
+    }
+
+    public long getRefillNanosTotal() {
+        return refillNanos.sum();
+    }
+
+    public long getRefillNanosMax() {
+        return maxRefillNanos.get();
+    }
+
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    private static SecureRandom newDrbg() {
+        try {
+            // Seeded from the OS on creation, reseeds itself as configured by the JDK's securerandom.drbg.config
+            return SecureRandom.getInstance("DRBG");
+        } catch (NoSuchAlgorithmException e) {
+            return new SecureRandom();
+        }
+    }
+
+    // Thread IDs are sequential, spread them over the stripes
+    private static long mix(long value) {
+        value *= 0x9E3779B97F4A7C15L;
+        return value ^ (value >>> 32);
+    }
+
+    private final class Stripe {
+
+        final ReentrantLock lock = new ReentrantLock();
+        final SecureRandom drbg;
+        final byte[] buffer = new byte[BATCH_SIZE];
+        int position = BATCH_SIZE;
+
+        Stripe(SecureRandom drbg) {
+            this.drbg = drbg;
+        }
+
+        // Caller holds the lock
+        void copyTo(byte[] bytes) {
+            int copied = 0;
+            while (copied < bytes.length) {
+                if (position == BATCH_SIZE) {
+                    refill();
+                }
+                int length = Math.min(bytes.length - copied, BATCH_SIZE - position);
+                System.arraycopy(buffer, position, bytes, copied, length);
+                // Handed out bytes don't stay behind in the buffer
+                Arrays.fill(buffer, position, position + length, (byte) 0);
+                position += length;
+                copied += length;
+            }
+            bytesServed.add(bytes.length);
+        }
+
+        private void refill() {
+            long start = System.nanoTime();
+            drbg.nextBytes(buffer);
+            long elapsed = System.nanoTime() - start;
+            position = 0;
+            refills.increment();
+            refillNanos.add(elapsed);
+            maxRefillNanos.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.webauthn4j.util.Base64UrlUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+// The authoritative signature counter of every credential that has been used recently.
+//
+// Two logins with the same credential can be verified at the same time (two tabs, a batch, a replayed
+// assertion), and a plain read-compare-write on the stored record would let both pass and leave whichever
+// write came last. Here each credential has an AtomicLong that is only moved forward with a compare-and-set,
+// so of two assertions with the same or a lower counter exactly one wins and the other is reported as a
+// regression, which the spec treats as a sign the authenticator may have been cloned.
+//
+// An uncontended login is one CAS, a contended one retries the CAS, nothing takes a lock. Writing the value
+// through to the repository is done by one thread per credential at a time, which always writes the latest
+// value, so the stored counter never goes backwards either.
+//
+// A counter nobody has used for IDLE_NANOS and whose value is in the repository is dropped, the stored record
+// has the same value to start from next time. Dropping one retires it first with a CAS, so a login that got
+// hold of it just before sees that and looks the counter up again instead of advancing one that is gone.
+@Component
+public class SignCounterTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(SignCounterTracker.class);
+
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+    // Set instead of a value on a counter that is being dropped, a real one is never negative
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final CredentialIndex<Counter> counters = new CredentialIndex<>();
+    private final LongAdder regressions = new LongAdder();
+
+    private final long idleNanos;
+    private final LongSupplier nanoClock;
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private volatile long lastSweep;
+
+    public SignCounterTracker() {
+        this(IDLE_NANOS, System::nanoTime);
+    }
+
+    SignCounterTracker(long idleNanos, LongSupplier nanoClock) {
+        this.idleNanos = idleNanos;
+        this.nanoClock = nanoClock;
+        this.lastSweep = nanoClock.getAsLong();
+    }
+
+    // The counter to verify against, seeded from the stored record the first time the credential is seen
+    public long current(byte[] credentialId, long storedCounter) {
+        while (true) {
+            long value = counter(credentialId, storedCounter).value.get();
+            if (value != RETIRED) {
+                return value;
+            }
+        }
+    }
+
+    // Moves the counter to signCount, false if signCount is not above it (an authenticator that keeps
+    // sending 0 never had a counter and is let through, like webauthn4j does)
+    public boolean advance(byte[] credentialId, long storedCounter, long signCount) {
+        Counter counter = counter(credentialId, storedCounter);
+        while (true) {
+            long current = counter.value.get();
+            if (current == RETIRED) {
+                counter = counter(credentialId, storedCounter);
+                continue;
+            }
+            if (signCount == 0 && current == 0) {
+                return true;
+            }
+            if (signCount <= current) {
+                regressions.increment();
+                log.warn("Signature counter of credential {} went from {} to {}, the authenticator may be cloned",
+                        Base64UrlUtil.encodeToString(credentialId), current, signCount);
+                return false;
+            }
+            if (counter.value.compareAndSet(current, signCount)) {
+                return true;
+            }
+        }
+    }
+
+    // Hands the latest counter to writer. If another thread is already writing this credential it picks up
+    // our value when it is done, so this returns straight away instead of waiting.
+    public void persist(byte[] credentialId, LongConsumer writer) {
+        Counter counter = counters.get(credentialId);
+        if (counter == null) {
+            return;
+        }
+        while (counter.writing.compareAndSet(false, true)) {
+            long written;
+            try {
+                written = counter.value.get();
+                writer.accept(written);
+                counter.persisted = written;
+            } finally {
+                counter.writing.set(false);
+            }
+            // Done unless somebody advanced the counter while we were writing (and left it to us)
+            if (counter.value.get() == written) {
+                break;
+            }
+        }
+        sweepIfDue();
+    }
+
+    // The credential was replaced, the next use starts again from the new record
+    public void forget(byte[] credentialId) {
+        counters.remove(credentialId);
+    }
+
+    public long getRegressionCount() {
+        return regressions.sum();
+    }
+
+    // Counters held right now
+    int size() {
+        return counters.size();
+    }
+
+    private Counter counter(byte[] credentialId, long storedCounter) {
+        long now = nanoClock.getAsLong();
+        while (true) {
+            Counter counter = counters.get(credentialId);
+            if (counter == null) {
+                Counter created = new Counter(storedCounter, now);
+                Counter existing = counters.putIfAbsent(credentialId, created);
+                if (existing == null) {
+                    return created;
+                }
+                counter = existing;
+            }
+            if (counter.value.get() != RETIRED) {
+                counter.lastUsed = now;
+                return counter;
+            }
+            // Being dropped by a sweep, finishing that for it and starting over from the stored record
+            counters.remove(credentialId, counter);
+        }
+    }
+
+    // At most every idleNanos / 2, on whichever thread gets here first. Walks every counter, but those are
+    // only the credentials used in the last few minutes.
+    private void sweepIfDue() {
+        long now = nanoClock.getAsLong();
+        if (now - lastSweep < idleNanos / 2 || !sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            lastSweep = now;
+            counters.forEach((key, counter) -> {
+                long persisted = counter.persisted;
+                if (now - counter.lastUsed > idleNanos && !counter.writing.get()
+                        && counter.value.compareAndSet(persisted, RETIRED)) {
+                    counters.remove(key.credentialId(), counter);
+                }
+            });
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private static final class Counter {
+
+        private final AtomicLong value;
+        // Set while one thread writes the value through to the repository
+        private final AtomicBoolean writing = new AtomicBoolean();
+        // What the repository has, the value the counter started from until the first write
+        private volatile long persisted;
+        private volatile long lastUsed;
+
+        Counter(long value, long now) {
+            this.value = new AtomicLong(value);
+            this.persisted = value;
+            this.lastUsed = now;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.exception.ChallengeException;
+import com.example.WebAuthn_Demo_App_2.model.ChallengeType;
+import com.example.WebAuthn_Demo_App_2.model.WebAuthnChallenge;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Stateless challenges for running several nodes without sticky sessions.
+//
+// The challenge value is a token:
+//   [version][type][createdAt][16 random bytes][user ID length][user ID][display name length][display name][truncated HMAC-SHA256]
+// The user ID and display name are only there for registration, so whichever node gets the finish call can
+// create the user. The MAC covers the token and the length prefixed username, so the username is bound to the
+// challenge without being sent in it (the challenge ends up in clientDataJSON). A usernameless login MACs a -1
+// length, so its tokens can't be passed off as anybody's and back. The length prefix, and refusing a token with
+// bytes after the display name, stop a token from being cut at another point to move username bytes into it.
+// Any node configured with the same webauthn.challenge-store.secret can check a token another node issued, with
+// no shared storage.
+//
+// Nodes only remember the tokens they have consumed, until they expire, so a token can't be used twice on
+// the same node. A replay to a different node within webauthn.timeout-ms is not caught here, for
+// authentication the signature counter check still applies.
+public class SignedTokenChallengeStore implements ChallengeStore {
+
+    private static final byte VERSION = 3;
+    private static final int NONCE_LENGTH = 16;
+    private static final int MAC_LENGTH = 16;
+    private static final int HEADER_LENGTH = 1 + 1 + Long.BYTES + NONCE_LENGTH;
+    // Both length bytes, with an empty user ID and display name
+    private static final int MIN_TOKEN_LENGTH = HEADER_LENGTH + 2 + MAC_LENGTH;
+    private static final int MAX_FIELD_LENGTH = 255;
+    private static final byte[] EMPTY = new byte[0];
+    private static final ChallengeType[] TYPES = ChallengeType.values();
+
+    private final Mac macPrototype;
+    private final SecureRandomPool secureRandomPool;
+
+    // Tokens already used on this node, dropped by the wheel once they would have expired anyway
+    private final Map<ByteBuffer, WebAuthnChallenge> consumed = new ConcurrentHashMap<>();
+    private final ChallengeExpiryWheel expiryWheel;
+    private final int maxEntries;
+
+    public SignedTokenChallengeStore(byte[] secret, long timeoutMs, int maxEntries, SecureRandomPool secureRandomPool) {
+        try {
+            this.macPrototype = Mac.getInstance("HmacSHA256");
+            macPrototype.init(new SecretKeySpec(secret, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+        this.secureRandomPool = secureRandomPool;
+        this.expiryWheel = new ChallengeExpiryWheel(timeoutMs, System.currentTimeMillis());
+        this.maxEntries = maxEntries;
+    }
+
+    @Override
+    public Challenge createAndStoreChallenge(String username, ChallengeType type, byte[] userId, String displayName) {
+        byte[] userIdBytes = userId == null ? EMPTY : userId;
+        byte[] displayNameBytes = displayName == null ? EMPTY : displayName.getBytes(StandardCharsets.UTF_8);
+        if (userIdBytes.length > MAX_FIELD_LENGTH || displayNameBytes.length > MAX_FIELD_LENGTH) {
+            throw new IllegalArgumentException("User ID and display name must be at most " + MAX_FIELD_LENGTH + " bytes");
+        }
+        byte[] nonce = new byte[NONCE_LENGTH];
+        secureRandomPool.nextBytes(nonce);
+
+        ByteBuffer token = ByteBuffer.allocate(MIN_TOKEN_LENGTH + userIdBytes.length + displayNameBytes.length)
+                .put(VERSION)
+                .put((byte) type.ordinal())
+                .putLong(System.currentTimeMillis())
+                .put(nonce)
+                .put((byte) userIdBytes.length)
+                .put(userIdBytes)
+                .put((byte) displayNameBytes.length)
+                .put(displayNameBytes);
+        token.put(mac(token.array(), token.position(), username), 0, MAC_LENGTH);
+        return new DefaultChallenge(token.array());
+    }
+
+    @Override
+    public WebAuthnChallenge getChallengeEntry(String username, ChallengeType type, Challenge clientChallenge) {
+        byte[] token = clientChallenge.getValue();
+        if (token.length < MIN_TOKEN_LENGTH || token[0] != VERSION) {
+            throw ChallengeException.of(ChallengeException.Reason.MISMATCH);
+        }
+        int payloadLength = token.length - MAC_LENGTH;
+        // Constant time, and checked before anything in the token is trusted
+        byte[] expectedMac = Arrays.copyOf(mac(token, payloadLength, username), MAC_LENGTH);
+        if (!MessageDigest.isEqual(expectedMac, Arrays.copyOfRange(token, payloadLength, token.length))) {
+            throw ChallengeException.of(ChallengeException.Reason.MISMATCH);
+        }
+        int typeIndex = token[1];
+        if (typeIndex < 0 || typeIndex >= TYPES.length || TYPES[typeIndex] != type) {
+            throw ChallengeException.of(ChallengeException.Reason.MISMATCH);
+        }
+
+        ByteBuffer payload = ByteBuffer.wrap(token, 0, payloadLength);
+        long createdAt = payload.getLong(2);
+        payload.position(HEADER_LENGTH);
+        byte[] userId = readField(payload);
+        byte[] displayName = readField(payload);
+        if (userId == null || displayName == null || payload.hasRemaining()) {
+            // Not how we wrote it, only a token cut at another point gets past the MAC like this
+            throw ChallengeException.of(ChallengeException.Reason.MISMATCH);
+        }
+
+        long now = System.currentTimeMillis();
+        WebAuthnChallenge entry = new WebAuthnChallenge(username, type, clientChallenge, createdAt,
+                userId.length == 0 ? null : userId,
+                displayName.length == 0 ? null : new String(displayName, StandardCharsets.UTF_8));
+        if (expiryWheel.isExpired(entry, now)) {
+            throw ChallengeException.of(ChallengeException.Reason.EXPIRED);
+        }
+
+        expiryWheel.expire(now, this::evict);
+        if (consumed.putIfAbsent(ByteBuffer.wrap(token), entry) != null) {
+            // Same message the in-memory store gives for a challenge that was already taken
+            throw ChallengeException.of(ChallengeException.Reason.MISSING);
+        }
+        expiryWheel.schedule(entry);
+        int overflow = expiryWheel.size() - maxEntries;
+        if (overflow > 0) {
+            expiryWheel.evictOldest(overflow, now, this::evict);
+        }
+        return entry;
+    }
+
+    @Override
+    public int size() {
+        return consumed.size();
+    }
+
+    private boolean evict(WebAuthnChallenge entry) {
+        return consumed.remove(ByteBuffer.wrap(entry.challenge().getValue()), entry);
+    }
+
+    // Null if the field runs past the payload
+    private static byte[] readField(ByteBuffer payload) {
+        if (!payload.hasRemaining()) {
+            return null;
+        }
+        int length = Byte.toUnsignedInt(payload.get());
+        if (length > payload.remaining()) {
+            return null;
+        }
+        byte[] field = new byte[length];
+        payload.get(field);
+        return field;
+    }
+
+    private byte[] mac(byte[] token, int payloadLength, String username) {
+        try {
+            // Mac isn't thread safe, cloning the initialised prototype is cheaper than a new init
+            Mac mac = (Mac) macPrototype.clone();
+            mac.update(token, 0, payloadLength);
+            if (username == null) {
+                mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, -1));
+            } else {
+                byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+                mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, usernameBytes.length));
+                mac.update(usernameBytes);
+            }
+            return mac.doFinal();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HmacSHA256 cannot be cloned", e);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.KeyedHash;
+import com.example.WebAuthn_Demo_App_2.model.User;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Hash index from username to User, what InMemoryCredentialRepository keeps its users in.
+//
+// A ConcurrentHashMap spends a 32 byte node per entry on top of its table. Here there are no entry objects:
+// each stripe is an open-addressing table of usernames and users, kept at most half full, so a user costs
+// 16-32 bytes of table. Reads never lock and allocate nothing, writes lock one of the stripes. Each stripe
+// grows on its own and is published again as a whole, the same as CredentialIndex, so only one stripe is ever
+// being copied. There are few stripes because registrations are rare next to lookups, and every extra stripe
+// spreads the tables a lookup may touch over more cache lines. Users are never removed.
+// Usernames are chosen by clients, so slots come from a KeyedHash with a key of this index's own rather than
+// String.hashCode, which anyone can make collide into one long probe chain.
+public class UserIndex implements Iterable<User> {
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPE_COUNT = 1 << STRIPE_BITS;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final KeyedHash keyedHash = new KeyedHash();
+    private final Stripe[] stripes;
+
+    public UserIndex() {
+        stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe(keyedHash);
+        }
+    }
+
+    public User get(String username) {
+        int hash = hash(username);
+        return stripe(hash).get(username, hash);
+    }
+
+    // Returns the user already stored under the username, or stores this one and returns null
+    public User putIfAbsent(User user) {
+        int hash = hash(user.getUsername());
+        return stripe(hash).put(user, hash, true);
+    }
+
+    // Returns the user previously stored under the username, or null
+    public User put(User user) {
+        int hash = hash(user.getUsername());
+        return stripe(hash).put(user, hash, false);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size;
+        }
+        return size;
+    }
+
+    // Weakly consistent like a ConcurrentHashMap view: never blocks writers, may miss users added meanwhile
+    @Override
+    public Iterator<User> iterator() {
+        return new UserIterator();
+    }
+
+    private int hash(String username) {
+        return keyedHash.hash(username);
+    }
+
+    // The high bits pick the stripe, the low bits the slot inside it
+    private Stripe stripe(int hash) {
+        return stripes[hash >>> (Integer.SIZE - STRIPE_BITS)];
+    }
+
+    // The table holds the username and the User in neighbouring slots, so a probe that hits reads one cache line
+    private static final class Stripe {
+
+        private final KeyedHash keyedHash;
+        private volatile AtomicReferenceArray<Object> table = new AtomicReferenceArray<>(INITIAL_CAPACITY * 2);
+        private volatile int size; // guarded by this for writes
+
+        Stripe(KeyedHash keyedHash) {
+            this.keyedHash = keyedHash;
+        }
+
+        User get(String username, int hash) {
+            AtomicReferenceArray<Object> current = table;
+            int mask = current.length() - 2;
+            for (int index = (hash << 1) & mask; ; index = (index + 2) & mask) {
+                String key = (String) current.get(index);
+                if (key == null) {
+                    return null;
+                }
+                // Both hash codes are cached in the strings, the bytes are only compared when they match
+                if (key == username || key.hashCode() == username.hashCode() && key.equals(username)) {
+                    return (User) current.get(index + 1);
+                }
+            }
+        }
+
+        synchronized User put(User user, int hash, boolean onlyIfAbsent) {
+            AtomicReferenceArray<Object> current = table;
+            String username = user.getUsername();
+            int mask = current.length() - 2;
+            int index = (hash << 1) & mask;
+            for (Object key; (key = current.get(index)) != null; index = (index + 2) & mask) {
+                if (key.equals(username)) {
+                    User existing = (User) current.get(index + 1);
+                    if (!onlyIfAbsent) {
+                        current.set(index + 1, user);
+                    }
+                    return existing;
+                }
+            }
+            set(current, index, username, user);
+            size++;
+            // Half full, two array slots per entry
+            if (size * 4 >= current.length()) {
+                table = resize(current, keyedHash);
+            }
+            return null;
+        }
+
+        // Twice the size, the old table is left untouched for concurrent readers
+        private static AtomicReferenceArray<Object> resize(AtomicReferenceArray<Object> current, KeyedHash keyedHash) {
+            AtomicReferenceArray<Object> resized = new AtomicReferenceArray<>(current.length() << 1);
+            int mask = resized.length() - 2;
+            for (int i = 0; i < current.length(); i += 2) {
+                String key = (String) current.get(i);
+                if (key == null) {
+                    continue;
+                }
+                int index = (keyedHash.hash(key) << 1) & mask;
+                while (resized.get(index) != null) {
+                    index = (index + 2) & mask;
+                }
+                set(resized, index, key, (User) current.get(i + 1));
+            }
+            return resized;
+        }
+
+        // User before username, so a reader that finds the username also finds its user
+        private static void set(AtomicReferenceArray<Object> table, int index, String username, User user) {
+            table.set(index + 1, user);
+            table.set(index, username);
+        }
+    }
+
+    private final class UserIterator implements Iterator<User> {
+
+        private int stripe = -1;
+        private AtomicReferenceArray<Object> table;
+        private int index;
+        private User next;
+
+        UserIterator() {
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public User next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            User user = next;
+            advance();
+            return user;
+        }
+
+        private void advance() {
+            next = null;
+            while (true) {
+                if (table != null) {
+                    for (; index < table.length(); index += 2) {
+                        if (table.get(index) != null) {
+                            next = (User) table.get(index + 1);
+                            index += 2;
+                            return;
+                        }
+                    }
+                }
+                if (++stripe == STRIPE_COUNT) {
+                    return;
+                }
+                table = stripes[stripe].table;
+                index = 0;
+            }
+        }
+    }
+}
@@ -1,51 +1,151 @@
 package com.example.WebAuthn_Demo_App_2.store;
 
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import com.example.WebAuthn_Demo_App_2.model.StoredCredential;
 import com.example.WebAuthn_Demo_App_2.model.User;
 import com.webauthn4j.credential.CredentialRecord;
 import com.webauthn4j.data.PublicKeyCredentialDescriptor;
 import org.springframework.stereotype.Component;
 
-import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class UserStore {
 
-    private final Map<String, User> usersMap = new ConcurrentHashMap<>();
+    // What a usernameless login with a made up credential gets, shared so those cost no allocation
+    private static final WebAuthnException UNKNOWN_CREDENTIAL = WebAuthnException.rejection("Unknown credential");
+    private static final WebAuthnException USER_HANDLE_MISMATCH =
+            WebAuthnException.rejection("User handle does not match the credential");
+
+    // Where users and their credentials actually live (heap or disk, see webauthn.storage.type)
+    private final CredentialRepository credentialRepository;
 
     // For generating random numbers that are cryptographically strong
-    private final SecureRandom secureRandom;
+    private final SecureRandomPool secureRandomPool;
+
+    // Dropped for a credential whenever it is written again
+    private final PublicKeyCache publicKeyCache;
+
+    // Source of truth for sign counters, the repository only gets written from here
+    private final SignCounterTracker signCounterTracker;
+
+    public UserStore(CredentialRepository credentialRepository,
+                     SecureRandomPool secureRandomPool,
+                     PublicKeyCache publicKeyCache,
+                     SignCounterTracker signCounterTracker) {
+        this.credentialRepository = credentialRepository;
+        this.secureRandomPool = secureRandomPool;
+        this.publicKeyCache = publicKeyCache;
+        this.signCounterTracker = signCounterTracker;
+    }
+
+    // Null if nobody has finished registering this username yet
+    public User find(String username) {
+        return credentialRepository.findUser(username);
+    }
+
+    // User handle for a username that has no user yet, the user only gets created once its registration finishes
+    public byte[] newUserId() {
+        return secureRandomPool.newUserId();
+    }
 
-    public UserStore(SecureRandom secureRandom) {
-        this.secureRandom = secureRandom;
+    // Creates the user a registration was started for, unless it already exists. If another registration
+    // created it in the meantime with a different user handle this one can't be added to it, the authenticator
+    // has stored our handle with the credential.
+    public User createIfAbsent(String username, String displayName, byte[] userId) {
+        User user = credentialRepository.findUser(username);
+        if (user == null) {
+            user = credentialRepository.createUserIfAbsent(new User(username, displayName, userId));
+        }
+        if (!Arrays.equals(user.getUserId(), userId)) {
+            throw new IllegalArgumentException("User was registered by another ceremony, start again: " + username);
+        }
+        return user;
     }
 
-    public User getOrCreate(String username, String displayName) {
-        // Finding by username, creates new user if not present, generates a userId in bytes
-        return usersMap.computeIfAbsent(username, key -> new User(key, displayName, generateUserId()));
+    // Adds a user read from a bulk import with the credentials that are not stored yet, returns how many.
+    // A stored credential is left as it is: it was imported before or registered since, and either way its sign
+    // counter is at least the one in the file. -1 if the username is already taken with another user handle,
+    // the imported passkeys return their own handle on a usernameless login so they can't be given to that user.
+    public int importUser(User imported) {
+        User user = credentialRepository.findUser(imported.getUsername());
+        if (user == null) {
+            user = credentialRepository.createUserIfAbsent(
+                    new User(imported.getUsername(), imported.getDisplayName(), imported.getUserId()));
+        }
+        if (!Arrays.equals(user.getUserId(), imported.getUserId())) {
+            return -1;
+        }
+        int added = 0;
+        for (CredentialRecord credentialRecord : imported.getCredentials()) {
+            byte[] credentialId = credentialRecord.getAttestedCredentialData().getCredentialId();
+            if (credentialRepository.findCredential(credentialId) == null) {
+                credentialRepository.saveCredential(imported.getUsername(), credentialRecord);
+                publicKeyCache.invalidate(credentialId);
+                signCounterTracker.forget(credentialId);
+                added++;
+            }
+        }
+        return added;
     }
 
     // Adding null check to all username conditions
     public User getRequired(String username) {
-        User user = usersMap.get(username);
+        User user = credentialRepository.findUser(username);
         if (user == null) {
             throw new IllegalArgumentException("User not found: " + username);
         }
         return user;
     }
 
+    // Fails with a WebAuthnException when the credential ID is already another user's, see CredentialRepository
     public void addCredential(String username, CredentialRecord credentialRecord) {
-        getRequired(username).addCredential(credentialRecord);
+        getRequired(username);
+        credentialRepository.saveCredential(username, credentialRecord);
+        byte[] credentialId = credentialRecord.getAttestedCredentialData().getCredentialId();
+        publicKeyCache.invalidate(credentialId);
+        signCounterTracker.forget(credentialId);
     }
 
-    public CredentialRecord getCredential(String username, byte[] credentialId) {
-        CredentialRecord record = getRequired(username).getCredentialById(credentialId);
-        if (record == null) {
+    // Resolved straight from the credential ID, the username is only checked against the owner
+    public StoredCredential getCredential(String username, byte[] credentialId) {
+        StoredCredential storedCredential = credentialRepository.findCredential(credentialId);
+        if (storedCredential == null || !storedCredential.user().getUsername().equals(username)) {
             throw new IllegalArgumentException("Unknown credential for user: " + username);
         }
-        return record;
+        return storedCredential;
+    }
+
+    // Usernameless login: the credential ID finds the user through the credential index, and the user handle
+    // the authenticator stored with the credential has to be that user's
+    public StoredCredential getDiscoverableCredential(byte[] credentialId, byte[] userHandle) {
+        StoredCredential storedCredential = credentialRepository.findCredential(credentialId);
+        if (storedCredential == null) {
+            throw UNKNOWN_CREDENTIAL;
+        }
+        if (userHandle == null || !Arrays.equals(storedCredential.user().getUserId(), userHandle)) {
+            throw USER_HANDLE_MISMATCH;
+        }
+        return storedCredential;
+    }
+
+    // The counter an assertion has to beat. The credential ID is passed in because off-heap storage decodes
+    // the attested credential data on every read of it.
+    public long getCounter(byte[] credentialId, CredentialRecord credentialRecord) {
+        return signCounterTracker.current(credentialId, credentialRecord.getCounter());
+    }
+
+    // False if signCount did not go up, the counter is left alone then. counter is what getCounter returned
+    // for this assertion. Safe to call for the same credential from many threads at once.
+    public boolean advanceCounter(String username, CredentialRecord credentialRecord, byte[] credentialId,
+                                  long counter, long signCount) {
+        if (!signCounterTracker.advance(credentialId, counter, signCount)) {
+            return false;
+        }
+        signCounterTracker.persist(credentialId,
+                value -> credentialRepository.updateCounter(username, credentialRecord, value));
+        return true;
     }
 
     public List<PublicKeyCredentialDescriptor> getCredentialDescriptors(String username) {
@@ -56,9 +156,20 @@ public class UserStore {
         return getRequired(username).getCredentials();
     }
 
-    private byte[] generateUserId() {
-        byte[] userId = new byte[32];
-        secureRandom.nextBytes(userId);
-        return userId;
+    // Live view of every user, see CredentialRepository.users
+    public Iterable<User> users() {
+        return credentialRepository.users();
+    }
+
+    public int getUserCount() {
+        return credentialRepository.userCount();
+    }
+
+    public int getCredentialCount() {
+        return credentialRepository.credentialCount();
+    }
+
+    public long getCounterRegressionCount() {
+        return signCounterTracker.getRegressionCount();
     }
 }
@@ -0,0 +1,99 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.extension.authenticator.AuthenticationExtensionsAuthenticatorOutputs;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientOutputs;
+import com.webauthn4j.data.extension.client.RegistrationExtensionClientOutput;
+
+import java.util.Set;
+
+// What webAuthnManager.verify gets to see of a stored credential: the attested credential data from
+// PublicKeyCache and the counter from SignCounterTracker. The counter webauthn4j writes back stays on this
+// object, the stored one is only moved forward through UserStore.advanceCounter. Flag updates go to the stored record.
+public class VerificationRecord implements CredentialRecord {
+
+    private final CredentialRecord delegate;
+    private final AttestedCredentialData attestedCredentialData;
+    private long counter;
+
+    public VerificationRecord(CredentialRecord delegate, AttestedCredentialData attestedCredentialData, long counter) {
+        this.delegate = delegate;
+        this.attestedCredentialData = attestedCredentialData;
+        this.counter = counter;
+    }
+
+    @Override
+    public AttestedCredentialData getAttestedCredentialData() {
+        return attestedCredentialData;
+    }
+
+    @Override
+    public CollectedClientData getClientData() {
+        return delegate.getClientData();
+    }
+
+    @Override
+    public AttestationStatement getAttestationStatement() {
+        return delegate.getAttestationStatement();
+    }
+
+    @Override
+    public long getCounter() {
+        return counter;
+    }
+
+    @Override
+    public void setCounter(long value) {
+        counter = value;
+    }
+
+    @Override
+    public AuthenticationExtensionsAuthenticatorOutputs<RegistrationExtensionAuthenticatorOutput> getAuthenticatorExtensions() {
+        return delegate.getAuthenticatorExtensions();
+    }
+
+    @Override
+    public AuthenticationExtensionsClientOutputs<RegistrationExtensionClientOutput> getClientExtensions() {
+        return delegate.getClientExtensions();
+    }
+
+    @Override
+    public Set<AuthenticatorTransport> getTransports() {
+        return delegate.getTransports();
+    }
+
+    @Override
+    public Boolean isUvInitialized() {
+        return delegate.isUvInitialized();
+    }
+
+    @Override
+    public void setUvInitialized(boolean value) {
+        delegate.setUvInitialized(value);
+    }
+
+    @Override
+    public Boolean isBackupEligible() {
+        return delegate.isBackupEligible();
+    }
+
+    @Override
+    public void setBackupEligible(boolean value) {
+        delegate.setBackupEligible(value);
+    }
+
+    @Override
+    public Boolean isBackedUp() {
+        return delegate.isBackedUp();
+    }
+
+    @Override
+    public void setBackedUp(boolean value) {
+        delegate.setBackedUp(value);
+    }
+}
@@ -4,6 +4,9 @@ const displayNameEl = document.getElementById("displayName");
 const registerBtn = document.getElementById("registerBtn");
 const authBtn = document.getElementById("authBtn");
 
+// Pending passkey autofill request, it has to be aborted before any other WebAuthn call
+let conditionalAbort = null;
+
 function log(message) {
     logEl.textContent = message;
 }
@@ -127,18 +130,23 @@ async function registerPasskey() {
     log(`Registration complete. CredentialId: ${result.credentialId}`);
 }
 
-// This will be invoked when Authenticate button is clicked
+function stopConditionalLogin() {
+    if (conditionalAbort) {
+        conditionalAbort.abort();
+        conditionalAbort = null;
+    }
+}
+
+// This will be invoked when Authenticate button is clicked.
+// Without a username it is a usernameless login, the server finds the user from the passkey.
 async function authenticate() {
     if (!window.PublicKeyCredential) {
         log("WebAuthn is not supported in this browser.");
         return;
     }
+    stopConditionalLogin();
 
-    const username = usernameEl.value.trim();
-    if (!username) {
-        log("Enter a username first.");
-        return;
-    }
+    const username = usernameEl.value.trim() || null;
 
     log("Requesting authentication options (Invoking the authenticate options controller).");
     const options = await postJson("/webauthn/authenticate/options", { username });
@@ -151,17 +159,41 @@ async function authenticate() {
         log("No assertion returned.");
         return;
     }
+    await finishAuthentication(username, assertion);
+}
 
+async function finishAuthentication(username, assertion) {
     log("Sending authentication response (Invoking the authenticate finish controller).");
     const result = await postJson("/webauthn/authenticate/finish", {
         username,
         credential: assertion.toJSON()
     });
 
-    log(`Authentication complete. CredentialId: ${result.credentialId}`);
+    log(`Authentication complete. User: ${result.username}, CredentialId: ${result.credentialId}`);
+}
+
+// Passkey autofill: the browser offers the user's passkeys in the username field's suggestions,
+// picking one signs in with a single options and finish call and no username typed
+async function startConditionalLogin() {
+    if (!window.PublicKeyCredential || !PublicKeyCredential.isConditionalMediationAvailable
+        || !(await PublicKeyCredential.isConditionalMediationAvailable())) {
+        return;
+    }
+    const options = await postJson("/webauthn/authenticate/options", {});
+    conditionalAbort = new AbortController();
+    const assertion = await navigator.credentials.get({
+        publicKey: normalizeRequestOptions(options),
+        mediation: "conditional",
+        signal: conditionalAbort.signal
+    });
+    conditionalAbort = null;
+    if (assertion) {
+        await finishAuthentication(null, assertion);
+    }
 }
 
 registerBtn.addEventListener("click", () => {
+    stopConditionalLogin();
     registerPasskey().catch((error) => {
         log(`Registration failed: ${error.message}`);
     });
@@ -172,3 +204,10 @@ authBtn.addEventListener("click", () => {
         log(`Authentication failed: ${error.message}`);
     });
 });
+
+startConditionalLogin().catch((error) => {
+    // Aborted because a button was clicked, or the browser refused, the buttons still work
+    if (error.name !== "AbortError") {
+        log(`Passkey autofill unavailable: ${error.message}`);
+    }
+});
@@ -0,0 +1,41 @@
+package com.example.WebAuthn_Demo_App_2.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeyedHashTest {
+
+    // The key 00 01 .. 0f of the SipHash paper's test vectors
+    private final KeyedHash hash = new KeyedHash(0x0706050403020100L, 0x0f0e0d0c0b0a0908L);
+
+    @Test
+    void matchesSipHash13() {
+        byte[] bytes = new byte[21];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        assertThat(hash.hash(new byte[0])).isEqualTo(-1364998780);
+        assertThat(hash.hash("abc".getBytes(StandardCharsets.US_ASCII))).isEqualTo(-1068539389);
+        assertThat(hash.hash(bytes)).isEqualTo(-1831382086);
+    }
+
+    @Test
+    void hashesAStringAsItsUtf16Bytes() {
+        String username = "zaliceéx";
+
+        assertThat(hash.hash(username)).isEqualTo(1184194472)
+                .isEqualTo(hash.hash(username.getBytes(StandardCharsets.UTF_16LE)));
+    }
+
+    @Test
+    void separatesStringsWithTheSameHashCode() {
+        assertThat("Aa".hashCode()).isEqualTo("BB".hashCode());
+
+        assertThat(hash.hash("Aa")).isNotEqualTo(hash.hash("BB"));
+        assertThat(new KeyedHash().hash("Aa")).isNotEqualTo(hash.hash("Aa"));
+    }
+}
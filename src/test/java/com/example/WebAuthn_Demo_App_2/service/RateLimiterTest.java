@@ -0,0 +1,120 @@
+package com.example.WebAuthn_Demo_App_2.service;
+
+import com.example.WebAuthn_Demo_App_2.config.WebAuthnProperties;
+import com.example.WebAuthn_Demo_App_2.exception.RateLimitException;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNoException;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// One request per minute refills, so nothing refills while a test runs
+class RateLimiterTest {
+
+    private static final int USER_BURST = 3;
+    private static final int IP_BURST = 5;
+
+    @Test
+    void letsABurstThroughThenRefusesUntilATokenRefills() {
+        RateLimiter rateLimiter = rateLimiter(100);
+        for (int i = 0; i < USER_BURST; i++) {
+            rateLimiter.check("alice", "10.0.0." + i);
+        }
+
+        assertThatThrownBy(() -> rateLimiter.check("alice", "10.0.0.100"))
+                .isInstanceOfSatisfying(RateLimitException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isBetween(1L, 60L));
+        assertThat(rateLimiter.getRejectedCount(RateLimiter.Scope.USER)).isEqualTo(1);
+        assertThat(rateLimiter.getRejectedCount(RateLimiter.Scope.IP)).isZero();
+    }
+
+    @Test
+    void limitsEachUsernameOnItsOwn() {
+        RateLimiter rateLimiter = rateLimiter(100);
+        for (int i = 0; i < USER_BURST; i++) {
+            rateLimiter.check("alice", "10.0.0." + i);
+        }
+
+        assertThatNoException().isThrownBy(() -> rateLimiter.check("bob", "10.0.0.100"));
+        assertThat(rateLimiter.size(RateLimiter.Scope.USER)).isEqualTo(2);
+    }
+
+    @Test
+    void limitsAClientIpAcrossUsernames() {
+        RateLimiter rateLimiter = rateLimiter(100);
+        for (int i = 0; i < IP_BURST; i++) {
+            rateLimiter.check("user" + i, "10.0.0.1");
+        }
+
+        assertThatThrownBy(() -> rateLimiter.check("someone-else", "10.0.0.1")).isInstanceOf(RateLimitException.class);
+        assertThat(rateLimiter.getRejectedCount(RateLimiter.Scope.IP)).isEqualTo(1);
+    }
+
+    @Test
+    void countsAUsernamelessLoginOnlyAgainstItsIp() {
+        RateLimiter rateLimiter = rateLimiter(100);
+        for (int i = 0; i < IP_BURST; i++) {
+            rateLimiter.check(null, "10.0.0.1");
+        }
+
+        assertThat(rateLimiter.size(RateLimiter.Scope.USER)).isZero();
+        assertThatThrownBy(() -> rateLimiter.check(null, "10.0.0.1")).isInstanceOf(RateLimitException.class);
+    }
+
+    @Test
+    void makesRoomForANewClientByDroppingTheOldestBucket() {
+        RateLimiter rateLimiter = rateLimiter(2);
+        for (int i = 0; i < USER_BURST; i++) {
+            rateLimiter.check("alice", "10.0.0.1");
+        }
+        rateLimiter.check("bob", "10.0.0.2");
+
+        // Neither bucket is full again yet, alice's is the oldest
+        assertThatNoException().isThrownBy(() -> rateLimiter.check("carol", "10.0.0.3"));
+        assertThat(rateLimiter.size(RateLimiter.Scope.USER)).isEqualTo(2);
+        assertThat(rateLimiter.size(RateLimiter.Scope.IP)).isEqualTo(2);
+        // So she starts over with a new one
+        assertThatNoException().isThrownBy(() -> rateLimiter.check("alice", "10.0.0.4"));
+        assertThat(rateLimiter.getRejectedCount(RateLimiter.Scope.USER)).isZero();
+    }
+
+    @Test
+    void keepsTheNumberOfBucketsBoundedUnderASprayOfNewClients() {
+        RateLimiter rateLimiter = rateLimiter(100);
+
+        for (int i = 0; i < 10_000; i++) {
+            rateLimiter.check("user" + i, "10.0." + (i >> 8) + "." + (i & 0xFF));
+        }
+
+        assertThat(rateLimiter.size(RateLimiter.Scope.USER)).isLessThanOrEqualTo(100);
+        assertThat(rateLimiter.size(RateLimiter.Scope.IP)).isLessThanOrEqualTo(100);
+        assertThat(rateLimiter.getRejectedCount(RateLimiter.Scope.USER)).isZero();
+    }
+
+    @Test
+    void doesNothingWhenDisabled() {
+        WebAuthnProperties properties = properties(100);
+        properties.getRateLimit().setEnabled(false);
+        RateLimiter rateLimiter = new RateLimiter(properties);
+
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.check("alice", "10.0.0.1");
+        }
+        assertThat(rateLimiter.size(RateLimiter.Scope.USER)).isZero();
+    }
+
+    private static RateLimiter rateLimiter(int maxEntries) {
+        return new RateLimiter(properties(maxEntries));
+    }
+
+    private static WebAuthnProperties properties(int maxEntries) {
+        WebAuthnProperties properties = new WebAuthnProperties();
+        WebAuthnProperties.RateLimit rateLimit = properties.getRateLimit();
+        rateLimit.setUserRequestsPerMinute(1);
+        rateLimit.setUserBurst(USER_BURST);
+        rateLimit.setIpRequestsPerMinute(1);
+        rateLimit.setIpBurst(IP_BURST);
+        rateLimit.setMaxEntries(maxEntries);
+        return properties;
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AttestationArchiveTest {
+
+    private static final String RP_ID = "example.com";
+    private static final String ORIGIN = "https://example.com";
+
+    @TempDir
+    Path directory;
+
+    private final Random random = new Random(42);
+
+    @Test
+    void readsBackEveryAppendedEntryInOrder() {
+        Path file = directory.resolve("attestations.bin");
+        List<AttestationArchive.Entry> appended = new ArrayList<>();
+        try (AttestationArchive archive = new AttestationArchive(file, RP_ID, ORIGIN)) {
+            // More than one block's worth, so several deflated blocks share the file
+            for (int i = 0; i < 200; i++) {
+                appended.add(append(archive, "user" + i, 512));
+            }
+        }
+
+        List<AttestationArchive.Entry> read = readAll(file);
+
+        assertThat(read).hasSize(appended.size());
+        for (int i = 0; i < appended.size(); i++) {
+            assertSameEntry(read.get(i), appended.get(i));
+        }
+    }
+
+    @Test
+    void inflatesEntriesLargerThanOneInflateChunk() {
+        Path file = directory.resolve("attestations.bin");
+        AttestationArchive.Entry appended;
+        try (AttestationArchive archive = new AttestationArchive(file, RP_ID, ORIGIN)) {
+            // A certificate chain can easily be several KB
+            appended = append(archive, "user", 64 * 1024);
+        }
+
+        List<AttestationArchive.Entry> read = readAll(file);
+
+        assertThat(read).hasSize(1);
+        assertSameEntry(read.getFirst(), appended);
+    }
+
+    @Test
+    void keepsEntriesAcrossReopening() {
+        Path file = directory.resolve("attestations.bin");
+        List<AttestationArchive.Entry> appended = new ArrayList<>();
+        try (AttestationArchive archive = new AttestationArchive(file, RP_ID, ORIGIN)) {
+            appended.add(append(archive, "before", 256));
+        }
+        // The dictionary comes from the file header, not from the RP the archive is opened for now
+        try (AttestationArchive archive = new AttestationArchive(file, "other.example", "https://other.example")) {
+            appended.add(append(archive, "after", 256));
+        }
+
+        List<AttestationArchive.Entry> read = readAll(file);
+
+        assertThat(read).hasSize(2);
+        assertSameEntry(read.get(0), appended.get(0));
+        assertSameEntry(read.get(1), appended.get(1));
+    }
+
+    @Test
+    void cutsOffATornBlockWhenOpenedAgain() throws IOException {
+        Path file = directory.resolve("attestations.bin");
+        AttestationArchive.Entry appended;
+        try (AttestationArchive archive = new AttestationArchive(file, RP_ID, ORIGIN)) {
+            appended = append(archive, "user", 256);
+        }
+        long intactSize = Files.size(file);
+        // Header of a 1000 byte block with only part of the block behind it, as a crash mid-write leaves it
+        Files.write(file, new byte[]{0, 0, 3, (byte) 0xE8, 1, 2, 3, 4, 5, 6}, StandardOpenOption.APPEND);
+
+        new AttestationArchive(file, RP_ID, ORIGIN).close();
+
+        assertThat(Files.size(file)).isEqualTo(intactSize);
+        List<AttestationArchive.Entry> read = readAll(file);
+        assertThat(read).hasSize(1);
+        assertSameEntry(read.getFirst(), appended);
+    }
+
+    @Test
+    void rejectsACorruptBlock() throws IOException {
+        Path file = directory.resolve("attestations.bin");
+        try (AttestationArchive archive = new AttestationArchive(file, RP_ID, ORIGIN)) {
+            append(archive, "user", 256);
+        }
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> readAll(file))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("corrupt");
+    }
+
+    @Test
+    void rejectsAFileThatIsNotAnArchive() throws IOException {
+        Path file = directory.resolve("attestations.bin");
+        Files.write(file, "not an archive".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> readAll(file)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new AttestationArchive(file, RP_ID, ORIGIN)).isInstanceOf(IllegalStateException.class);
+    }
+
+    // Random bytes like a real attestation's keys and signatures, with the origin in the client data
+    private AttestationArchive.Entry append(AttestationArchive archive, String username, int attestationLength) {
+        byte[] credentialId = new byte[32];
+        random.nextBytes(credentialId);
+        byte[] attestationObject = new byte[attestationLength];
+        random.nextBytes(attestationObject);
+        byte[] clientDataJson = ("{\"type\":\"webauthn.create\",\"challenge\":\"" + random.nextLong()
+                + "\",\"origin\":\"" + ORIGIN + "\",\"crossOrigin\":false}").getBytes(StandardCharsets.UTF_8);
+        archive.append(username, credentialId, attestationObject, clientDataJson);
+        return new AttestationArchive.Entry(0, username, credentialId, attestationObject, clientDataJson);
+    }
+
+    private static List<AttestationArchive.Entry> readAll(Path file) {
+        List<AttestationArchive.Entry> entries = new ArrayList<>();
+        AttestationArchive.read(file, entries::add);
+        return entries;
+    }
+
+    // The time is whatever the clock said when the entry was queued
+    private static void assertSameEntry(AttestationArchive.Entry read, AttestationArchive.Entry appended) {
+        assertThat(read.registeredAt()).isPositive();
+        assertThat(read.username()).isEqualTo(appended.username());
+        assertThat(read.credentialId()).isEqualTo(appended.credentialId());
+        assertThat(read.attestationObject()).isEqualTo(appended.attestationObject());
+        assertThat(read.clientDataJson()).isEqualTo(appended.clientDataJson());
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.ChallengeType;
+import com.example.WebAuthn_Demo_App_2.model.WebAuthnChallenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChallengeExpiryWheelTest {
+
+    // 100ms ticks
+    private static final long TIMEOUT_MS = 3200;
+
+    private final List<WebAuthnChallenge> evicted = new ArrayList<>();
+
+    @Test
+    void expiresAnEntryOnlyOnceItIsPastTheTimeout() {
+        ChallengeExpiryWheel wheel = new ChallengeExpiryWheel(TIMEOUT_MS, 0);
+        WebAuthnChallenge first = challenge(0);
+        WebAuthnChallenge second = challenge(1000);
+        wheel.schedule(first);
+        wheel.schedule(second);
+
+        wheel.expire(TIMEOUT_MS, this::evict);
+        assertThat(evicted).isEmpty();
+        assertThat(wheel.size()).isEqualTo(2);
+
+        // The first entry's tick is over and it is older than the timeout
+        wheel.expire(TIMEOUT_MS + 100, this::evict);
+        assertThat(evicted).containsExactly(first);
+        assertThat(wheel.size()).isEqualTo(1);
+
+        wheel.expire(1000 + TIMEOUT_MS + 100, this::evict);
+        assertThat(evicted).containsExactly(first, second);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void putsBackLiveEntriesOfABucketThatIsDrained() {
+        ChallengeExpiryWheel wheel = new ChallengeExpiryWheel(TIMEOUT_MS, 0);
+        WebAuthnChallenge old = challenge(0);
+        // 64 ticks later, one revolution, so it lands in the same bucket
+        WebAuthnChallenge live = challenge(6400);
+        wheel.schedule(old);
+        wheel.schedule(live);
+
+        wheel.expire(TIMEOUT_MS + 100, this::evict);
+        assertThat(evicted).containsExactly(old);
+        assertThat(wheel.size()).isEqualTo(1);
+
+        wheel.expire(6400 + TIMEOUT_MS + 100, this::evict);
+        assertThat(evicted).containsExactly(old, live);
+    }
+
+    @Test
+    void expiresEverythingAfterMoreThanOneRevolutionIdle() {
+        ChallengeExpiryWheel wheel = new ChallengeExpiryWheel(TIMEOUT_MS, 0);
+        List<WebAuthnChallenge> scheduled = new ArrayList<>();
+        for (long createdAt = 0; createdAt < TIMEOUT_MS; createdAt += 50) {
+            WebAuthnChallenge challenge = challenge(createdAt);
+            scheduled.add(challenge);
+            wheel.schedule(challenge);
+        }
+
+        wheel.expire(1_000_000, this::evict);
+
+        assertThat(evicted).containsExactlyInAnyOrderElementsOf(scheduled);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void evictsTheOldestEntriesFirstWhenOverTheCap() {
+        ChallengeExpiryWheel wheel = new ChallengeExpiryWheel(TIMEOUT_MS, 0);
+        WebAuthnChallenge oldest = challenge(0);
+        WebAuthnChallenge middle = challenge(500);
+        WebAuthnChallenge newest = challenge(1000);
+        wheel.schedule(newest);
+        wheel.schedule(oldest);
+        wheel.schedule(middle);
+
+        // None of them has expired, evictOldest removes them anyway
+        wheel.evictOldest(2, 1000, this::evict);
+
+        assertThat(evicted).containsExactly(oldest, middle);
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    private boolean evict(WebAuthnChallenge challenge) {
+        return evicted.add(challenge);
+    }
+
+    private static WebAuthnChallenge challenge(long createdAt) {
+        return new WebAuthnChallenge("user", ChallengeType.AUTHENTICATION, new DefaultChallenge(), createdAt,
+                null, null);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CredentialRecordCodecTest {
+
+    private final CredentialRecordCodec codec = new CredentialRecordCodec(TestCredentials.OBJECT_CONVERTER);
+    private final Random random = new Random(42);
+
+    @Test
+    void roundTripsARegisteredCredential() {
+        CredentialRecordImpl credential = TestCredentials.registeredCredential(random, 17);
+
+        CredentialRecord decoded = codec.decode(codec.encode(credential));
+
+        TestCredentials.assertSameRecord(decoded, credential);
+        // NoneAttestationStatement has no equals, the format is what picks the type on decoding
+        assertThat(decoded.getAttestationStatement()).isInstanceOf(NoneAttestationStatement.class);
+        assertThat(decoded.getClientData()).isEqualTo(credential.getClientData());
+    }
+
+    @Test
+    void keepsMissingPartsMissing() {
+        CredentialRecordImpl credential = new CredentialRecordImpl(null, null, null, null, 0,
+                TestCredentials.credential(random, 0).getAttestedCredentialData(), null, null, null, null);
+
+        CredentialRecord decoded = codec.decode(codec.encode(credential));
+
+        assertThat(decoded.isUvInitialized()).isNull();
+        assertThat(decoded.isBackupEligible()).isNull();
+        assertThat(decoded.isBackedUp()).isNull();
+        assertThat(decoded.getAttestationStatement()).isNull();
+        assertThat(decoded.getClientData()).isNull();
+        assertThat(decoded.getTransports()).isNull();
+        assertThat(TestCredentials.credentialId(decoded)).isEqualTo(TestCredentials.credentialId(credential));
+    }
+
+    @Test
+    void decodesAttestedCredentialDataLikeWebAuthn4j() {
+        CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+
+        byte[] encoded = codec.encodeAttestedCredentialData(credential.getAttestedCredentialData());
+
+        assertThat(codec.decodeAttestedCredentialData(encoded)).isEqualTo(credential.getAttestedCredentialData());
+    }
+
+    @Test
+    void rejectsAnUnknownVersion() {
+        byte[] encoded = codec.encode(TestCredentials.credential(random, 0));
+        encoded[0] = 99;
+
+        assertThatThrownBy(() -> codec.decode(encoded))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("version");
+    }
+}
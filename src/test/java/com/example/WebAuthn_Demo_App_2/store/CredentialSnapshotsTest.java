@@ -0,0 +1,102 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CredentialSnapshotsTest {
+
+    private static final long NO_SCHEDULED_SNAPSHOT = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    private final CredentialRecordCodec codec = new CredentialRecordCodec(TestCredentials.OBJECT_CONVERTER);
+    private final Random random = new Random(42);
+
+    @Test
+    void loadsBackEveryUserCredentialAndCounterOnStartup() {
+        Path file = directory.resolve("credentials.snapshot");
+        InMemoryCredentialRepository repository = new InMemoryCredentialRepository();
+        CredentialSnapshots snapshots = new CredentialSnapshots(file, NO_SCHEDULED_SNAPSHOT, repository, codec);
+        assertThat(snapshots.getLoadedUsers()).isZero();
+        // More users than fit in one block
+        List<CredentialRecordImpl> credentials = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            repository.createUserIfAbsent(new User("user" + i, "User " + i, new byte[]{(byte) i, 1}));
+            CredentialRecordImpl credential = i % 2 == 0
+                    ? TestCredentials.registeredCredential(random, 0)
+                    : TestCredentials.credential(random, 0);
+            repository.saveCredential("user" + i, credential);
+            repository.updateCounter("user" + i, credential, i);
+            credentials.add(credential);
+        }
+        // Taken on shutdown
+        snapshots.close();
+
+        InMemoryCredentialRepository restored = new InMemoryCredentialRepository();
+        CredentialSnapshots loaded = new CredentialSnapshots(file, NO_SCHEDULED_SNAPSHOT, restored, codec);
+        loaded.close();
+
+        assertThat(loaded.getLoadedUsers()).isEqualTo(300);
+        assertThat(restored.userCount()).isEqualTo(300);
+        assertThat(restored.credentialCount()).isEqualTo(300);
+        for (int i = 0; i < 300; i++) {
+            User user = restored.findUser("user" + i);
+            assertThat(user.getDisplayName()).isEqualTo("User " + i);
+            assertThat(user.getUserId()).isEqualTo(new byte[]{(byte) i, 1});
+            TestCredentials.assertSameRecord(user.getCredentials().getFirst(), credentials.get(i));
+            assertThat(restored.findCredential(TestCredentials.credentialId(credentials.get(i))).user())
+                    .isSameAs(user);
+        }
+        assertThat(Files.exists(file.resolveSibling(file.getFileName() + ".tmp"))).isFalse();
+    }
+
+    @Test
+    void replacesTheSnapshotAsAWhole() throws IOException {
+        Path file = directory.resolve("credentials.snapshot");
+        InMemoryCredentialRepository repository = new InMemoryCredentialRepository();
+        CredentialSnapshots snapshots = new CredentialSnapshots(file, NO_SCHEDULED_SNAPSHOT, repository, codec);
+        repository.createUserIfAbsent(new User("alice", "Alice", new byte[]{1}));
+        snapshots.snapshot();
+        long firstSize = Files.size(file);
+
+        repository.createUserIfAbsent(new User("bob", "Bob", new byte[]{2}));
+        snapshots.snapshot();
+        snapshots.close();
+
+        assertThat(Files.size(file)).isGreaterThan(firstSize);
+        assertThat(snapshots.getWriteCount()).isEqualTo(3);
+        assertThat(snapshots.getLastSizeBytes()).isEqualTo(Files.size(file));
+    }
+
+    @Test
+    void refusesToStartFromASnapshotThatWasCutShort() throws IOException {
+        Path file = directory.resolve("credentials.snapshot");
+        InMemoryCredentialRepository repository = new InMemoryCredentialRepository();
+        CredentialSnapshots snapshots = new CredentialSnapshots(file, NO_SCHEDULED_SNAPSHOT, repository, codec);
+        repository.createUserIfAbsent(new User("alice", "Alice", new byte[]{1}));
+        repository.saveCredential("alice", TestCredentials.credential(random, 0));
+        snapshots.close();
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 10));
+
+        assertThatThrownBy(() -> new CredentialSnapshots(file, NO_SCHEDULED_SNAPSHOT,
+                new InMemoryCredentialRepository(), codec))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasMessageContaining(file.toString());
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CredentialTransferTest {
+
+    // Block 0 starts after [magic][version], its payload after [length][CRC32C]
+    private static final int FIRST_PAYLOAD = 5 + 8;
+
+    private final CredentialTransfer transfer =
+            new CredentialTransfer(new CredentialRecordCodec(TestCredentials.OBJECT_CONVERTER));
+    private final Random random = new Random(42);
+
+    @Test
+    void readsBackEveryUserAndCredential() throws IOException {
+        // Two full blocks and a partial one
+        List<User> users = users(600);
+
+        byte[] bytes = write(users);
+        Map<String, User> read = new ConcurrentHashMap<>();
+        CredentialTransfer.Result result = transfer.read(new ByteArrayInputStream(bytes), 0,
+                user -> read.put(user.getUsername(), user), null);
+
+        assertThat(result).isEqualTo(new CredentialTransfer.Result(3, 600, 900));
+        assertThat(read).hasSize(600);
+        for (User user : users) {
+            User readUser = read.get(user.getUsername());
+            assertThat(readUser.getDisplayName()).isEqualTo(user.getDisplayName());
+            assertThat(readUser.getUserId()).isEqualTo(user.getUserId());
+            assertThat(readUser.getCredentials()).hasSameSizeAs(user.getCredentials());
+            for (int i = 0; i < user.getCredentials().size(); i++) {
+                TestCredentials.assertSameRecord(readUser.getCredentials().get(i), user.getCredentials().get(i));
+            }
+        }
+    }
+
+    @Test
+    void keepsANullDisplayName() throws IOException {
+        byte[] bytes = write(List.of(new User("alice", null, new byte[]{1})));
+        List<User> read = new ArrayList<>();
+
+        transfer.read(new ByteArrayInputStream(bytes), 0, read::add, null);
+
+        assertThat(read).singleElement().satisfies(user -> assertThat(user.getDisplayName()).isNull());
+    }
+
+    @Test
+    void reportsCompletedBlocksInOrder() throws IOException {
+        byte[] bytes = write(users(2000));
+        List<Long> completed = new ArrayList<>();
+
+        transfer.read(new ByteArrayInputStream(bytes), 0, user -> {
+        }, completed::add);
+
+        assertThat(completed).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L);
+    }
+
+    @Test
+    void resumesAfterTheSkippedBlocks() throws IOException {
+        List<User> users = users(600);
+        byte[] bytes = write(users);
+        Map<String, User> read = new ConcurrentHashMap<>();
+        List<Long> completed = new ArrayList<>();
+
+        CredentialTransfer.Result result = transfer.read(new ByteArrayInputStream(bytes), 2,
+                user -> read.put(user.getUsername(), user), completed::add);
+
+        assertThat(result).isEqualTo(new CredentialTransfer.Result(3, 88, 132));
+        assertThat(read.keySet()).containsExactlyInAnyOrderElementsOf(
+                users.subList(512, 600).stream().map(User::getUsername).toList());
+        assertThat(completed).containsExactly(3L);
+    }
+
+    @Test
+    void rejectsACorruptBlock() throws IOException {
+        byte[] bytes = write(users(10));
+        bytes[FIRST_PAYLOAD + 10] ^= 1;
+
+        assertThatThrownBy(() -> transfer.read(new ByteArrayInputStream(bytes), 0, user -> {
+        }, null)).isInstanceOf(IllegalStateException.class).hasMessage("Corrupt block 0");
+    }
+
+    @Test
+    void rejectsAFileThatIsNotAnExport() {
+        byte[] bytes = new byte[64];
+        random.nextBytes(bytes);
+
+        assertThatThrownBy(() -> transfer.read(new ByteArrayInputStream(bytes), 0, user -> {
+        }, null)).isInstanceOf(IllegalStateException.class).hasMessage("Not a credential export");
+    }
+
+    @Test
+    void failsOnAStreamThatWasCutShort() throws IOException {
+        byte[] bytes = write(users(10));
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 20);
+
+        assertThatThrownBy(() -> transfer.read(new ByteArrayInputStream(truncated), 0, user -> {
+        }, null)).isInstanceOf(IOException.class);
+    }
+
+    private byte[] write(List<User> users) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transfer.write(users, out);
+        return out.toByteArray();
+    }
+
+    // Every other user has two credentials, one with an attestation
+    private List<User> users(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            User user = new User("user" + i, "User " + i, new byte[]{(byte) i, (byte) (i >> 8)});
+            user.addCredential(TestCredentials.credential(random, i));
+            if (i % 2 == 0) {
+                user.addCredential(TestCredentials.registeredCredential(random, 0));
+            }
+            users.add(user);
+        }
+        return users;
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import com.example.WebAuthn_Demo_App_2.model.StoredCredential;
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedFileCredentialRepositoryTest {
+
+    // Small enough for a few hundred entries to need several segments
+    private static final int SEGMENT_SIZE = 64 * 1024;
+    private static final long NO_SCHEDULED_COMPACTION = 3_600_000;
+
+    @TempDir
+    Path directory;
+
+    private final CredentialRecordCodec codec = new CredentialRecordCodec(TestCredentials.OBJECT_CONVERTER);
+    private final Random random = new Random(42);
+    private final List<MappedFileCredentialRepository> opened = new ArrayList<>();
+
+    @AfterEach
+    void closeRepositories() {
+        opened.forEach(MappedFileCredentialRepository::close);
+    }
+
+    @Test
+    void findsUsersCredentialsAndCountersAfterReopening() {
+        MappedFileCredentialRepository repository = open();
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl first = TestCredentials.registeredCredential(random, 0);
+        CredentialRecordImpl second = TestCredentials.credential(random, 3);
+        repository.saveCredential("alice", first);
+        repository.saveCredential("alice", second);
+        repository.updateCounter("alice", second, 9);
+        repository.close();
+
+        MappedFileCredentialRepository reopened = open();
+
+        User alice = reopened.findUser("alice");
+        assertThat(alice.getUserId()).isEqualTo(user("alice").getUserId());
+        assertThat(alice.getCredentials()).hasSize(2);
+        TestCredentials.assertSameRecord(alice.getCredentialById(TestCredentials.credentialId(first)), first);
+        StoredCredential stored = reopened.findCredential(TestCredentials.credentialId(second));
+        assertThat(stored.user().getUsername()).isEqualTo("alice");
+        assertThat(stored.credentialRecord().getCounter()).isEqualTo(9);
+        assertThat(reopened.userCount()).isEqualTo(1);
+        assertThat(reopened.credentialCount()).isEqualTo(2);
+    }
+
+    @Test
+    void replacesTheUsersRecordWithTheSameCredentialId() {
+        MappedFileCredentialRepository repository = open();
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 1);
+        repository.saveCredential("alice", credential);
+        credential.setCounter(5);
+        repository.saveCredential("alice", credential);
+
+        assertThat(repository.credentialCount()).isEqualTo(1);
+        assertThat(repository.findUser("alice").getCredentials()).hasSize(1);
+        assertThat(repository.findCredential(TestCredentials.credentialId(credential)).credentialRecord().getCounter())
+                .isEqualTo(5);
+    }
+
+    @Test
+    void rejectsACredentialIdRegisteredToAnotherUser() {
+        MappedFileCredentialRepository repository = open();
+        repository.createUserIfAbsent(user("alice"));
+        repository.createUserIfAbsent(user("mallory"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+        repository.saveCredential("alice", credential);
+
+        assertThatThrownBy(() -> repository.saveCredential("mallory", credential))
+                .isInstanceOf(WebAuthnException.class);
+        assertThat(repository.findCredential(TestCredentials.credentialId(credential)).user().getUsername())
+                .isEqualTo("alice");
+        assertThat(repository.findUser("mallory").getCredentials()).isEmpty();
+    }
+
+    @Test
+    void compactionKeepsEveryLiveEntryAndTheLatestCounters() throws IOException {
+        MappedFileCredentialRepository repository = open();
+        List<CredentialRecordImpl> credentials = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            repository.createUserIfAbsent(user("user" + i));
+            CredentialRecordImpl credential = TestCredentials.registeredCredential(random, 0);
+            credentials.add(credential);
+            // Every save after the first leaves the previous entry behind as garbage
+            for (int save = 0; save < 5; save++) {
+                repository.saveCredential("user" + i, credential);
+            }
+            repository.updateCounter("user" + i, credential, i + 1);
+        }
+        long segmentsBefore = segmentCount();
+
+        repository.compact();
+
+        assertThat(segmentCount()).isLessThan(segmentsBefore);
+        assertThat(repository.credentialCount()).isEqualTo(50);
+        repository.close();
+        MappedFileCredentialRepository reopened = open();
+        for (int i = 0; i < 50; i++) {
+            CredentialRecord found = reopened.findUser("user" + i).getCredentials().getFirst();
+            TestCredentials.assertSameRecord(found, credentials.get(i));
+            assertThat(found.getCounter()).isEqualTo(i + 1);
+        }
+        assertThat(reopened.credentialCount()).isEqualTo(50);
+    }
+
+    @Test
+    void dropsCompactedSegmentsRightAway() throws IOException {
+        MappedFileCredentialRepository repository = open();
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+        for (int round = 0; round < 20; round++) {
+            repository.saveCredential("alice", credential);
+            repository.compact();
+        }
+
+        assertThat(segmentCount()).isEqualTo(1);
+        assertThat(repository.findUser("alice").getCredentials()).hasSize(1);
+    }
+
+    @Test
+    void unmapsASegmentWhenItIsClosed() {
+        MappedSegment segment = MappedSegment.create(0, directory.resolve("segment.log"), SEGMENT_SIZE);
+        int offset = segment.append((byte) 1, 7, new byte[]{1, 2, 3});
+        segment.close();
+
+        // A read after close fails instead of touching memory that is no longer mapped
+        assertThatThrownBy(() -> segment.counter(offset)).isInstanceOf(IllegalStateException.class);
+        segment.close();
+    }
+
+    @Test
+    void dropsAnEntryWithABadChecksumAndAppendsOverIt() throws IOException {
+        MappedFileCredentialRepository repository = open();
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl kept = TestCredentials.credential(random, 0);
+        repository.saveCredential("alice", kept);
+        repository.close();
+        Path segment = onlySegment();
+        byte[] before = Files.readAllBytes(segment);
+
+        repository = open();
+        repository.saveCredential("alice", TestCredentials.credential(random, 0));
+        repository.close();
+        // A crash that left the entry's length on disk but not all of its body
+        byte[] after = Files.readAllBytes(segment);
+        int entryOffset = firstDifference(before, after);
+        after[entryOffset + MappedSegment.ENTRY_HEADER_SIZE + 1] ^= 1;
+        Files.write(segment, after);
+
+        MappedFileCredentialRepository recovered = open();
+        assertThat(recovered.findUser("alice").getCredentials()).hasSize(1);
+        assertThat(recovered.credentialCount()).isEqualTo(1);
+        CredentialRecordImpl appended = TestCredentials.credential(random, 0);
+        recovered.saveCredential("alice", appended);
+        recovered.close();
+
+        MappedFileCredentialRepository reopened = open();
+        assertThat(reopened.findCredential(TestCredentials.credentialId(kept))).isNotNull();
+        assertThat(reopened.findCredential(TestCredentials.credentialId(appended))).isNotNull();
+        assertThat(reopened.credentialCount()).isEqualTo(2);
+    }
+
+    @Test
+    void reusesADecodedUserUntilItsEntriesChange() {
+        MappedFileCredentialRepository repository = open();
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+        repository.saveCredential("alice", credential);
+
+        User decoded = repository.findUser("alice");
+        assertThat(repository.findUser("alice")).isSameAs(decoded);
+        assertThat(repository.findCredential(TestCredentials.credentialId(credential)).user()).isSameAs(decoded);
+
+        repository.saveCredential("alice", TestCredentials.credential(random, 0));
+        User afterSave = repository.findUser("alice");
+        assertThat(afterSave).isNotSameAs(decoded);
+        assertThat(afterSave.getCredentials()).hasSize(2);
+
+        repository.compact();
+        assertThat(repository.findUser("alice")).isNotSameAs(afterSave);
+    }
+
+    @Test
+    void refreshesTheCountersOfACachedUser() {
+        MappedFileCredentialRepository repository = open();
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+        repository.saveCredential("alice", credential);
+        User cached = repository.findUser("alice");
+
+        // Written through a record other than the cached one
+        repository.updateCounter("alice", credential, 7);
+
+        assertThat(repository.findUser("alice")).isSameAs(cached);
+        assertThat(cached.getCredentials().getFirst().getCounter()).isEqualTo(7);
+    }
+
+    @Test
+    void decodesEveryLookupWithoutACache() {
+        MappedFileCredentialRepository repository = open(0);
+        repository.createUserIfAbsent(user("alice"));
+
+        assertThat(repository.findUser("alice")).isNotSameAs(repository.findUser("alice"));
+    }
+
+    private MappedFileCredentialRepository open() {
+        return open(100);
+    }
+
+    private MappedFileCredentialRepository open(int decodedUserCacheEntries) {
+        MappedFileCredentialRepository repository = new MappedFileCredentialRepository(directory, SEGMENT_SIZE,
+                NO_SCHEDULED_COMPACTION, decodedUserCacheEntries, codec);
+        opened.add(repository);
+        return repository;
+    }
+
+    private static User user(String username) {
+        byte[] userId = new byte[16];
+        new Random(username.hashCode()).nextBytes(userId);
+        return new User(username, "Display " + username, userId);
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.toList();
+            assertThat(segments).hasSize(1);
+            return segments.getFirst();
+        }
+    }
+
+    private static int firstDifference(byte[] a, byte[] b) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != b[i]) {
+                return i;
+            }
+        }
+        throw new AssertionError("Nothing was appended");
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.exception.WebAuthnException;
+import com.example.WebAuthn_Demo_App_2.model.User;
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import com.webauthn4j.data.AuthenticatorTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffHeapCredentialRepositoryTest {
+
+    private final CredentialRecordCodec codec = new CredentialRecordCodec(TestCredentials.OBJECT_CONVERTER);
+    private final Random random = new Random(42);
+    // A few records per segment
+    private final OffHeapCredentialRepository repository = new OffHeapCredentialRepository(512, codec);
+
+    @AfterEach
+    void close() {
+        repository.close();
+    }
+
+    @Test
+    void keepsOnlyWhatALoginNeeds() {
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = TestCredentials.registeredCredential(random, 4);
+
+        repository.saveCredential("alice", credential);
+
+        CredentialRecord stored = repository.findCredential(TestCredentials.credentialId(credential)).credentialRecord();
+        assertThat(stored).isInstanceOf(OffHeapCredentialRecord.class);
+        TestCredentials.assertSameRecord(stored, credential);
+        assertThat(stored.getAttestationStatement()).isNull();
+        assertThat(stored.getClientData()).isNull();
+        assertThat(repository.findUser("alice").getCredentials()).containsExactly(stored);
+    }
+
+    @Test
+    void keepsMissingFlagsAndTransportsMissing() {
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = new CredentialRecordImpl(null, null, false, null, 0,
+                TestCredentials.credential(random, 0).getAttestedCredentialData(), null, null, null, null);
+
+        repository.saveCredential("alice", credential);
+
+        CredentialRecord stored = repository.findUser("alice").getCredentials().getFirst();
+        assertThat(stored.isUvInitialized()).isNull();
+        assertThat(stored.isBackupEligible()).isFalse();
+        assertThat(stored.isBackedUp()).isNull();
+        assertThat(stored.getTransports()).isNull();
+    }
+
+    @Test
+    void writesCounterAndFlagUpdatesIntoNativeMemory() {
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+        repository.saveCredential("alice", credential);
+        CredentialRecord stored = repository.findUser("alice").getCredentials().getFirst();
+
+        repository.updateCounter("alice", stored, 42);
+        stored.setBackedUp(true);
+        stored.setUvInitialized(false);
+
+        CredentialRecord found = repository.findCredential(TestCredentials.credentialId(credential)).credentialRecord();
+        assertThat(found.getCounter()).isEqualTo(42);
+        assertThat(found.isBackedUp()).isTrue();
+        assertThat(found.isUvInitialized()).isFalse();
+        assertThat(found.isBackupEligible()).isFalse();
+        assertThat(found.getTransports()).containsExactly(AuthenticatorTransport.INTERNAL);
+    }
+
+    @Test
+    void replacesTheUsersRecordWithTheSameCredentialId() {
+        repository.createUserIfAbsent(user("alice"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 1);
+        repository.saveCredential("alice", credential);
+        credential.setCounter(8);
+
+        repository.saveCredential("alice", credential);
+
+        assertThat(repository.credentialCount()).isEqualTo(1);
+        assertThat(repository.findUser("alice").getCredentials()).hasSize(1);
+        assertThat(repository.findCredential(TestCredentials.credentialId(credential)).credentialRecord().getCounter())
+                .isEqualTo(8);
+    }
+
+    @Test
+    void rejectsACredentialIdRegisteredToAnotherUserWithoutWritingIt() {
+        repository.createUserIfAbsent(user("alice"));
+        repository.createUserIfAbsent(user("mallory"));
+        CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+        repository.saveCredential("alice", credential);
+        long usedBytes = repository.getUsedBytes();
+
+        assertThatThrownBy(() -> repository.saveCredential("mallory", credential)).isInstanceOf(WebAuthnException.class);
+
+        assertThat(repository.getUsedBytes()).isEqualTo(usedBytes);
+        assertThat(repository.findCredential(TestCredentials.credentialId(credential)).user().getUsername())
+                .isEqualTo("alice");
+        assertThat(repository.findUser("mallory").getCredentials()).isEmpty();
+    }
+
+    @Test
+    void givesACredentialIdToOnlyOneOfTwoUsersRegisteringItAtOnce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 100; round++) {
+                String first = "first" + round;
+                String second = "second" + round;
+                repository.createUserIfAbsent(user(first));
+                repository.createUserIfAbsent(user(second));
+                CredentialRecordImpl credential = TestCredentials.credential(random, 0);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (String username : List.of(first, second)) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        try {
+                            repository.saveCredential(username, credential);
+                            return true;
+                        } catch (WebAuthnException e) {
+                            return false;
+                        }
+                    }));
+                }
+                start.countDown();
+
+                int registered = (results.get(0).get() ? 1 : 0) + (results.get(1).get() ? 1 : 0);
+                assertThat(registered).as("round %d", round).isEqualTo(1);
+                String owner = repository.findCredential(TestCredentials.credentialId(credential)).user().getUsername();
+                assertThat(repository.findUser(owner).getCredentials()).hasSize(1);
+                assertThat(repository.findUser(owner.equals(first) ? second : first).getCredentials()).isEmpty();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void allocatesSegmentsAsRecordsFillThem() {
+        List<CredentialRecordImpl> credentials = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            repository.createUserIfAbsent(user("user" + i));
+            CredentialRecordImpl credential = TestCredentials.credential(random, i);
+            repository.saveCredential("user" + i, credential);
+            credentials.add(credential);
+        }
+
+        assertThat(repository.getAllocatedBytes()).isGreaterThan(512).isGreaterThanOrEqualTo(repository.getUsedBytes());
+        for (int i = 0; i < 20; i++) {
+            TestCredentials.assertSameRecord(repository.findUser("user" + i).getCredentials().getFirst(), credentials.get(i));
+        }
+    }
+
+    private static User user(String username) {
+        return new User(username, username, username.getBytes(StandardCharsets.UTF_8));
+    }
+}
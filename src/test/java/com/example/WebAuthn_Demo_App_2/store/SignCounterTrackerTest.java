@@ -0,0 +1,122 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SignCounterTrackerTest {
+
+    private static final byte[] CREDENTIAL_ID = {1, 2, 3, 4};
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final SignCounterTracker tracker = new SignCounterTracker(IDLE_NANOS, clock::get);
+
+    @Test
+    void startsFromTheStoredCounterAndOnlyMovesForward() {
+        assertThat(tracker.current(CREDENTIAL_ID, 5)).isEqualTo(5);
+
+        assertThat(tracker.advance(CREDENTIAL_ID, 5, 6)).isTrue();
+        assertThat(tracker.advance(CREDENTIAL_ID, 5, 6)).isFalse();
+        assertThat(tracker.advance(CREDENTIAL_ID, 5, 3)).isFalse();
+
+        assertThat(tracker.current(CREDENTIAL_ID, 5)).isEqualTo(6);
+        assertThat(tracker.getRegressionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void letsAnAuthenticatorWithoutACounterThrough() {
+        assertThat(tracker.advance(CREDENTIAL_ID, 0, 0)).isTrue();
+        assertThat(tracker.advance(CREDENTIAL_ID, 0, 0)).isTrue();
+        assertThat(tracker.getRegressionCount()).isZero();
+    }
+
+    @Test
+    void letsExactlyOneOfTheSameCounterValueWin() throws Exception {
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 1; round <= 200; round++) {
+                long signCount = round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return tracker.advance(CREDENTIAL_ID, 0, signCount);
+                    }));
+                }
+                start.countDown();
+                int won = 0;
+                for (Future<Boolean> result : results) {
+                    won += result.get() ? 1 : 0;
+                }
+                assertThat(won).as("round %d", round).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(tracker.current(CREDENTIAL_ID, 0)).isEqualTo(200);
+    }
+
+    @Test
+    void persistsTheLatestValue() {
+        List<Long> written = new ArrayList<>();
+        tracker.advance(CREDENTIAL_ID, 0, 4);
+        tracker.advance(CREDENTIAL_ID, 0, 9);
+
+        tracker.persist(CREDENTIAL_ID, written::add);
+
+        assertThat(written).containsExactly(9L);
+    }
+
+    @Test
+    void dropsACounterThatIsIdleAndPersisted() {
+        tracker.advance(CREDENTIAL_ID, 0, 7);
+        tracker.persist(CREDENTIAL_ID, value -> {
+        });
+        clock.addAndGet(IDLE_NANOS + 1);
+
+        // Any persist can run the sweep, this one is for another credential
+        tracker.advance(new byte[]{9}, 0, 1);
+        tracker.persist(new byte[]{9}, value -> {
+        });
+
+        assertThat(tracker.size()).isEqualTo(1);
+        // Starts over from what the repository has, which is the persisted value
+        assertThat(tracker.current(CREDENTIAL_ID, 7)).isEqualTo(7);
+        assertThat(tracker.advance(CREDENTIAL_ID, 7, 7)).isFalse();
+    }
+
+    @Test
+    void keepsAnIdleCounterThatWasNotPersisted() {
+        tracker.advance(CREDENTIAL_ID, 0, 7);
+        clock.addAndGet(IDLE_NANOS + 1);
+
+        tracker.advance(new byte[]{9}, 0, 1);
+        tracker.persist(new byte[]{9}, value -> {
+        });
+
+        assertThat(tracker.size()).isEqualTo(2);
+        // The stored record would still say 0, the tracker remembers 7
+        assertThat(tracker.advance(CREDENTIAL_ID, 0, 5)).isFalse();
+    }
+
+    @Test
+    void startsOverAfterForget() {
+        tracker.advance(CREDENTIAL_ID, 0, 7);
+
+        tracker.forget(CREDENTIAL_ID);
+
+        assertThat(tracker.current(CREDENTIAL_ID, 2)).isEqualTo(2);
+    }
+}
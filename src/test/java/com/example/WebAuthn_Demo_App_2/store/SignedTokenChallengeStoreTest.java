@@ -0,0 +1,145 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.example.WebAuthn_Demo_App_2.exception.ChallengeException;
+import com.example.WebAuthn_Demo_App_2.model.ChallengeType;
+import com.example.WebAuthn_Demo_App_2.model.WebAuthnChallenge;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SignedTokenChallengeStoreTest {
+
+    private static final byte[] SECRET = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final long TIMEOUT_MS = 60_000;
+
+    private final SecureRandomPool secureRandomPool = new SecureRandomPool();
+
+    @Test
+    void anotherNodeWithTheSameSecretAcceptsTheToken() {
+        byte[] userId = {1, 2, 3, 4};
+        Challenge challenge = store(SECRET).createAndStoreChallenge("alice", ChallengeType.REGISTRATION, userId, "Alice");
+
+        WebAuthnChallenge entry = store(SECRET).getChallengeEntry("alice", ChallengeType.REGISTRATION, challenge);
+
+        assertThat(entry.username()).isEqualTo("alice");
+        assertThat(entry.type()).isEqualTo(ChallengeType.REGISTRATION);
+        assertThat(entry.userId()).isEqualTo(userId);
+        assertThat(entry.displayName()).isEqualTo("Alice");
+    }
+
+    @Test
+    void rejectsATokenSignedWithAnotherSecret() {
+        Challenge challenge = store("another secret, not shared".getBytes(StandardCharsets.US_ASCII))
+                .createAndStoreChallenge("alice", ChallengeType.AUTHENTICATION);
+
+        assertReason(() -> store(SECRET).getChallengeEntry("alice", ChallengeType.AUTHENTICATION, challenge),
+                ChallengeException.Reason.MISMATCH);
+    }
+
+    @Test
+    void rejectsATamperedToken() {
+        SignedTokenChallengeStore store = store(SECRET);
+        byte[] token = store.createAndStoreChallenge("alice", ChallengeType.REGISTRATION, new byte[]{1}, "Alice").getValue();
+        // The display name byte, the MAC is what notices
+        token[token.length - 17] ^= 1;
+
+        assertReason(() -> store.getChallengeEntry("alice", ChallengeType.REGISTRATION, new DefaultChallenge(token)),
+                ChallengeException.Reason.MISMATCH);
+    }
+
+    @Test
+    void bindsTheTokenToTheUsernameAndType() {
+        SignedTokenChallengeStore store = store(SECRET);
+        Challenge challenge = store.createAndStoreChallenge("alice", ChallengeType.AUTHENTICATION);
+
+        assertReason(() -> store.getChallengeEntry("mallory", ChallengeType.AUTHENTICATION, challenge),
+                ChallengeException.Reason.MISMATCH);
+        assertReason(() -> store.getChallengeEntry(null, ChallengeType.AUTHENTICATION, challenge),
+                ChallengeException.Reason.MISMATCH);
+        assertReason(() -> store.getChallengeEntry("alice", ChallengeType.REGISTRATION, challenge),
+                ChallengeException.Reason.MISMATCH);
+    }
+
+    @Test
+    void rejectsATokenCutToMoveUsernameBytesIntoIt() {
+        SignedTokenChallengeStore store = store(SECRET);
+        byte[] token = store.createAndStoreChallenge("zalice", ChallengeType.REGISTRATION, new byte[]{1}, "Alice").getValue();
+        // [payload]["z"][MAC], which used to be MACed the same as [payload][MAC] for "zalice"
+        byte[] recut = new byte[token.length + 1];
+        System.arraycopy(token, 0, recut, 0, token.length - 16);
+        recut[token.length - 16] = 'z';
+        System.arraycopy(token, token.length - 16, recut, token.length - 15, 16);
+
+        assertReason(() -> store.getChallengeEntry("alice", ChallengeType.REGISTRATION, new DefaultChallenge(recut)),
+                ChallengeException.Reason.MISMATCH);
+        assertThat(store.getChallengeEntry("zalice", ChallengeType.REGISTRATION, new DefaultChallenge(token)).username())
+                .isEqualTo("zalice");
+    }
+
+    @Test
+    void keepsUsernamelessTokensApartFromNamedOnes() {
+        SignedTokenChallengeStore store = store(SECRET);
+        Challenge usernameless = store.createAndStoreChallenge(null, ChallengeType.AUTHENTICATION);
+
+        assertReason(() -> store.getChallengeEntry("", ChallengeType.AUTHENTICATION, usernameless),
+                ChallengeException.Reason.MISMATCH);
+        assertThat(store.getChallengeEntry(null, ChallengeType.AUTHENTICATION, usernameless).username()).isNull();
+    }
+
+    @Test
+    void rejectsAShortOrForeignChallenge() {
+        SignedTokenChallengeStore store = store(SECRET);
+
+        assertReason(() -> store.getChallengeEntry("alice", ChallengeType.AUTHENTICATION, new DefaultChallenge(new byte[16])),
+                ChallengeException.Reason.MISMATCH);
+        assertReason(() -> store.getChallengeEntry("alice", ChallengeType.AUTHENTICATION, new DefaultChallenge(new byte[64])),
+                ChallengeException.Reason.MISMATCH);
+    }
+
+    @Test
+    void acceptsATokenOnlyOncePerNode() {
+        SignedTokenChallengeStore store = store(SECRET);
+        Challenge challenge = store.createAndStoreChallenge("alice", ChallengeType.AUTHENTICATION);
+        store.getChallengeEntry("alice", ChallengeType.AUTHENTICATION, challenge);
+
+        assertReason(() -> store.getChallengeEntry("alice", ChallengeType.AUTHENTICATION, challenge),
+                ChallengeException.Reason.MISSING);
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsAnExpiredToken() throws InterruptedException {
+        SignedTokenChallengeStore store = new SignedTokenChallengeStore(SECRET, 1, 1000, secureRandomPool);
+        Challenge challenge = store.createAndStoreChallenge("alice", ChallengeType.AUTHENTICATION);
+        Thread.sleep(20);
+
+        assertReason(() -> store.getChallengeEntry("alice", ChallengeType.AUTHENTICATION, challenge),
+                ChallengeException.Reason.EXPIRED);
+        assertThat(store.size()).isZero();
+    }
+
+    @Test
+    void forgetsTheOldestConsumedTokensPastMaxEntries() {
+        SignedTokenChallengeStore store = new SignedTokenChallengeStore(SECRET, TIMEOUT_MS, 10, secureRandomPool);
+        for (int i = 0; i < 25; i++) {
+            Challenge challenge = store.createAndStoreChallenge("user" + i, ChallengeType.AUTHENTICATION);
+            store.getChallengeEntry("user" + i, ChallengeType.AUTHENTICATION, challenge);
+        }
+
+        assertThat(store.size()).isEqualTo(10);
+    }
+
+    private SignedTokenChallengeStore store(byte[] secret) {
+        return new SignedTokenChallengeStore(secret, TIMEOUT_MS, 1000, secureRandomPool);
+    }
+
+    private static void assertReason(Runnable call, ChallengeException.Reason reason) {
+        assertThatThrownBy(call::run)
+                .isInstanceOfSatisfying(ChallengeException.class, e -> assertThat(e.getReason()).isEqualTo(reason));
+    }
+}
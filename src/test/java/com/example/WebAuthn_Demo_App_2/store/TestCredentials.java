@@ -0,0 +1,85 @@
+package com.example.WebAuthn_Demo_App_2.store;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.credential.CredentialRecord;
+import com.webauthn4j.credential.CredentialRecordImpl;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.EC2COSEKey;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Credential records for the storage tests: one real ES256 key, reused under random credential IDs
+final class TestCredentials {
+
+    static final ObjectConverter OBJECT_CONVERTER = new ObjectConverter();
+
+    private static final AAGUID AAGUID = new AAGUID(UUID.fromString("ea9b8d66-4d01-1d21-3ce4-b6b48cb575d4"));
+    private static final EC2COSEKey KEY = generateKey();
+
+    private TestCredentials() {
+    }
+
+    // Only what a login needs, like a record restored from an export
+    static CredentialRecordImpl credential(Random random, long counter) {
+        return new CredentialRecordImpl(null, true, false, false, counter,
+                attestedCredentialData(random), null, null, null, Set.of(AuthenticatorTransport.INTERNAL));
+    }
+
+    // Everything a registration stores, attestation statement and client data included
+    static CredentialRecordImpl registeredCredential(Random random, long counter) {
+        CollectedClientData clientData = new CollectedClientData(ClientDataType.WEBAUTHN_CREATE, new DefaultChallenge(),
+                new Origin("https://example.com"), false, null);
+        return new CredentialRecordImpl(new NoneAttestationStatement(), true, true, false, counter,
+                attestedCredentialData(random), null, clientData, null,
+                Set.of(AuthenticatorTransport.USB, AuthenticatorTransport.HYBRID));
+    }
+
+    static byte[] credentialId(CredentialRecord credentialRecord) {
+        return credentialRecord.getAttestedCredentialData().getCredentialId();
+    }
+
+    static void assertSameRecord(CredentialRecord actual, CredentialRecord expected) {
+        assertThat(actual.getCounter()).isEqualTo(expected.getCounter());
+        assertThat(actual.isUvInitialized()).isEqualTo(expected.isUvInitialized());
+        assertThat(actual.isBackupEligible()).isEqualTo(expected.isBackupEligible());
+        assertThat(actual.isBackedUp()).isEqualTo(expected.isBackedUp());
+        assertThat(actual.getAttestedCredentialData().getAaguid())
+                .isEqualTo(expected.getAttestedCredentialData().getAaguid());
+        assertThat(credentialId(actual)).isEqualTo(credentialId(expected));
+        assertThat(actual.getAttestedCredentialData().getCOSEKey())
+                .isEqualTo(expected.getAttestedCredentialData().getCOSEKey());
+        assertThat(actual.getTransports()).isEqualTo(expected.getTransports());
+    }
+
+    private static AttestedCredentialData attestedCredentialData(Random random) {
+        byte[] credentialId = new byte[32];
+        random.nextBytes(credentialId);
+        return new AttestedCredentialData(AAGUID, credentialId, KEY);
+    }
+
+    private static EC2COSEKey generateKey() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            return EC2COSEKey.create((ECPublicKey) generator.generateKeyPair().getPublic(), COSEAlgorithmIdentifier.ES256);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}